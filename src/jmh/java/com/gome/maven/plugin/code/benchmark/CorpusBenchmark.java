@@ -0,0 +1,82 @@
+package com.gome.maven.plugin.code.benchmark;
+
+import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisEngine;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisScheduler;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisFailedException;
+import com.gome.maven.plugin.code.pmd.pmd.AstCache;
+import com.gome.maven.plugin.code.pmd.pmd.SourceCodeProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole check run over a synthetic project: every p3c rule applied to every file through the
+ * {@link AliPmdAnalysisEngine} and {@link AliPmdAnalysisScheduler}, which is what the <code>check</code> goal
+ * does once Maven has resolved the sources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CorpusBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int files;
+
+    /**
+     * Worker threads, <code>0</code> for one per processor.
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    private File root;
+    private List<File> sources;
+    private AliPmdAnalysisScheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticCorpus.createTempRoot();
+        sources = SyntheticCorpus.create(root, files);
+        SourceCodeProcessor.configureNodeCache(new AstCache(true, SourceCodeProcessor.DEFAULT_AST_CACHE_WEIGHT, 0));
+        List<RuleInfo> ruleInfos = new ArrayList<RuleInfo>(AliLocalInspectionToolProvider.getRuleInfoMap().values());
+        scheduler = new AliPmdAnalysisScheduler(new AliPmdAnalysisEngine(ruleInfos, "UTF-8"), threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticCorpus.delete(root);
+    }
+
+    @Benchmark
+    public int check() throws InterruptedException, IOException, AnalysisFailedException {
+        final int[] violations = new int[1];
+        scheduler.run(sources, new AliPmdAnalysisScheduler.ResultHandler() {
+            @Override
+            public void handle(File file, List<ProblemDescriptor> problems) {
+                violations[0] += problems.size();
+            }
+        });
+        return violations[0];
+    }
+}
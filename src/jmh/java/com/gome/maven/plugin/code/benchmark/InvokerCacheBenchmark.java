@@ -0,0 +1,78 @@
+package com.gome.maven.plugin.code.benchmark;
+
+import com.gome.maven.plugin.code.pmd.config.P3cConfig;
+import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
+import com.gome.maven.plugin.code.pmd.inspection.AliPmdInspectionInvoker;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.AstCache;
+import com.gome.maven.plugin.code.pmd.pmd.SourceCodeProcessor;
+import net.sourceforge.pmd.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit and miss paths of the per file and rule result cache of {@link AliPmdInspectionInvoker}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class InvokerCacheBenchmark {
+
+    private File root;
+    private List<File> files;
+    private Rule rule;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticCorpus.createTempRoot();
+        files = SyntheticCorpus.create(root, 100);
+        rule = AliLocalInspectionToolProvider.newRuleInstances().get("NeedBraceRule");
+        P3cConfig.getInstance().setRuleCacheEnable(true);
+        // keep parsed ASTs out of the miss path
+        SourceCodeProcessor.configureNodeCache(new AstCache(false, 0, 0));
+        AliPmdInspectionInvoker.reInitInvokers(TimeUnit.HOURS.toMillis(1));
+        for (File file : files) {
+            AliPmdInspectionInvoker.invokeInspection(file, rule, false);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        AliPmdInspectionInvoker.invokers.invalidateAll();
+        SyntheticCorpus.delete(root);
+    }
+
+    /**
+     * Every file has been inspected with the rule during setup.
+     */
+    @Benchmark
+    public ProblemDescriptor[] hit() {
+        return AliPmdInspectionInvoker.invokeInspection(files.get(next++ % files.size()), rule, false);
+    }
+
+    @Benchmark
+    public ProblemDescriptor[] miss() {
+        File file = files.get(next++ % files.size());
+        AliPmdInspectionInvoker.invokers.invalidateAll();
+        return AliPmdInspectionInvoker.invokeInspection(file, rule, false);
+    }
+}
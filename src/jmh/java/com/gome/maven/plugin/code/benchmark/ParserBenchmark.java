@@ -0,0 +1,83 @@
+package com.gome.maven.plugin.code.benchmark;
+
+import com.gome.maven.plugin.code.pmd.pmd.AstCache;
+import com.gome.maven.plugin.code.pmd.pmd.SourceCodeProcessor;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDException;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and symbol table construction through {@link SourceCodeProcessor}, without any rule and with the
+ * AST cache disabled or enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"false", "true"})
+    public boolean astCache;
+
+    private File root;
+    private String[] names;
+    private String[] sources;
+    private RuleSets noRules;
+    private SourceCodeProcessor processor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticCorpus.createTempRoot();
+        List<File> files = SyntheticCorpus.create(root, 100);
+        names = new String[files.size()];
+        sources = new String[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            names[i] = files.get(i).getCanonicalPath();
+            sources[i] = FileUtils.fileRead(files.get(i), "UTF-8");
+        }
+        noRules = new RuleSets(new RuleSet());
+        processor = new SourceCodeProcessor(new PMDConfiguration());
+        SourceCodeProcessor.configureNodeCache(new AstCache(astCache, SourceCodeProcessor.DEFAULT_AST_CACHE_WEIGHT, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SourceCodeProcessor.getNodeCache().invalidateAll();
+        SyntheticCorpus.delete(root);
+    }
+
+    @Benchmark
+    public Report parse() throws PMDException {
+        int i = next++ % names.length;
+        RuleContext ctx = new RuleContext();
+        Report report = Report.createReport(ctx, names[i]);
+        processor.processSourceCode(new StringReader(sources[i]), noRules, ctx);
+        return report;
+    }
+}
@@ -0,0 +1,89 @@
+package com.gome.maven.plugin.code.benchmark;
+
+import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdProcessor;
+import com.gome.maven.plugin.code.pmd.pmd.AstCache;
+import com.gome.maven.plugin.code.pmd.pmd.SourceCodeProcessor;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies one rule, or the full p3c rule set in a single pass, to a file through {@link AliPmdProcessor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RuleApplicationBenchmark {
+
+    /**
+     * A rule name, or <code>all</code> for every p3c rule.
+     */
+    @Param({"NeedBraceRule", "all"})
+    public String rules;
+
+    /**
+     * Whether the rules are applied one at a time, as with the profiler or a per-rule budget.
+     */
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private File root;
+    private List<File> files;
+    private AliPmdProcessor processor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = SyntheticCorpus.createTempRoot();
+        files = SyntheticCorpus.create(root, 100);
+        Map<String, Rule> instances = AliLocalInspectionToolProvider.newRuleInstances();
+        RuleSets ruleSets;
+        if ("all".equals(rules)) {
+            ruleSets = AliPmdProcessor.newRuleSets(new ArrayList<Rule>(instances.values()), instrumented);
+        } else {
+            Rule rule = instances.get(rules);
+            if (rule == null) {
+                throw new IllegalArgumentException("unknown rule " + rules);
+            }
+            ruleSets = AliPmdProcessor.newRuleSets(Collections.singletonList(rule), instrumented);
+        }
+        processor = new AliPmdProcessor(ruleSets, "UTF-8");
+        // measure a cold parse on every call, as in a single pass over a project
+        SourceCodeProcessor.configureNodeCache(new AstCache(false, 0, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticCorpus.delete(root);
+    }
+
+    @Benchmark
+    public List<RuleViolation> apply() {
+        return processor.processFile(files.get(next++ % files.size()));
+    }
+}
@@ -0,0 +1,83 @@
+package com.gome.maven.plugin.code.benchmark;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a reproducible tree of Java sources for the benchmarks. File {@code i} always has the same
+ * content, a mix of clean code and typical p3c violations, with size varying between files.
+ */
+final class SyntheticCorpus {
+
+    private SyntheticCorpus() {
+    }
+
+    static List<File> create(File root, int fileCount) throws IOException {
+        List<File> files = new ArrayList<File>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            String pkg = "bench.p" + (i % 50);
+            File dir = new File(root, pkg.replace('.', File.separatorChar));
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            File file = new File(dir, "Sample" + i + ".java");
+            FileUtils.fileWrite(file, "UTF-8", source(pkg, "Sample" + i, 2 + i % 9));
+            files.add(file);
+        }
+        return files;
+    }
+
+    static File createTempRoot() throws IOException {
+        File root = File.createTempFile("code-check-bench", "");
+        if (!root.delete() || !root.mkdirs()) {
+            throw new IOException("Unable to create " + root);
+        }
+        return root;
+    }
+
+    static void delete(File root) throws IOException {
+        if (root != null) {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    private static String source(String pkg, String className, int methods) {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("package ").append(pkg).append(";\n\n")
+                .append("import java.util.ArrayList;\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.List;\n")
+                .append("import java.util.Map;\n\n")
+                .append("/**\n * Generated benchmark input.\n *\n * @author bench\n */\n")
+                .append("public class ").append(className).append(" {\n\n")
+                .append("    private static final int LIMIT = 100;\n")
+                .append("    private Map<String, Object> cache = new HashMap();\n")
+                .append("    private List<String> names = new ArrayList<String>();\n\n");
+        for (int m = 0; m < methods; m++) {
+            out.append("    /**\n     * Method ").append(m).append(".\n     */\n")
+                    .append("    public int compute").append(m).append("(int value, String Name) {\n")
+                    .append("        int total = 0;\n")
+                    .append("        for (int i = 0; i < value; i++) {\n")
+                    .append("            if (i % 7 == 0) total += 42;\n")
+                    .append("            else {\n")
+                    .append("                total += i * LIMIT;\n")
+                    .append("            }\n")
+                    .append("        }\n")
+                    .append("        try {\n")
+                    .append("            names.add(Name + total);\n")
+                    .append("        } catch (Exception e) {\n")
+                    .append("        }\n")
+                    .append("        if (Name.equals(\"bench\")) {\n")
+                    .append("            cache.put(Name, total);\n")
+                    .append("        }\n")
+                    .append("        return total;\n")
+                    .append("    }\n\n");
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+}
@@ -1,10 +1,10 @@
 package com.gome.maven.plugin.code.check;
 
+import com.gome.maven.plugin.code.pmd.vcs.GitChangeSet;
 import net.sourceforge.pmd.PMD;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -20,6 +20,12 @@ public abstract class AbstractPmdReport extends AbstractMavenMojo {
    @Parameter(defaultValue = "${project}", readonly = true, required = true)
     protected MavenProject project;
 
+    /**
+     * The projects in the reactor, used by the aggregate goal.
+     */
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+    protected List<MavenProject> reactorProjects;
+
     /**
      * A list of files to exclude from checking. Can contain Ant-style wildcards and double wildcards. Note that these
      * exclusion patterns only operate on the path of a source file relative to its source root directory. In other
@@ -85,10 +91,9 @@ public abstract class AbstractPmdReport extends AbstractMavenMojo {
 
 
     /**
-     * File that lists classes and rules to be excluded from failures.
-     * For PMD, this is a properties file. For CPD, this
-     * is a text file that contains comma-separated lists of classes
-     * that are allowed to duplicate.
+     * Baseline of known violations which are neither reported nor counted against the allowed violations.
+     * Relative paths are resolved against the project directory. It is generated with
+     * <code>-Dpmd.updateBaseline=true</code>.
      *
      * @since 3.7
      */
@@ -96,11 +101,37 @@ public abstract class AbstractPmdReport extends AbstractMavenMojo {
     protected String excludeFromFailureFile;
 
 
+    /**
+     * Only check the files changed in the local git work tree, see <code>changedBase</code>. Useful for
+     * pre-commit hooks and pull request builds.
+     */
+    @Parameter(property = "pmd.changedOnly", defaultValue = "false")
+    protected boolean changedOnly;
+
+    /**
+     * The git ref the changes are computed against when <code>changedOnly</code> is set, e.g.
+     * <code>origin/master</code>. If empty, staged, unstaged and untracked changes against <code>HEAD</code>
+     * are used.
+     */
+    @Parameter(property = "pmd.changedBase")
+    protected String changedBase;
+
+    /**
+     * When <code>changedOnly</code> is set, only report violations located on added or modified lines.
+     */
+    @Parameter(property = "pmd.changedLinesOnly", defaultValue = "false")
+    protected boolean changedLinesOnly;
+
     /**
      * The files that are being analyzed.
      */
     protected Map<File, PmdFileInfo> filesToProcess;
 
+    /**
+     * The git changes the analysis is restricted to, <code>null</code> unless <code>changedOnly</code> is set.
+     */
+    protected GitChangeSet changeSet;
+
     /**
      * {@inheritDoc}
      */
@@ -130,6 +161,73 @@ public abstract class AbstractPmdReport extends AbstractMavenMojo {
         }
 
         List<PmdFileInfo> directories = new ArrayList<PmdFileInfo>();
+        if (isAggregate()) {
+            for (MavenProject localProject : reactorProjects) {
+                @SuppressWarnings("unchecked")
+                List<String> localCompileSourceRoots = localProject.getCompileSourceRoots();
+                for (String root : localCompileSourceRoots) {
+                    File sroot = new File(root);
+                    if (sroot.exists()) {
+                        directories.add(new PmdFileInfo(localProject, sroot, null));
+                    }
+                }
+                if (includeTests) {
+                    @SuppressWarnings("unchecked")
+                    List<String> localTestCompileSourceRoots = localProject.getTestCompileSourceRoots();
+                    for (String root : localTestCompileSourceRoots) {
+                        File sroot = new File(root);
+                        if (sroot.exists()) {
+                            directories.add(new PmdFileInfo(localProject, sroot, null));
+                        }
+                    }
+                }
+            }
+        } else {
+            addProjectDirectories(directories);
+        }
+
+        Collection<String> excluding = getExcludes();
+        getLog().debug("Exclusions: " + excluding);
+        Collection<String> including = getIncludes();
+        getLog().debug("Inclusions: " + including);
+
+        List<File> roots = new ArrayList<File>(directories.size());
+        for (PmdFileInfo finfo : directories) {
+            getLog().debug("Searching for files in directory " + finfo.getSourceDirectory().toString());
+            roots.add(finfo.getSourceDirectory());
+        }
+        List<List<File>> found = new SourceFileScanner(including, excluding, excludeRootFiles, getLog()).scan(roots);
+
+        Map<File, PmdFileInfo> files = new TreeMap<File, PmdFileInfo>();
+        for (int i = 0; i < directories.size(); i++) {
+            for (File newfile : found.get(i)) {
+                files.put(newfile, directories.get(i));
+            }
+        }
+
+        if (changedOnly) {
+            try {
+                changeSet = GitChangeSet.compute(project.getBasedir(), changedBase, changedLinesOnly);
+                files.keySet().retainAll(changeSet.getChangedFiles());
+                getLog().info("changedOnly: " + files.size() + " changed files to check");
+            } catch (IOException e) {
+                getLog().warn("Unable to compute git changes, checking all files", e);
+                changeSet = null;
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Whether a violation at {@code line} of {@code file} should be reported with respect to
+     * <code>changedLinesOnly</code>.
+     */
+    protected boolean isReportedLine(File file, int line) {
+        return changeSet == null || !changedLinesOnly || changeSet.isChangedLine(file, line);
+    }
+
+    private void addProjectDirectories(List<PmdFileInfo> directories) throws IOException {
         if (null == compileSourceRoots) {
             compileSourceRoots = project.getCompileSourceRoots();
         }
@@ -150,84 +248,26 @@ public abstract class AbstractPmdReport extends AbstractMavenMojo {
                 for (String root : testSourceRoots) {
                     File sroot = new File(root);
                     if (sroot.exists()) {
-//                        String testXref = constructXRefLocation(true);
                         directories.add(new PmdFileInfo(project, sroot, null));
                     }
                 }
             }
         }
-//        if (aggregate) {
-//            for (MavenProject localProject : reactorProjects) {
-//                @SuppressWarnings("unchecked")
-//                List<String> localCompileSourceRoots = localProject.getCompileSourceRoots();
-//                for (String root : localCompileSourceRoots) {
-//                    File sroot = new File(root);
-//                    if (sroot.exists()) {
-//                        String sourceXref = constructXRefLocation(false);
-//                        directories.add(new PmdFileInfo(localProject, sroot, sourceXref));
-//                    }
-//                }
-//                if (includeTests) {
-//                    @SuppressWarnings("unchecked")
-//                    List<String> localTestCompileSourceRoots = localProject.getTestCompileSourceRoots();
-//                    for (String root : localTestCompileSourceRoots) {
-//                        File sroot = new File(root);
-//                        if (sroot.exists()) {
-//                            String testXref = constructXRefLocation(true);
-//                            directories.add(new PmdFileInfo(localProject, sroot, testXref));
-//                        }
-//                    }
-//                }
-//            }
-//
-//        }
-
-        String excluding = getExcludes();
-        getLog().debug("Exclusions: " + excluding);
-        String including = getIncludes();
-        getLog().debug("Inclusions: " + including);
-
-        Map<File, PmdFileInfo> files = new TreeMap<File, PmdFileInfo>();
-
-        for (PmdFileInfo finfo : directories) {
-            getLog().debug("Searching for files in directory " + finfo.getSourceDirectory().toString());
-            File sourceDirectory = finfo.getSourceDirectory();
-            if (sourceDirectory.isDirectory() && !isDirectoryExcluded(excludeRootFiles, sourceDirectory)) {
-                List<File> newfiles = FileUtils.getFiles(sourceDirectory, including, excluding);
-                for (File newfile : newfiles) {
-                    files.put(newfile.getCanonicalFile(), finfo);
-                }
-            }
-        }
-
-        return files;
     }
 
-    private boolean isDirectoryExcluded(Collection<File> excludeRootFiles, File sourceDirectoryToCheck) {
-        boolean returnVal = false;
-        for (File excludeDir : excludeRootFiles) {
-            try {
-                if (sourceDirectoryToCheck.getCanonicalPath().startsWith(excludeDir.getCanonicalPath())) {
-                    getLog().debug("Directory " + sourceDirectoryToCheck.getAbsolutePath()
-                            + " has been excluded as it matches excludeRoot "
-                            + excludeDir.getAbsolutePath());
-                    returnVal = true;
-                    break;
-                }
-            } catch (IOException e) {
-                getLog().warn("Error while checking " + sourceDirectoryToCheck
-                        + " whether it should be excluded.", e);
-            }
-        }
-        return returnVal;
+    /**
+     * Whether the source roots of all reactor projects are analyzed in one run.
+     */
+    protected boolean isAggregate() {
+        return false;
     }
 
     /**
-     * Gets the comma separated list of effective include patterns.
+     * Gets the effective include patterns.
      *
-     * @return The comma separated list of effective include patterns, never <code>null</code>.
+     * @return The effective include patterns, never <code>null</code>.
      */
-    private String getIncludes() {
+    private Collection<String> getIncludes() {
         Collection<String> patterns = new LinkedHashSet<String>();
         if (includes != null) {
             patterns.addAll(includes);
@@ -235,20 +275,20 @@ public abstract class AbstractPmdReport extends AbstractMavenMojo {
         if (patterns.isEmpty()) {
             patterns.add("**/*.java");
         }
-        return StringUtils.join(patterns.iterator(), ",");
+        return patterns;
     }
 
     /**
-     * Gets the comma separated list of effective exclude patterns.
+     * Gets the effective exclude patterns, including the default excludes of version control files.
      *
-     * @return The comma separated list of effective exclude patterns, never <code>null</code>.
+     * @return The effective exclude patterns, never <code>null</code>.
      */
-    private String getExcludes() {
+    private Collection<String> getExcludes() {
         Collection<String> patterns = new LinkedHashSet<String>(FileUtils.getDefaultExcludesAsList());
         if (excludes != null) {
             patterns.addAll(excludes);
         }
-        return StringUtils.join(patterns.iterator(), ",");
+        return patterns;
     }
 
 
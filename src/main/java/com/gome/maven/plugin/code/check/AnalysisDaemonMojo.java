@@ -0,0 +1,56 @@
+package com.gome.maven.plugin.code.check;
+
+import com.gome.maven.plugin.code.pmd.daemon.AnalysisDaemon;
+import com.gome.maven.plugin.code.pmd.daemon.DaemonRegistry;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the code check daemon in the foreground. Builds started with <code>-Dpmd.daemon=true</code> hand their
+ * analysis to it and so skip loading the rules and warming up the engine on every run.
+ */
+@Mojo(name = "daemon", requiresProject = false)
+public class AnalysisDaemonMojo extends AbstractMojo {
+
+    /**
+     * Loopback port to listen on, <code>0</code> for any free port. The chosen port is published in the registry file.
+     */
+    @Parameter(property = "pmd.daemonPort", defaultValue = "0")
+    private int port;
+
+    /**
+     * Minutes without a build after which the daemon exits, <code>0</code> to run until it is stopped.
+     */
+    @Parameter(property = "pmd.daemonIdleTimeout", defaultValue = "180")
+    private long idleTimeout;
+
+    /**
+     * The file the daemon publishes its port and access token in; defaults to
+     * <code>~/.code-check/daemon.properties</code>.
+     */
+    @Parameter(property = "pmd.daemonRegistry")
+    private File daemonRegistry;
+
+    public void execute() throws MojoExecutionException {
+        File registry = daemonRegistry != null ? daemonRegistry : DaemonRegistry.defaultLocation();
+        AnalysisDaemon daemon;
+        try {
+            daemon = new AnalysisDaemon(port, registry, TimeUnit.MINUTES.toMillis(idleTimeout));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to start the code check daemon", e);
+        }
+        try {
+            daemon.serve();
+        } catch (IOException e) {
+            throw new MojoExecutionException("code check daemon failed", e);
+        } finally {
+            daemon.close();
+        }
+    }
+}
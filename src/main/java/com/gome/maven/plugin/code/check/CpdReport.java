@@ -0,0 +1,142 @@
+package com.gome.maven.plugin.code.check;
+
+import com.gome.maven.plugin.code.pmd.cpd.Duplication;
+import com.gome.maven.plugin.code.pmd.cpd.DuplicateDetector;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.plugin.code.pmd.report.CpdXmlWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds copy-pasted code in the same source files the <code>check</code> goal analyzes, lexing each file once
+ * instead of running a separate copy-paste detector. Duplications are logged and written to
+ * <code>cpd.xml</code> in the <code>pmd-cpd</code> format. With <code>changedOnly</code> the changed files are
+ * compared with each other only.
+ */
+@Mojo(name = "cpd", defaultPhase = LifecyclePhase.VERIFY, requiresProject = true)
+public class CpdReport extends AbstractPmdReport {
+
+    /**
+     * Skips the copy-paste detection.
+     */
+    @Parameter(property = "cpd.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * The minimum number of equal tokens a block needs to be reported as duplicated.
+     */
+    @Parameter(property = "cpd.minimumTokens", defaultValue = "100")
+    private int minimumTokens;
+
+    /**
+     * Compares literals by their type only, so that blocks differing in constants count as duplicates.
+     */
+    @Parameter(property = "cpd.ignoreLiterals", defaultValue = "false")
+    private boolean ignoreLiterals;
+
+    /**
+     * Compares identifiers by their type only, so that blocks differing in names count as duplicates.
+     */
+    @Parameter(property = "cpd.ignoreIdentifiers", defaultValue = "false")
+    private boolean ignoreIdentifiers;
+
+    /**
+     * Number of threads lexing and indexing files concurrently. Defaults to the number of available processors.
+     */
+    @Parameter(property = "cpd.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * The file the duplications are written to.
+     */
+    @Parameter(property = "cpd.outputFile", defaultValue = "${project.build.directory}/cpd.xml")
+    private File outputFile;
+
+    /**
+     * Whether the build fails when duplications are found.
+     */
+    @Parameter(property = "cpd.failOnViolation", defaultValue = "false")
+    private boolean failOnViolation;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("skip copy-paste detection!");
+            return;
+        }
+        try {
+            filesToProcess = getFilesToProcess();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to collect the files to check for duplicates", e);
+        }
+        if (filesToProcess.isEmpty()) {
+            getLog().info("no files to check for duplicates!");
+            return;
+        }
+        String encoding = getSourceEncoding();
+        if (StringUtils.isBlank(encoding)) {
+            encoding = Charset.defaultCharset().name();
+            getLog().warn("File encoding has not been set, using platform encoding " + encoding
+                    + ", i.e. build is platform dependent!");
+        }
+        Charset charset = Charset.forName(encoding);
+        DuplicateDetector detector = new DuplicateDetector(minimumTokens, ignoreLiterals, ignoreIdentifiers, charset,
+                threads);
+        long start = System.nanoTime();
+        List<Duplication> duplications;
+        try {
+            duplications = detector.detect(new ArrayList<>(filesToProcess.keySet()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("copy-paste detection interrupted", e);
+        }
+        getLog().info("Copy-paste detection: " + duplications.size() + " duplications in " + filesToProcess.size()
+                + " files (" + detector.getTokenCount() + " tokens) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        for (SkippedInputs.SkippedInput skipped : detector.getSkippedInputs().getInputs()) {
+            getLog().warn("Unable to check " + skipped.getFileName() + " for duplicates: " + skipped.getReason());
+        }
+        List<Duplication> reported = new ArrayList<>();
+        for (Duplication duplication : duplications) {
+            if (isReported(duplication)) {
+                reported.add(duplication);
+                getLog().info("Found a " + duplication.getLines() + " line (" + duplication.getTokens()
+                        + " tokens) duplication in " + duplication.getOccurrences());
+            }
+        }
+        try {
+            new CpdXmlWriter(charset).write(reported, outputFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + outputFile, e);
+        }
+        if (failOnViolation && !reported.isEmpty()) {
+            throw new MojoFailureException("copy-paste detection failed, " + reported.size()
+                    + " duplications found, see " + outputFile);
+        }
+    }
+
+    /**
+     * With <code>changedLinesOnly</code>, a duplication is reported when one of its occurrences touches a changed
+     * line.
+     */
+    private boolean isReported(Duplication duplication) {
+        for (Duplication.Occurrence occurrence : duplication.getOccurrences()) {
+            for (int line = occurrence.getBeginLine(); line <= occurrence.getEndLine(); line++) {
+                if (isReportedLine(occurrence.getFile(), line)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,21 @@
+package com.gome.maven.plugin.code.check;
+
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Checks the sources of every project in the reactor in a single run. All modules share one worker pool,
+ * one set of loaded rules and one analysis cache; violations are attributed back to the owning module.
+ */
+@Mojo(name = "aggregate", aggregator = true, defaultPhase = LifecyclePhase.COMPILE, requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST)
+public class PmdAggregateReport extends PmdReport {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isAggregate() {
+        return true;
+    }
+}
@@ -19,27 +19,51 @@ package com.gome.maven.plugin.code.check;
  * under the License.
  */
 
-import com.gome.maven.log.CodeCheckSystemStreamLog;
-import com.gome.maven.log.LogInitializer;
 import com.gome.maven.idea.Main;
+import com.gome.maven.plugin.code.pmd.baseline.ViolationBaseline;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
+import com.gome.maven.plugin.code.pmd.bytecode.BytecodeAnalyzer;
+import com.gome.maven.plugin.code.pmd.bytecode.BytecodeRules;
+import com.gome.maven.plugin.code.pmd.cache.AnalysisCache;
+import com.gome.maven.plugin.code.pmd.daemon.DaemonClient;
+import com.gome.maven.plugin.code.pmd.daemon.DaemonRegistry;
+import com.gome.maven.plugin.code.pmd.index.SymbolIndex;
 import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
 import com.gome.maven.plugin.code.pmd.inspection.LocalInspectionTool;
 import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
 import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
-import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevel;
-import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevels;
-import com.gome.maven.util.ReflectionUtil;
-import org.apache.maven.artifact.Artifact;
-import org.apache.maven.model.Dependency;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisEngine;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisScheduler;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisFailedException;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisRunner;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisWatchdog;
+import com.gome.maven.plugin.code.pmd.pmd.AstCache;
+import com.gome.maven.plugin.code.pmd.pmd.AuxClasspathClassLoader;
+import com.gome.maven.plugin.code.pmd.pmd.RulePrefilter;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.plugin.code.pmd.report.AsyncViolationSink;
+import com.gome.maven.plugin.code.pmd.report.BenchmarkReportWriter;
+import com.gome.maven.plugin.code.pmd.report.ConsoleSummarySink;
+import com.gome.maven.plugin.code.pmd.report.JsonViolationSink;
+import com.gome.maven.plugin.code.pmd.report.MetricsReportWriter;
+import com.gome.maven.plugin.code.pmd.report.SarifViolationSink;
+import com.gome.maven.plugin.code.pmd.report.ViolationSink;
+import com.gome.maven.plugin.code.pmd.report.XmlViolationSink;
+import net.sourceforge.pmd.Rule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.*;
 
 /**
@@ -50,8 +74,6 @@ import java.util.*;
 @Mojo(name = "check", defaultPhase = LifecyclePhase.COMPILE, requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST)
 public class PmdReport extends AbstractPmdReport {
 
-    private static final CodeCheckSystemStreamLog LOG=LogInitializer.getInstance().getLog();
-
     /**
      * The target JDK to analyze based on. Should match the target used in the compiler plugin. Valid values are
      * currently <code>1.3</code>, <code>1.4</code>, <code>1.5</code>, <code>1.6</code>, <code>1.7</code> and
@@ -107,7 +129,8 @@ public class PmdReport extends AbstractPmdReport {
     private boolean typeResolution;
 
     /**
-     * Controls whether PMD will track benchmark information.
+     * Controls whether PMD will track benchmark information. When enabled, the time spent per phase, per rule
+     * and per file is written to the benchmark output file.
      *
      * @since 3.1
      */
@@ -115,7 +138,8 @@ public class PmdReport extends AbstractPmdReport {
     private boolean benchmark;
 
     /**
-     * Benchmark output filename.
+     * Benchmark output filename. A JSON version of the report is written next to it with a <code>.json</code>
+     * extension.
      *
      * @since 3.1
      */
@@ -123,6 +147,30 @@ public class PmdReport extends AbstractPmdReport {
             defaultValue = "${project.build.directory}/pmd-benchmark.txt")
     private String benchmarkOutputFilename;
 
+    /**
+     * Number of slowest rules and files listed in the benchmark report.
+     */
+    @Parameter(property = "pmd.benchmarkTop", defaultValue = "20")
+    private int benchmarkTop;
+
+    /**
+     * Records counters, timers and histograms of the check: files and bytes read, time per analysis phase and per
+     * rule, cache hits and misses, queue depths, worker utilization and heap. They are visible in JMX under
+     * <code>com.gome.maven.plugin.code:type=AnalysisMetrics</code> while the check runs and written to
+     * <code>metricsOutputFilename</code> at its end. Times per rule are only taken with <code>benchmark</code> or a
+     * <code>ruleTimeout</code>, which apply the rules one at a time; otherwise the rules share one pass and only
+     * their total time is recorded. With the code check daemon the analysis itself is recorded in the
+     * daemon's JVM, which exposes its metrics in JMX as well.
+     */
+    @Parameter(property = "pmd.metrics", defaultValue = "true")
+    private boolean metrics;
+
+    /**
+     * The JSON file the metrics are written to.
+     */
+    @Parameter(property = "pmd.metricsOutputFilename", defaultValue = "${project.build.directory}/pmd-metrics.json")
+    private String metricsOutputFilename;
+
     /**
      * Source level marker used to indicate whether a RuleViolation should be suppressed. If it is not set, PMD's
      * default will be used, which is <code>NOPMD</code>. See also <a
@@ -135,6 +183,7 @@ public class PmdReport extends AbstractPmdReport {
 
     /**
      * per default pmd executions error are ignored to not break the whole
+     * build; otherwise files that failed, timed out or are quarantined fail it
      *
      * @since 3.1
      */
@@ -152,9 +201,185 @@ public class PmdReport extends AbstractPmdReport {
     @Parameter(property = "pmd.analysisCache", defaultValue = "false")
     private boolean analysisCache;
 
+    /**
+     * The location of the analysis cache, if it is enabled. Files with the same content and the same
+     * active rules are answered from this cache without being parsed again.
+     *
+     * @since 3.8
+     */
+    @Parameter(property = "pmd.analysisCacheLocation", defaultValue = "${project.build.directory}/pmd/pmd.cache")
+    private String analysisCacheLocation;
+
+    /**
+     * Time in milliseconds the analysis of one file may take before it is aborted and the file is reported as
+     * skipped, <code>0</code> for no limit.
+     */
+    @Parameter(property = "pmd.fileTimeout", defaultValue = "300000")
+    private long fileTimeout;
+
+    /**
+     * Time in milliseconds one rule may take on one file before the file is aborted and reported as skipped,
+     * <code>0</code> for no limit.
+     */
+    @Parameter(property = "pmd.ruleTimeout", defaultValue = "0")
+    private long ruleTimeout;
+
+    /**
+     * Whether files that time out are recorded in the analysis cache and skipped by later builds until their
+     * content changes. They are still listed as skipped in the report. Requires <code>analysisCache</code>.
+     */
+    @Parameter(property = "pmd.quarantine", defaultValue = "false")
+    private boolean quarantine;
+
     @Parameter
     private String[] skipRulesets = new String[]{};
 
+    /**
+     * Whether parsed ASTs are kept in memory so that further rule applications to the same file do not
+     * parse it again. Off by default: the check applies all selected rules to a single parse of each file and
+     * drops the AST right after, so the cache only pays off where rules are applied to a file one at a time.
+     */
+    @Parameter(property = "pmd.astCache", defaultValue = "false")
+    private boolean astCache;
+
+    /**
+     * Estimated heap, in megabytes, that cached ASTs may occupy. ASTs pushed out are only kept softly
+     * reachable.
+     */
+    @Parameter(property = "pmd.astCacheSize", defaultValue = "64")
+    private int astCacheSize;
+
+    /**
+     * Lifetime of a cached AST in milliseconds, <code>0</code> to keep it until it is evicted or invalidated.
+     */
+    @Parameter(property = "pmd.astCacheExpire", defaultValue = "0")
+    private long astCacheExpire;
+
+    /**
+     * Whether rules are skipped for files that do not contain any of the tokens the rule declares it needs, see
+     * <code>META-INF/code-check/rule-prerequisites.properties</code>. Files no rule applies to are not parsed.
+     */
+    @Parameter(property = "pmd.rulePrefilter", defaultValue = "true")
+    private boolean rulePrefilter;
+
+    /**
+     * Number of worker threads analyzing files concurrently. Defaults to the number of available
+     * processors; <code>1</code> runs the analysis on the Maven thread.
+     */
+    @Parameter(property = "pmd.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * Report formats to produce: <code>console</code> prints every violation followed by a summary,
+     * <code>summary</code> only the summary, and <code>xml</code>, <code>json</code> and <code>sarif</code> write
+     * <code>pmd.xml</code>, <code>pmd.json</code> and <code>pmd.sarif</code> to the target directory.
+     */
+    @Parameter(property = "pmd.formats", defaultValue = "console")
+    private String[] formats;
+
+    /**
+     * The directory the file based reports are written to.
+     */
+    @Parameter(property = "pmd.targetDirectory", defaultValue = "${project.build.directory}")
+    private File targetDirectory;
+
+    /**
+     * Whether the build fails when more violations are found than allowed by
+     * <code>maxAllowedBlockerViolations</code>, <code>maxAllowedCriticalViolations</code> and
+     * <code>maxAllowedMajorViolations</code>.
+     */
+    @Parameter(property = "pmd.failOnViolation", defaultValue = "false")
+    private boolean failOnViolation;
+
+    /**
+     * Number of BLOCKER violations tolerated before the build fails, <code>-1</code> for no limit.
+     */
+    @Parameter(property = "pmd.maxAllowedBlockerViolations", defaultValue = "0")
+    private int maxAllowedBlockerViolations;
+
+    /**
+     * Number of CRITICAL violations tolerated before the build fails, <code>-1</code> for no limit.
+     */
+    @Parameter(property = "pmd.maxAllowedCriticalViolations", defaultValue = "0")
+    private int maxAllowedCriticalViolations;
+
+    /**
+     * Number of MAJOR violations tolerated before the build fails, <code>-1</code> for no limit.
+     */
+    @Parameter(property = "pmd.maxAllowedMajorViolations", defaultValue = "0")
+    private int maxAllowedMajorViolations;
+
+    /**
+     * With <code>failOnViolation</code>, stop the analysis as soon as the allowed violations are exceeded instead
+     * of checking the remaining files.
+     */
+    @Parameter(property = "pmd.failFast", defaultValue = "false")
+    private boolean failFast;
+
+    /**
+     * Checks the rules that only need signatures and call sites on the compiled classes:
+     * <code>MapOrSetKeyShouldOverrideHashCodeEqualsRule</code>, <code>AliDeprecationRule</code>,
+     * <code>AliAccessStaticViaInstanceRule</code> and <code>AliMissingOverrideAnnotationRule</code>. They stand in
+     * for IDE inspections the build cannot run. Sources without an up to date class file are not checked by these
+     * rules.
+     */
+    @Parameter(property = "pmd.bytecodeRules", defaultValue = "true")
+    private boolean bytecodeRules;
+
+    /**
+     * With <code>bytecodeRules</code>, also checks <code>ThreadPoolCreationRule</code> on the compiled classes in
+     * place of its source version.
+     */
+    @Parameter(property = "pmd.bytecodeTakeOver", defaultValue = "false")
+    private boolean bytecodeTakeOver;
+
+    /**
+     * Keeps the supertypes, members, annotations and dependencies of the project's compiled types, and of the class
+     * directories on the classpath, in an index that is updated with the changed class files only. The bytecode
+     * rules look types up there instead of reading class files, and with the analysis cache and type resolution
+     * enabled the cached results of the files using a type whose signatures changed are dropped. With the index
+     * off, type resolution does not reuse cached results.
+     */
+    @Parameter(property = "pmd.symbolIndex", defaultValue = "true")
+    private boolean symbolIndex;
+
+    /**
+     * The location of the symbol index.
+     */
+    @Parameter(property = "pmd.symbolIndexLocation", defaultValue = "${project.build.directory}/pmd/symbols.index")
+    private String symbolIndexLocation;
+
+    /**
+     * Writes every violation found to the <code>excludeFromFailureFile</code> baseline instead of suppressing the
+     * known ones; the build does not fail on violations while doing so.
+     */
+    @Parameter(property = "pmd.updateBaseline", defaultValue = "false")
+    private boolean updateBaseline;
+
+    /**
+     * Hand the analysis to a running code check daemon (see the <code>daemon</code> goal), which keeps the rules,
+     * the analysis cache and the type resolution classpath warm between builds. Falls back to analyzing in
+     * process when no daemon is reachable.
+     */
+    @Parameter(property = "pmd.daemon", defaultValue = "false")
+    private boolean daemon;
+
+    /**
+     * The registry file of the daemon; defaults to <code>~/.code-check/daemon.properties</code>.
+     */
+    @Parameter(property = "pmd.daemonRegistry")
+    private File daemonRegistry;
+
+    /**
+     * What the running check opened, released by {@link #closeResources()}.
+     */
+    private AnalysisCache cache;
+    private AstCache nodeCache;
+    private AuxClasspathClassLoader auxClassLoader;
+    private RulePrefilter prefilter;
+    private AnalysisWatchdog watchdog;
+    private SymbolIndex index;
+
 
 //
 //    private void executePmdWithClassloader()
@@ -339,21 +564,6 @@ public class PmdReport extends AbstractPmdReport {
     }
 
     public void execute() throws MojoExecutionException, MojoFailureException {
-        List<Dependency> dependencies=project.getDependencies();
-        List<Artifact> artifacts=project.getCompileArtifacts();
-//        project.getSystemClasspathElements()
-        for (Dependency dependency:dependencies){
-            System.out.println(dependency.toString());
-            System.out.println(dependency.getSystemPath());
-            System.out.println();
-        }
-        for (Artifact artifact:artifacts){
-            System.out.println(artifact.toString());
-            System.out.println(artifact.getFile());
-            System.out.println();
-        }
-
-
         if (skip == true) {
             getLog().info("skip code check!");
             return;
@@ -362,23 +572,110 @@ public class PmdReport extends AbstractPmdReport {
             try {
                 filesToProcess = getFilesToProcess();
             } catch (IOException e) {
-                getLog().error("get filesToProcess to excute encounting error!");
+                getLog().error("get filesToProcess to excute encounting error!", e);
             }
         }
         if (filesToProcess == null || filesToProcess.size() == 0) {
             getLog().info("no filesToProcess to excute!");
             return;
         }
-        List<Class<?>> tools = AliLocalInspectionToolProvider.getInspectionClasses();
-        List<Class<?>> localTools = null;
+        List<RuleInfo> ruleInfos = selectRules();
+        if (ruleInfos == null) {
+            return;
+        }
+        Map<String, Rule> selectedBytecodeRules = bytecodeRules
+                ? selectBytecodeRules(ruleInfos) : Collections.<String, Rule>emptyMap();
+        if (ruleInfos.isEmpty() && selectedBytecodeRules.isEmpty()) {
+            getLog().info("no rules left after applying minimumPriority " + minimumPriority + "!");
+            return;
+        }
+        long checkStart = System.nanoTime();
+        long timestamp = System.currentTimeMillis();
+        AsyncViolationSink sink = new AsyncViolationSink(createSinks());
+        nodeCache = new AstCache(astCache, astCacheSize * 1024L * 1024L, astCacheExpire);
+        AnalysisMetrics registry = metrics ? startMetrics() : null;
+        try {
+            String encoding = getSourceEncoding();
+            if (StringUtils.isBlank(encoding)) {
+                encoding = Charset.defaultCharset().name();
+                getLog().warn("File encoding has not been set, using platform encoding " + encoding
+                        + ", i.e. build is platform dependent!");
+            }
+            Map<MavenProject, Map<String, File>> sourcesByProject = sourcesByProject();
+            // with type resolution the result of a file also depends on the types it uses
+            boolean trackDependencies = analysisCache && typeResolution && !ruleInfos.isEmpty();
+            if (!selectedBytecodeRules.isEmpty() || trackDependencies) {
+                index = openSymbolIndex(sourcesByProject.keySet());
+            }
+            Set<File> invalidated = Collections.emptySet();
+            if (trackDependencies && index != null) {
+                invalidated = dependentFiles(index, sourcesByProject);
+            } else if (trackDependencies) {
+                getLog().warn("Without the symbol index the types the analyzed files use are not tracked,"
+                        + " cached results are not reused");
+                invalidated = filesToProcess.keySet();
+            }
+            AnalysisProfiler profiler = benchmark ? new AnalysisProfiler() : null;
+            AnalysisRunner runner = createRunner(ruleInfos, encoding, invalidated, profiler, registry);
+            ViolationBudget budget = new ViolationBudget(maxAllowedBlockerViolations, maxAllowedCriticalViolations,
+                    maxAllowedMajorViolations);
+            ViolationBaseline baseline = createBaseline(encoding);
+            getLog().debug("Analyzing " + filesToProcess.size() + " files with " + runner.getThreads() + " threads");
+            Map<MavenProject, Integer> violationsPerProject = new LinkedHashMap<>();
+            Map<File, List<ProblemDescriptor>> bytecodeProblems = analyzeBytecode(selectedBytecodeRules,
+                    sourcesByProject, index, Charset.forName(encoding), runner.getThreads());
+            AliPmdAnalysisScheduler.ResultHandler handler = createResultHandler(runner, sink, baseline, budget,
+                    bytecodeProblems, violationsPerProject);
+            long start = System.nanoTime();
+            runner.run(ruleInfos.isEmpty() ? Collections.<File>emptyList() : filesToProcess.keySet(), handler);
+            // files no source rule was applied to
+            for (File file : filesToProcess.keySet()) {
+                if (runner.isCancelled() || bytecodeProblems.isEmpty()) {
+                    break;
+                }
+                if (bytecodeProblems.containsKey(file)) {
+                    handler.handle(file, Collections.<ProblemDescriptor>emptyList());
+                }
+            }
+            if (profiler != null) {
+                writeBenchmark(profiler, System.nanoTime() - start, runner.getThreads());
+            }
+            finish(runner, sink, baseline, budget, violationsPerProject);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to complete the code check", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("code check interrupted", e);
+        } catch (AnalysisFailedException e) {
+            throw new MojoExecutionException(e.getMessage(), e.getCause());
+        } finally {
+            closeQuietly(sink);
+            closeResources();
+            if (registry != null) {
+                stopMetrics(registry, timestamp, System.nanoTime() - checkStart);
+            }
+        }
+    }
+
+    /**
+     * The PMD rules selected by <code>rulesets</code>, <code>skipRulesets</code> and <code>minimumPriority</code>.
+     *
+     * @return the selected rules, or <code>null</code> if the configuration selects nothing to check
+     */
+    private List<RuleInfo> selectRules() {
+        List<LocalInspectionTool> tools = AliLocalInspectionToolProvider.getInspectionTools();
+        List<LocalInspectionTool> localTools = null;
+        boolean bytecodeSelected = false;
         if (rulesets != null && rulesets.length > 0) {
             localTools = new ArrayList<>();
             for (String ruleset : rulesets) {
-                Class<?> localTool = getLocalTool(ruleset, tools);
-                if (localTool == null) {
-                    getLog().warn("ruleset:<" + ruleset + ">can not be found,please check your plugin config!");
-                } else {
+                LocalInspectionTool localTool = AliLocalInspectionToolProvider.getInspectionTool(ruleset);
+                if (localTool != null) {
                     localTools.add(localTool);
+                } else if (isBytecodeRule(ruleset)) {
+                    bytecodeSelected = true;
+                } else {
+                    getLog().warn("ruleset:<" + ruleset + ">can not be found,please check your plugin config!");
                 }
             }
         } else {
@@ -387,72 +684,574 @@ public class PmdReport extends AbstractPmdReport {
         if (skipRulesets != null && skipRulesets.length > 0) {
             if (localTools.size() > 0) {
                 for (String skipRuleset : skipRulesets) {
-                    Class<?> localTool = getLocalTool(skipRuleset, tools);
-                    if (localTool == null) {
-                        getLog().warn("ruleset :<" + skipRuleset + ">can not be found,please check your plugin config!");
-                    } else {
+                    LocalInspectionTool localTool = AliLocalInspectionToolProvider.getInspectionTool(skipRuleset);
+                    if (localTool != null) {
                         localTools.remove(localTool);
+                    } else if (!isBytecodeRule(skipRuleset)) {
+                        getLog().warn("ruleset :<" + skipRuleset + ">can not be found,please check your plugin config!");
                     }
                 }
             }
         }
-        if (localTools.size() <= 0) {
+        // with only bytecode rules selected the list stays empty, selectBytecodeRules picks them
+        if (localTools.size() <= 0 && !(bytecodeSelected && bytecodeRules)) {
             getLog().warn("no rulesets can not be found,please check your plugin config!");
-            return;
+            return null;
         }
         if (minimumPriority > 5 || minimumPriority < 1) {
             getLog().warn("minimumPriority is between 1 and 5,please check your plugin config!");
-            return;
+            return null;
         }
-        for (final Class aClass : localTools) {
-            LocalInspectionTool tool = (LocalInspectionTool) instantiateTool(aClass);
+        List<RuleInfo> ruleInfos = new ArrayList<>();
+        for (LocalInspectionTool tool : localTools) {
             RuleInfo ruleInfo = AliLocalInspectionToolProvider.getRuleInfoMap().get(tool.ruleName());
+            if (ruleInfo == null) {
+                getLog().debug("skipping " + tool.ruleName() + ", it is not a PMD rule");
+                continue;
+            }
             if (ruleInfo.getRule().getPriority().getPriority() >= minimumPriority) {
                 continue;
             }
-            Set<Map.Entry<File, PmdFileInfo>> entries = filesToProcess.entrySet();
-            for (Map.Entry<File, PmdFileInfo> entry : entries) {
-                ProblemDescriptor[] problemDescriptors = tool.checkFile(entry.getKey(), false);
-                if (problemDescriptors != null && problemDescriptors.length > 0) {
-                    for (ProblemDescriptor problemDescriptor : problemDescriptors) {
-                        HighlightDisplayLevel level = HighlightDisplayLevels.getHighlightDisplayLevel(problemDescriptor.getRule().getPriority());
-                        if (level.equals(HighlightDisplayLevels.CRITICAL)) {
-                            LOG.critical(problemDescriptor.toString());
-                        } else if (level.equals(HighlightDisplayLevels.BLOCKER)) {
-                            LOG.blocker(problemDescriptor.toString());
-                        } else if (level.equals(HighlightDisplayLevels.MAJOR)) {
-                            LOG.major(problemDescriptor.toString());
-                        } else {
-                            LOG.error(problemDescriptor.toString());
+            ruleInfos.add(ruleInfo);
+        }
+        return ruleInfos;
+    }
+
+    /**
+     * Hands the analysis to the code check daemon if one is configured and reachable, otherwise sets up the in
+     * process engine; the resources it opens are released by {@link #closeResources()}.
+     *
+     * @param invalidated files whose cached results are dropped before the analysis
+     */
+    private AnalysisRunner createRunner(List<RuleInfo> ruleInfos, String encoding, Set<File> invalidated,
+                                        AnalysisProfiler profiler, AnalysisMetrics registry) {
+        Set<File> auxClasspath = typeResolution ? getAuxClasspath() : null;
+        DaemonClient client = daemon ? connectDaemon(profiler) : null;
+        if (client != null) {
+            client.configure(encoding, minimumPriority, threads, analysisCache ? new File(analysisCacheLocation) : null,
+                    auxClasspath, rulePrefilter, suppressMarker, ruleInfos);
+            client.configureTimeouts(fileTimeout, ruleTimeout, quarantine);
+            client.invalidate(invalidated);
+            return client;
+        }
+        AliPmdAnalysisEngine engine = new AliPmdAnalysisEngine(ruleInfos, encoding);
+        cache = openAnalysisCache(ruleInfos, encoding, auxClasspath);
+        if (cache != null) {
+            for (File file : invalidated) {
+                cache.invalidate(file);
+            }
+            if (registry != null) {
+                registerCacheGauges(registry, cache);
+            }
+        }
+        engine.setAnalysisCache(cache);
+        engine.setProfiler(profiler);
+        auxClassLoader = auxClasspath != null ? new AuxClasspathClassLoader(auxClasspath) : null;
+        engine.setAuxClassLoader(auxClassLoader);
+        engine.setNodeCache(nodeCache);
+        engine.setSuppressMarker(suppressMarker);
+        prefilter = rulePrefilter ? RulePrefilter.load() : null;
+        engine.setRulePrefilter(prefilter);
+        if (fileTimeout > 0 || ruleTimeout > 0) {
+            watchdog = new AnalysisWatchdog(fileTimeout, ruleTimeout);
+            engine.setWatchdog(watchdog);
+        }
+        engine.setQuarantine(quarantine);
+        return new AliPmdAnalysisScheduler(engine, threads);
+    }
+
+    /**
+     * Merges the bytecode problems of each analyzed file into its source problems and reports those on reported
+     * lines that the baseline does not know; with <code>updateBaseline</code> they are recorded instead. Stops
+     * {@code runner} once the allowed violations are exceeded if <code>failFast</code> is set.
+     */
+    private AliPmdAnalysisScheduler.ResultHandler createResultHandler(
+            final AnalysisRunner runner, final ViolationSink sink, final ViolationBaseline baseline,
+            final ViolationBudget budget, final Map<File, List<ProblemDescriptor>> bytecodeProblems,
+            final Map<MavenProject, Integer> violationsPerProject) {
+        final boolean recordBaseline = baseline != null && updateBaseline;
+        final boolean stopWhenExceeded = failOnViolation && failFast && !recordBaseline;
+        return new AliPmdAnalysisScheduler.ResultHandler() {
+            @Override
+            public void handle(File file, List<ProblemDescriptor> sourceProblems) throws IOException {
+                List<ProblemDescriptor> problems = sourceProblems;
+                List<ProblemDescriptor> fromBytecode = bytecodeProblems.remove(file);
+                if (fromBytecode != null) {
+                    problems = new ArrayList<>(sourceProblems);
+                    problems.addAll(fromBytecode);
+                }
+                int reported = 0;
+                for (ProblemDescriptor problemDescriptor : problems) {
+                    if (isReportedLine(file, problemDescriptor.getBeginLine())) {
+                        if (recordBaseline) {
+                            baseline.record(file, problemDescriptor);
+                        } else if (baseline != null && baseline.match(file, problemDescriptor)) {
+                            continue;
+                        }
+                        sink.accept(problemDescriptor);
+                        reported++;
+                        if (budget.count(problemDescriptor) && stopWhenExceeded && !runner.isCancelled()) {
+                            getLog().info("Allowed violations exceeded, stopping the analysis");
+                            runner.cancel();
                         }
-//                        throw new MojoExecutionException("code check failed,please fix your code first!");
                     }
                 }
+                if (reported > 0) {
+                    MavenProject owner = filesToProcess.get(file).getProject();
+                    Integer count = violationsPerProject.get(owner);
+                    violationsPerProject.put(owner, count == null ? reported : count + reported);
+                }
+            }
+        };
+    }
+
+    /**
+     * Completes the reports and the baseline and fails the build if the violations or skipped files call for it.
+     */
+    private void finish(AnalysisRunner runner, ViolationSink sink, ViolationBaseline baseline, ViolationBudget budget,
+                        Map<MavenProject, Integer> violationsPerProject) throws IOException, MojoFailureException {
+        boolean recordBaseline = baseline != null && updateBaseline;
+        List<SkippedInputs.SkippedInput> skipped = runner.getSkippedInputs().getInputs();
+        sink.skipped(skipped);
+        sink.close();
+        if (recordBaseline) {
+            baseline.write();
+            getLog().info("Baseline of " + baseline.getRecorded() + " violations written to " + baseline.getLocation());
+        } else if (baseline != null && baseline.getSuppressed() > 0) {
+            getLog().info(baseline.getSuppressed() + " known violations suppressed by " + baseline.getLocation());
+        }
+        if (isAggregate()) {
+            for (Map.Entry<MavenProject, Integer> entry : violationsPerProject.entrySet()) {
+                getLog().info(entry.getKey().getId() + ": " + entry.getValue() + " violations");
+            }
+        }
+        if (failOnViolation && !recordBaseline && budget.isExceeded()) {
+            throw new MojoFailureException("code check failed, please fix your code first! " + budget);
+        }
+        if (!skipPmdError && !skipped.isEmpty()) {
+            throw new MojoFailureException("code check failed, " + skipped.size() + " files could not be analyzed");
+        }
+    }
+
+    /**
+     * Releases what {@link #createRunner} and the symbol index opened.
+     */
+    private void closeResources() {
+        if (watchdog != null) {
+            watchdog.close();
+            watchdog = null;
+        }
+        if (auxClassLoader != null) {
+            auxClassLoader.close();
+            auxClassLoader = null;
+        }
+        if (nodeCache != null) {
+            getLog().debug(nodeCache.toString());
+            nodeCache.invalidateAll();
+            nodeCache = null;
+        }
+        if (prefilter != null) {
+            getLog().debug(prefilter.toString());
+            prefilter = null;
+        }
+        if (cache != null) {
+            getLog().info("Analysis cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+            cache.close();
+            cache = null;
+        }
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+    }
+
+    /**
+     * The bytecode-only rules selected by <code>rulesets</code>, <code>skipRulesets</code> and
+     * <code>minimumPriority</code>, plus with <code>bytecodeTakeOver</code> the selected source rules the bytecode
+     * tier takes over; those are removed from {@code ruleInfos}.
+     */
+    private Map<String, Rule> selectBytecodeRules(List<RuleInfo> ruleInfos) {
+        Map<String, Rule> selected = new LinkedHashMap<>();
+        for (Map.Entry<String, Rule> entry : BytecodeRules.newRules().entrySet()) {
+            if (isRuleSelected(entry.getKey()) && entry.getValue().getPriority().getPriority() < minimumPriority) {
+                selected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Iterator<RuleInfo> iterator = ruleInfos.iterator(); bytecodeTakeOver && iterator.hasNext(); ) {
+            Rule rule = iterator.next().getRule();
+            if (BytecodeRules.TAKEN_OVER.contains(rule.getName())) {
+                selected.put(rule.getName(), rule);
+                iterator.remove();
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Whether <code>rulesets</code> and <code>skipRulesets</code> select a bytecode rule, accepting the same
+     * spellings as for the PMD rules.
+     */
+    private boolean isRuleSelected(String ruleName) {
+        if (skipRulesets != null) {
+            for (String skipRuleset : skipRulesets) {
+                if (ruleName.equals(AliLocalInspectionToolProvider.resolveRuleName(skipRuleset,
+                        BytecodeRules.RULE_NAMES))) {
+                    return false;
+                }
+            }
+        }
+        if (rulesets == null || rulesets.length == 0) {
+            return true;
+        }
+        for (String ruleset : rulesets) {
+            if (ruleName.equals(AliLocalInspectionToolProvider.resolveRuleName(ruleset, BytecodeRules.RULE_NAMES))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBytecodeRule(String name) {
+        return AliLocalInspectionToolProvider.resolveRuleName(name, BytecodeRules.RULE_NAMES) != null;
+    }
+
+    /**
+     * Checks the bytecode rules on the output directories of the analyzed projects.
+     *
+     * @return the problems per analyzed source file
+     */
+    private Map<File, List<ProblemDescriptor>> analyzeBytecode(Map<String, Rule> rules,
+                                                               Map<MavenProject, Map<String, File>> sourcesByProject,
+                                                               SymbolIndex index, Charset encoding, int threads) {
+        if (rules.isEmpty()) {
+            return new HashMap<>();
+        }
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(rules, getAuxClasspath(), encoding, threads);
+        analyzer.setSymbolIndex(index);
+        long start = System.nanoTime();
+        try {
+            for (Map.Entry<MavenProject, Map<String, File>> entry : sourcesByProject.entrySet()) {
+                analyzer.scan(new File(entry.getKey().getBuild().getOutputDirectory()), entry.getValue());
+                if (includeTests) {
+                    analyzer.scan(new File(entry.getKey().getBuild().getTestOutputDirectory()), entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            getLog().warn("Unable to scan the compiled classes, bytecode rules are incomplete", e);
+        } finally {
+            analyzer.close();
+            AnalysisMetrics.time(AnalysisMetrics.BYTECODE, System.nanoTime() - start);
+        }
+        AnalysisMetrics.count(AnalysisMetrics.BYTECODE_CLASSES, analyzer.getScannedClasses());
+        if (analyzer.getStaleClasses() > 0) {
+            getLog().warn(analyzer.getStaleClasses() + " class files are older than their sources and were not checked"
+                    + " by the bytecode rules, compile before checking");
+        }
+        getLog().debug("Bytecode rules " + rules.keySet() + " checked " + analyzer.getScannedClasses() + " classes");
+        return analyzer.getProblems();
+    }
+
+    /**
+     * @return the analyzed files per project, keyed by their path relative to the source root with <code>/</code>
+     * separators
+     */
+    private Map<MavenProject, Map<String, File>> sourcesByProject() {
+        Map<MavenProject, Map<String, File>> sourcesByProject = new LinkedHashMap<>();
+        for (Map.Entry<File, PmdFileInfo> entry : filesToProcess.entrySet()) {
+            String relativePath = relativeSourcePath(entry.getKey(), entry.getValue().getSourceDirectory());
+            if (relativePath == null) {
+                continue;
+            }
+            Map<String, File> sources = sourcesByProject.get(entry.getValue().getProject());
+            if (sources == null) {
+                sources = new HashMap<>();
+                sourcesByProject.put(entry.getValue().getProject(), sources);
+            }
+            sources.put(relativePath, entry.getKey());
+        }
+        return sourcesByProject;
+    }
+
+    /**
+     * The analyzed files whose cached results may be stale although their content is unchanged, because the
+     * signatures of types they use changed since the last build.
+     */
+    private Set<File> dependentFiles(SymbolIndex index, Map<MavenProject, Map<String, File>> sourcesByProject) {
+        Set<String> changed = index.getChangedTypes();
+        if (changed.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<File> files = new HashSet<>();
+        try {
+            for (String type : index.getAffectedTypes(changed)) {
+                String path = index.getSourcePath(type);
+                if (path == null) {
+                    continue;
+                }
+                for (Map<String, File> sources : sourcesByProject.values()) {
+                    File file = sources.get(path);
+                    if (file != null) {
+                        files.add(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            getLog().warn("Unable to read the type dependencies, files using changed types may report stale results", e);
+        }
+        getLog().info(changed.size() + " changed types, re-analyzing " + files.size() + " dependent files");
+        return files;
+    }
+
+    /**
+     * @return the symbol index brought up to date with the output directories of {@code projects} and the class
+     * directories on their classpath, such as those of upstream modules in a reactor build, or <code>null</code>
+     * if it is disabled or cannot be opened
+     */
+    private SymbolIndex openSymbolIndex(Collection<MavenProject> projects) {
+        if (!symbolIndex) {
+            return null;
+        }
+        Set<File> directories = new LinkedHashSet<>();
+        for (MavenProject localProject : projects) {
+            directories.add(new File(localProject.getBuild().getOutputDirectory()).getAbsoluteFile());
+            if (includeTests) {
+                directories.add(new File(localProject.getBuild().getTestOutputDirectory()).getAbsoluteFile());
+            }
+        }
+        for (File element : getAuxClasspath()) {
+            if (element.isDirectory()) {
+                directories.add(element.getAbsoluteFile());
+            }
+        }
+        File location = new File(symbolIndexLocation);
+        SymbolIndex index = null;
+        try {
+            index = SymbolIndex.open(location);
+            int updated = 0;
+            for (File directory : directories) {
+                updated += index.update(directory);
+            }
+            getLog().debug("Symbol index " + location + " updated with " + updated + " class files");
+            return index;
+        } catch (IOException e) {
+            getLog().warn("Unable to update symbol index " + location + ", reading class files instead", e);
+            if (index != null) {
+                index.close();
+            }
+            return null;
+        }
+    }
+
+    private static String relativeSourcePath(File file, File sourceDirectory) {
+        if (sourceDirectory == null) {
+            return null;
+        }
+        String root = sourceDirectory.getPath() + File.separator;
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(root)) {
+            try {
+                path = file.getCanonicalPath();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return path.startsWith(root) ? path.substring(root.length()).replace(File.separatorChar, '/') : null;
+    }
+
+    /**
+     * @return the baseline of known violations, or <code>null</code> if none is configured
+     */
+    private ViolationBaseline createBaseline(String encoding) {
+        if (StringUtils.isBlank(excludeFromFailureFile)) {
+            if (updateBaseline) {
+                getLog().warn("pmd.updateBaseline is set but no pmd.excludeFromFailureFile, no baseline is written");
+            }
+            return null;
+        }
+        File location = new File(excludeFromFailureFile.trim());
+        if (!location.isAbsolute() && project != null && project.getBasedir() != null) {
+            location = new File(project.getBasedir(), location.getPath());
+        }
+        ViolationBaseline baseline = new ViolationBaseline(location, Charset.forName(encoding));
+        if (!updateBaseline && !baseline.exists()) {
+            getLog().warn("Baseline " + location + " does not exist, reporting every violation");
+            return null;
+        }
+        return baseline;
+    }
+
+    /**
+     * @return the daemon to analyze with, or <code>null</code> to analyze in process
+     */
+    private DaemonClient connectDaemon(AnalysisProfiler profiler) {
+        if (profiler != null) {
+            getLog().info("Benchmarking analyzes in process, not using the code check daemon");
+            return null;
+        }
+        File registry = daemonRegistry != null ? daemonRegistry : DaemonRegistry.defaultLocation();
+        DaemonClient client = DaemonClient.connect(registry);
+        if (client == null) {
+            getLog().info("No code check daemon reachable through " + registry + ", analyzing in process");
+        } else {
+            getLog().debug("Analyzing with the code check daemon registered in " + registry);
+        }
+        return client;
+    }
+
+    /**
+     * The compile (and, with <code>includeTests</code>, test) classpath of every analyzed project, for one class
+     * loader shared by all analysis threads.
+     */
+    private Set<File> getAuxClasspath() {
+        Set<File> classpath = new LinkedHashSet<>();
+        List<MavenProject> projects = isAggregate() ? reactorProjects : Collections.singletonList(project);
+        for (MavenProject localProject : projects) {
+            try {
+                List<String> elements = includeTests ? localProject.getTestClasspathElements()
+                        : localProject.getCompileClasspathElements();
+                for (String element : elements) {
+                    classpath.add(new File(element));
+                }
+            } catch (DependencyResolutionRequiredException e) {
+                getLog().warn("Dependencies of " + localProject.getId() + " are not resolved, type resolution will not see them");
             }
+        }
+        getLog().debug("Type resolution classpath: " + classpath);
+        return classpath;
+    }
+
+    /**
+     * @return a registry recording the check, current and registered in JMX
+     */
+    private AnalysisMetrics startMetrics() {
+        AnalysisMetrics registry = new AnalysisMetrics();
+        registry.registerJvmGauges();
+        final AstCache nodeCache = this.nodeCache;
+        registry.gauge("astCache.hits", new AnalysisMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return nodeCache.getHits();
+            }
+        });
+        registry.gauge("astCache.misses", new AnalysisMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return nodeCache.getMisses();
+            }
+        });
+        registry.gauge("astCache.evictions", new AnalysisMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return nodeCache.getEvictions();
+            }
+        });
+        registry.counter(AnalysisMetrics.FILES_DISCOVERED).set(filesToProcess.size());
+        registry.registerMBean(project.getId());
+        registry.activate();
+        return registry;
+    }
+
+    private static void registerCacheGauges(AnalysisMetrics registry, final AnalysisCache cache) {
+        registry.gauge("analysisCache.hits", new AnalysisMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return cache.getHits();
+            }
+        });
+        registry.gauge("analysisCache.misses", new AnalysisMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return cache.getMisses();
+            }
+        });
+    }
 
+    private void stopMetrics(AnalysisMetrics registry, long timestamp, long wallNanos) {
+        registry.deactivate();
+        registry.unregisterMBean();
+        File file = new File(metricsOutputFilename);
+        try {
+            new MetricsReportWriter(registry, project.getId(), timestamp, wallNanos).write(file);
+            getLog().debug("Metrics written to " + file);
+        } catch (IOException e) {
+            getLog().warn("Unable to write metrics " + file, e);
         }
     }
 
+    private void writeBenchmark(AnalysisProfiler profiler, long wallNanos, int threads) {
+        File textFile = new File(benchmarkOutputFilename);
+        try {
+            new BenchmarkReportWriter(profiler, wallNanos, threads, benchmarkTop).write(textFile);
+            getLog().info("Benchmark report written to " + textFile + " and " + BenchmarkReportWriter.jsonFile(textFile));
+        } catch (IOException e) {
+            getLog().warn("Unable to write benchmark report " + textFile, e);
+        }
+    }
 
-    static Class<?> getLocalTool(String ruleName, List<Class<?>> toolClasss) {
-        for (Class<?> toolClass : toolClasss) {
-            if (toolClass.getName().equals(ruleName)) {
-                return toolClass;
+    private List<ViolationSink> createSinks() throws MojoExecutionException {
+        List<ViolationSink> sinks = new ArrayList<>();
+        try {
+            for (String format : formats == null ? new String[]{"console"} : formats) {
+                String name = format.trim().toLowerCase(Locale.ENGLISH);
+                if ("console".equals(name) || "summary".equals(name)) {
+                    sinks.add(new ConsoleSummarySink(getLog(), System.out, "console".equals(name)));
+                } else if ("xml".equals(name)) {
+                    sinks.add(new XmlViolationSink(reportFile("pmd.xml")));
+                } else if ("json".equals(name)) {
+                    sinks.add(new JsonViolationSink(reportFile("pmd.json")));
+                } else if ("sarif".equals(name)) {
+                    sinks.add(new SarifViolationSink(reportFile("pmd.sarif")));
+                } else {
+                    getLog().warn("format:<" + format + "> is not supported, please check your plugin config!");
+                }
             }
+        } catch (IOException e) {
+            for (ViolationSink sink : sinks) {
+                closeQuietly(sink);
+            }
+            throw new MojoExecutionException("Unable to create the code check report", e);
         }
-        return null;
+        return sinks;
     }
 
+    private File reportFile(String name) throws IOException {
+        if (!targetDirectory.isDirectory() && !targetDirectory.mkdirs()) {
+            throw new IOException("Unable to create report directory " + targetDirectory);
+        }
+        File file = new File(targetDirectory, name);
+        getLog().debug("Writing report " + file);
+        return file;
+    }
 
-    static Object instantiateTool(Class<?> toolClass) {
+    private void closeQuietly(ViolationSink sink) {
         try {
-            return ReflectionUtil.newInstance(toolClass, new Class[0]);
-        } catch (RuntimeException e) {
-            e.printStackTrace();
+            sink.close();
+        } catch (IOException e) {
+            getLog().warn("Unable to complete the code check report", e);
         }
-        return null;
     }
 
+    /**
+     * @param auxClasspath the type resolution classpath, <code>null</code> when type resolution is disabled
+     */
+    private AnalysisCache openAnalysisCache(List<RuleInfo> ruleInfos, String encoding, Set<File> auxClasspath) {
+        if (!analysisCache) {
+            return null;
+        }
+        List<String> ruleNames = new ArrayList<>(ruleInfos.size());
+        for (RuleInfo ruleInfo : ruleInfos) {
+            ruleNames.add(ruleInfo.getRule().getName());
+        }
+        File location = new File(analysisCacheLocation);
+        try {
+            getLog().debug("Using analysis cache location: " + location);
+            return AnalysisCache.open(location, AnalysisCache.fingerprint(ruleNames, minimumPriority, encoding,
+                    auxClasspath, rulePrefilter, suppressMarker));
+        } catch (IOException e) {
+            getLog().warn("Unable to open analysis cache " + location + ", running without it", e);
+            return null;
+        }
+    }
 
 //    /**
 //     * Constructs the PMD configuration class, passing it an argument that configures the target JDK.
@@ -0,0 +1,225 @@
+package com.gome.maven.plugin.code.check;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the source files below a set of roots with {@link Files#walkFileTree}.
+ * <p>
+ * The Ant style include and exclude patterns are compiled to glob {@link PathMatcher}s once and matched
+ * against root relative paths. Directories covered by an exclude pattern ending in <code>/**</code> or by an
+ * exclude root are pruned before they are entered. Each root is canonicalized once and files are resolved
+ * against it, so only files reached through a symbolic link directory are canonicalized individually.
+ * Roots are walked concurrently; results are returned per root in the order the roots were given.
+ */
+class SourceFileScanner {
+
+    private final Log log;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final List<PathMatcher> excludedDirectories;
+    private final List<Path> excludeRoots;
+
+    /**
+     * @param includes     Ant style include patterns
+     * @param excludes     Ant style exclude patterns
+     * @param excludeRoots directories whose whole subtree is skipped
+     */
+    SourceFileScanner(Collection<String> includes, Collection<String> excludes, Collection<File> excludeRoots, Log log) {
+        this.log = log;
+        FileSystem fileSystem = FileSystems.getDefault();
+        this.includes = compile(fileSystem, includes);
+        this.excludes = compile(fileSystem, excludes);
+        List<String> directoryPatterns = new ArrayList<String>();
+        for (String exclude : excludes) {
+            String pattern = normalize(exclude);
+            if (pattern.endsWith("/**")) {
+                directoryPatterns.add(pattern.substring(0, pattern.length() - 3));
+            }
+        }
+        this.excludedDirectories = compile(fileSystem, directoryPatterns);
+        this.excludeRoots = new ArrayList<Path>(excludeRoots.size());
+        for (File excludeRoot : excludeRoots) {
+            this.excludeRoots.add(realPath(excludeRoot.toPath()));
+        }
+    }
+
+    /**
+     * @return the matching files of every root, canonical, in the order of {@code roots}
+     */
+    List<List<File>> scan(List<File> roots) throws IOException {
+        List<List<File>> result = new ArrayList<List<File>>(roots.size());
+        if (roots.size() <= 1) {
+            for (File root : roots) {
+                result.add(scan(root));
+            }
+            return result;
+        }
+        int threads = Math.min(roots.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<File>>> futures = new ArrayList<Future<List<File>>>(roots.size());
+            for (final File root : roots) {
+                futures.add(executor.submit(new Callable<List<File>>() {
+                    @Override
+                    public List<File> call() throws IOException {
+                        return scan(root);
+                    }
+                }));
+            }
+            for (Future<List<File>> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while scanning source roots", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("scanning source roots failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    List<File> scan(File root) throws IOException {
+        final Path realRoot = realPath(root.toPath());
+        final List<File> files = new ArrayList<File>();
+        if (!Files.isDirectory(realRoot)) {
+            return files;
+        }
+        Files.walkFileTree(realRoot, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    /**
+                     * For every entered directory, whether it or one of its ancestors is a symbolic link.
+                     */
+                    private final Deque<Boolean> linked = new ArrayDeque<Boolean>();
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (isExcludedRoot(dir)) {
+                            log.debug("Directory " + dir + " has been excluded as it matches an excludeRoot");
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        Path relative = realRoot.relativize(dir);
+                        if (!relative.toString().isEmpty() && matches(excludedDirectories, relative)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        boolean parentLinked = !linked.isEmpty() && linked.peek();
+                        linked.push(parentLinked || Files.isSymbolicLink(dir));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                        linked.pop();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        Path relative = realRoot.relativize(file);
+                        if (attrs.isRegularFile() && matches(includes, relative) && !matches(excludes, relative)) {
+                            files.add((linked.peek() ? file.toRealPath() : file).toFile());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        log.warn("Unable to read " + file + ": " + exc);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return files;
+    }
+
+    private boolean isExcludedRoot(Path dir) {
+        for (Path excludeRoot : excludeRoots) {
+            if (dir.startsWith(excludeRoot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relative) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translates Ant patterns to globs. Ant's <code>**&#47;</code> also matches no directory at all, which a glob
+     * does not, so every pattern yields one matcher per combination of its <code>**&#47;</code> segments dropped.
+     */
+    private static List<PathMatcher> compile(FileSystem fileSystem, Collection<String> patterns) {
+        Set<String> globs = new LinkedHashSet<String>();
+        for (String pattern : patterns) {
+            addVariants(normalize(pattern), globs);
+        }
+        List<PathMatcher> matchers = new ArrayList<PathMatcher>(globs.size());
+        for (String glob : globs) {
+            matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+        return matchers;
+    }
+
+    private static void addVariants(String pattern, Set<String> variants) {
+        if (pattern.isEmpty() || !variants.add(pattern)) {
+            return;
+        }
+        int index = pattern.indexOf("**/");
+        while (index >= 0) {
+            if (index == 0 || pattern.charAt(index - 1) == '/') {
+                addVariants(pattern.substring(0, index) + pattern.substring(index + 3), variants);
+            }
+            index = pattern.indexOf("**/", index + 1);
+        }
+    }
+
+    private static String normalize(String pattern) {
+        String normalized = pattern.trim().replace('\\', '/');
+        if (normalized.endsWith("/")) {
+            normalized = normalized + "**";
+        }
+        return normalized;
+    }
+
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            return path.toAbsolutePath().normalize();
+        }
+    }
+}
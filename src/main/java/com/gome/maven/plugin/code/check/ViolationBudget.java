@@ -0,0 +1,59 @@
+package com.gome.maven.plugin.code.check;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevel;
+import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevels;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts reported violations per {@link HighlightDisplayLevels level} against the number allowed for that
+ * level. A negative allowance means the level is unlimited.
+ */
+class ViolationBudget {
+
+    private final Map<HighlightDisplayLevel, int[]> levels = new LinkedHashMap<HighlightDisplayLevel, int[]>();
+
+    ViolationBudget(int maxBlocker, int maxCritical, int maxMajor) {
+        levels.put(HighlightDisplayLevels.BLOCKER, new int[]{maxBlocker, 0});
+        levels.put(HighlightDisplayLevels.CRITICAL, new int[]{maxCritical, 0});
+        levels.put(HighlightDisplayLevels.MAJOR, new int[]{maxMajor, 0});
+    }
+
+    /**
+     * @return whether the budget is exceeded after counting {@code problem}
+     */
+    boolean count(ProblemDescriptor problem) {
+        int[] level = levels.get(HighlightDisplayLevels.getHighlightDisplayLevel(problem.getRule().getPriority()));
+        level[1]++;
+        return isExceeded();
+    }
+
+    boolean isExceeded() {
+        for (int[] level : levels.values()) {
+            if (level[0] >= 0 && level[1] > level[0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * E.g. <code>BLOCKER 3 (allowed 0), CRITICAL 1 (allowed 5), MAJOR 12</code>.
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<HighlightDisplayLevel, int[]> entry : levels.entrySet()) {
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            out.append(entry.getKey().getName()).append(' ').append(entry.getValue()[1]);
+            if (entry.getValue()[0] >= 0) {
+                out.append(" (allowed ").append(entry.getValue()[0]).append(')');
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,245 @@
+package com.gome.maven.plugin.code.pmd.baseline;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SourceBuffer;
+import com.google.common.hash.Hashing;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TLongIntHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The known violations of a code base, so that only new ones are reported when the check is adopted on
+ * legacy code.
+ * <p>
+ * A violation is identified by a 64-bit fingerprint of its rule, its file relative to the baseline and the
+ * whitespace-free text of its first line. Line numbers are not part of it, so edits elsewhere in the file
+ * do not invalidate the baseline. A fingerprint recorded n times suppresses at most n violations, so copying a
+ * baselined statement still reports the copy.
+ * <p>
+ * The line text is taken from the violation, where the engine attached it with {@link #attachSnippets} from the
+ * source it already holds; only violations without one, such as those of the bytecode rules, have their file read.
+ * <p>
+ * The file holds the sorted fingerprints in binary form, 8 bytes each; it is only read when the first violation
+ * is checked, into a hash map answering each check in constant time. Instances are confined to the thread
+ * handling the results.
+ */
+public class ViolationBaseline {
+
+    private static final int MAGIC = 0x43434231;
+
+    private final File location;
+    private final File root;
+    private final Charset charset;
+
+    private TLongIntHashMap remaining;
+    private final TLongArrayList recorded = new TLongArrayList();
+    private int suppressed;
+
+    private File currentFile;
+    private CharSequence currentSource;
+    private int[] lineStarts;
+
+    /**
+     * @param location the baseline file; paths are fingerprinted relative to its directory
+     * @param charset  the encoding of the analyzed sources
+     */
+    public ViolationBaseline(File location, Charset charset) {
+        this.location = location.getAbsoluteFile();
+        this.root = this.location.getParentFile();
+        this.charset = charset;
+    }
+
+    public File getLocation() {
+        return location;
+    }
+
+    public boolean exists() {
+        return location.isFile();
+    }
+
+    /**
+     * Checks {@code violation} against the baseline, using up one occurrence of its fingerprint when it matches.
+     *
+     * @return whether the violation is known and should not be reported
+     */
+    public boolean match(File file, ProblemDescriptor violation) throws IOException {
+        if (remaining == null) {
+            remaining = load();
+        }
+        if (remaining.isEmpty()) {
+            return false;
+        }
+        long fingerprint = fingerprint(file, violation);
+        int count = remaining.get(fingerprint);
+        if (count <= 0) {
+            return false;
+        }
+        if (count == 1) {
+            remaining.remove(fingerprint);
+        } else {
+            remaining.put(fingerprint, count - 1);
+        }
+        suppressed++;
+        return true;
+    }
+
+    /**
+     * Adds {@code violation} to the baseline written by {@link #write()}.
+     */
+    public void record(File file, ProblemDescriptor violation) {
+        recorded.add(fingerprint(file, violation));
+    }
+
+    /**
+     * Replaces the baseline file with the recorded violations.
+     */
+    public void write() throws IOException {
+        if (root != null && !root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create " + root);
+        }
+        long[] fingerprints = recorded.toNativeArray();
+        Arrays.sort(fingerprints);
+        File temp = new File(location.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(fingerprints.length);
+            for (long fingerprint : fingerprints) {
+                out.writeLong(fingerprint);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(location)) {
+            location.delete();
+            if (!temp.renameTo(location)) {
+                throw new IOException("Unable to write " + location);
+            }
+        }
+    }
+
+    /**
+     * Number of violations suppressed so far.
+     */
+    public int getSuppressed() {
+        return suppressed;
+    }
+
+    public int getRecorded() {
+        return recorded.size();
+    }
+
+    private TLongIntHashMap load() throws IOException {
+        if (!location.isFile()) {
+            return new TLongIntHashMap();
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(location), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(location + " is not a code check baseline");
+            }
+            int size = in.readInt();
+            TLongIntHashMap fingerprints = new TLongIntHashMap(Math.max(16, size));
+            for (int i = 0; i < size; i++) {
+                long fingerprint = in.readLong();
+                if (!fingerprints.increment(fingerprint)) {
+                    fingerprints.put(fingerprint, 1);
+                }
+            }
+            return fingerprints;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Attaches the text of its first line to every problem, from the source the problems were found in.
+     */
+    public static void attachSnippets(List<ProblemDescriptor> problems, CharSequence source) {
+        if (problems.isEmpty()) {
+            return;
+        }
+        int[] lineStarts = lineStarts(source);
+        for (ProblemDescriptor problem : problems) {
+            problem.setSnippet(snippet(source, lineStarts, problem.getBeginLine()));
+        }
+    }
+
+    private long fingerprint(File file, ProblemDescriptor violation) {
+        String snippet = violation.getSnippet();
+        if (snippet == null) {
+            snippet = snippet(file, violation.getBeginLine());
+        }
+        return Hashing.murmur3_128().newHasher()
+                .putString(violation.getRule().getName(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(relativePath(file), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(snippet, StandardCharsets.UTF_8)
+                .hash().asLong();
+    }
+
+    private String relativePath(File file) {
+        String path = file.getAbsolutePath();
+        String base = root == null ? null : root.getPath() + File.separator;
+        if (base != null && path.startsWith(base)) {
+            path = path.substring(base.length());
+        }
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * The text of {@code line} of {@code file} without any whitespace, or an empty string if it cannot be read.
+     */
+    private String snippet(File file, int line) {
+        if (!file.equals(currentFile)) {
+            currentFile = file;
+            try {
+                currentSource = SourceBuffer.read(file, charset);
+            } catch (IOException e) {
+                currentSource = "";
+            }
+            lineStarts = lineStarts(currentSource);
+        }
+        return snippet(currentSource, lineStarts, line);
+    }
+
+    private static String snippet(CharSequence source, int[] lineStarts, int line) {
+        if (line < 1 || line > lineStarts.length) {
+            return "";
+        }
+        int start = lineStarts[line - 1];
+        int end = line < lineStarts.length ? lineStarts[line] : source.length();
+        StringBuilder snippet = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                snippet.append(c);
+            }
+        }
+        return snippet.toString();
+    }
+
+    private static int[] lineStarts(CharSequence source) {
+        TIntArrayList starts = new TIntArrayList();
+        starts.add(0);
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == source.length() || source.charAt(i + 1) != '\n'))) {
+                starts.add(i + 1);
+            }
+        }
+        return starts.toNativeArray();
+    }
+}
@@ -0,0 +1,353 @@
+package com.gome.maven.plugin.code.pmd.benchmark;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, timers, histograms and gauges of one code check, cheap enough to stay enabled in every build.
+ * <p>
+ * The registry made current with {@link #activate()} receives what the analysis reports through the static
+ * {@link #count(String, long)}, {@link #time(String, long)} and {@link #sample(String, long)}; without one these
+ * calls do nothing, so the processing code can report unconditionally. A registry is current for the thread that
+ * activated it and for the threads it starts through {@link #inheriting(Runnable)}, so mojos checking modules in
+ * parallel each record into their own. Phase and rule times reported to the
+ * {@link AnalysisProfiler} are recorded as the timers {@value #PHASE_PREFIX}<i>phase</i> and
+ * {@value #RULE_PREFIX}<i>rule</i>. Timers and histograms keep power of two buckets, so their percentiles are
+ * upper bounds within a factor of two.
+ */
+public class AnalysisMetrics implements AnalysisMetricsMXBean {
+
+    public static final String FILES_DISCOVERED = "files.discovered";
+    public static final String FILES_ANALYZED = "files.analyzed";
+    public static final String FILE_BYTES = "files.bytes";
+    public static final String BYTES_READ = "bytes.read";
+    public static final String PHASE_PREFIX = "phase.";
+    public static final String RULE_PREFIX = "rule.";
+    public static final String WORKER_BUSY = "workers.busy";
+    public static final String WORKER_CAPACITY_NANOS = "workers.capacityNanos";
+    public static final String WORKER_QUEUE_DEPTH = "workers.queueDepth";
+    public static final String SINK_QUEUE_DEPTH = "report.queueDepth";
+    public static final String BYTECODE = "bytecode";
+    public static final String BYTECODE_CLASSES = "bytecode.classes";
+    public static final String RULE_CACHE_HITS = "ruleCache.hits";
+    public static final String RULE_CACHE_MISSES = "ruleCache.misses";
+    public static final String RULE_CACHE_EVICTIONS = "ruleCache.evictions";
+
+    private static final String DOMAIN = "com.gome.maven.plugin.code";
+
+    private static Log LOG = new SystemStreamLog();
+
+    private static final ThreadLocal<AnalysisMetrics> CURRENT = new ThreadLocal<AnalysisMetrics>();
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private ObjectName objectName;
+
+    /**
+     * A value read when the metrics are looked at, such as the size of a cache.
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    /**
+     * Makes this the registry the static reporting methods of the current thread record into.
+     */
+    public void activate() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Stops recording into this registry on the current thread if it is current there.
+     */
+    public void deactivate() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * @return the registry the current thread records into, <code>null</code> when there is none
+     */
+    public static AnalysisMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Wraps the task of a new thread so that it records into the registry current on the calling thread. Thread
+     * factories of the analysis pass their tasks through here.
+     */
+    public static Runnable inheriting(final Runnable task) {
+        final AnalysisMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return task;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                CURRENT.set(metrics);
+                try {
+                    task.run();
+                } finally {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    public static void count(String name, long delta) {
+        AnalysisMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.counter(name).addAndGet(delta);
+        }
+    }
+
+    public static void time(String name, long nanos) {
+        AnalysisMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.timer(name).record(nanos);
+        }
+    }
+
+    public static void sample(String name, long value) {
+        AnalysisMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.histogram(name).record(value);
+        }
+    }
+
+    static void phase(String phase, long nanos) {
+        AnalysisMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.timer(PHASE_PREFIX + phase).record(nanos);
+        }
+    }
+
+    static void rule(String ruleName, long nanos) {
+        AnalysisMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.timer(RULE_PREFIX + ruleName).record(nanos);
+        }
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public Histogram timer(String name) {
+        return histogram(timers, name);
+    }
+
+    public Histogram histogram(String name) {
+        return histogram(histograms, name);
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Adds gauges for the heap and the garbage collections of this JVM since this call. The heap peak is the sum
+     * of the peaks of the heap pools, an upper bound of the actual peak.
+     */
+    public void registerJvmGauges() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+        gauge("jvm.heap.used", new Gauge() {
+            @Override
+            public long getValue() {
+                return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            }
+        });
+        gauge("jvm.heap.peak", new Gauge() {
+            @Override
+            public long getValue() {
+                long peak = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                        peak += pool.getPeakUsage().getUsed();
+                    }
+                }
+                return peak;
+            }
+        });
+        final long gcCountBefore = gcCount();
+        gauge("jvm.gc.count", new Gauge() {
+            @Override
+            public long getValue() {
+                return gcCount() - gcCountBefore;
+            }
+        });
+        final long gcMillisBefore = gcMillis();
+        gauge("jvm.gc.millis", new Gauge() {
+            @Override
+            public long getValue() {
+                return gcMillis() - gcMillisBefore;
+            }
+        });
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Registers the registry in the platform MBean server under {@value #DOMAIN}<code>:type=AnalysisMetrics</code>
+     * and the name {@code name}. A failure is logged, the metrics are still recorded.
+     */
+    public void registerMBean(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=AnalysisMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                // left behind by an earlier build of the same project in this JVM
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            LOG.warn("Unable to register the analysis metrics in JMX", e);
+        }
+    }
+
+    public void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOG.debug("Unable to unregister " + objectName, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, AnalysisProfiler.Stats> getTimers() {
+        return stats(timers);
+    }
+
+    @Override
+    public Map<String, AnalysisProfiler.Stats> getHistograms() {
+        return stats(histograms);
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> map, String name) {
+        Histogram histogram = map.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = map.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static Map<String, AnalysisProfiler.Stats> stats(Map<String, Histogram> map) {
+        Map<String, AnalysisProfiler.Stats> result = new TreeMap<String, AnalysisProfiler.Stats>();
+        for (Map.Entry<String, Histogram> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toStats(entry.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * Distribution of non-negative values in power of two buckets; bucket <code>i</code> holds the values below
+     * <code>2^i</code> that do not fit a lower one. Recording is lock free.
+     */
+    public static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            long positive = Math.max(0, value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(positive));
+            count.incrementAndGet();
+            total.addAndGet(positive);
+            long seen;
+            while (positive > (seen = max.get()) && !max.compareAndSet(seen, positive)) {
+                // retry until the maximum is at least this value
+            }
+        }
+
+        AnalysisProfiler.Stats toStats(String name) {
+            long seenCount = count.get();
+            long seenMax = max.get();
+            return new AnalysisProfiler.Stats(name, (int) Math.min(Integer.MAX_VALUE, seenCount), total.get(),
+                    percentile(seenCount, seenMax, 50), percentile(seenCount, seenMax, 90),
+                    percentile(seenCount, seenMax, 99), seenMax);
+        }
+
+        private long percentile(long seenCount, long seenMax, int percent) {
+            long rank = (long) Math.ceil(percent / 100.0 * seenCount);
+            long cumulated = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                cumulated += buckets.get(i);
+                if (cumulated >= rank && cumulated > 0) {
+                    return Math.min((1L << i) - 1, seenMax);
+                }
+            }
+            return seenMax;
+        }
+    }
+}
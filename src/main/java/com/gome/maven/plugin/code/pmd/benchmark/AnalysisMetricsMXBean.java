@@ -0,0 +1,20 @@
+package com.gome.maven.plugin.code.pmd.benchmark;
+
+import java.util.Map;
+
+/**
+ * The live view of an {@link AnalysisMetrics} registry in JMX, registered while a code check runs.
+ */
+public interface AnalysisMetricsMXBean {
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    /**
+     * @return the distributions of the timers, in nanoseconds
+     */
+    Map<String, AnalysisProfiler.Stats> getTimers();
+
+    Map<String, AnalysisProfiler.Stats> getHistograms();
+}
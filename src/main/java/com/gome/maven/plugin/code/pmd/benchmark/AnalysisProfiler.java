@@ -0,0 +1,283 @@
+package com.gome.maven.plugin.code.pmd.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects the time spent per analysis phase and per rule for every file, so that the rules and files
+ * dominating a build can be found.
+ * <p>
+ * A worker thread opens a file with {@link #beginFile(String)} and closes it with {@link #endFile()};
+ * timings reported through the static {@link #phase(String, long)} and {@link #rule(String, long)} in between
+ * are attributed to that file. Outside of a profiled file these calls do nothing, so the processing code
+ * can report unconditionally.
+ */
+public class AnalysisProfiler {
+
+    public static final String PHASE_READ = "Read";
+    public static final String PHASE_PREFILTER = "Prefilter";
+    public static final String PHASE_PARSER = "Parser";
+    public static final String PHASE_SYMBOL_TABLE = "SymbolTable";
+    public static final String PHASE_DFA = "DFA";
+    public static final String PHASE_TYPE_RESOLUTION = "TypeResolution";
+    public static final String PHASE_RULES = "Rules";
+
+    private static final ThreadLocal<FileSample> CURRENT = new ThreadLocal<FileSample>();
+
+    private final ConcurrentMap<String, Samples> phases = new ConcurrentHashMap<String, Samples>();
+    private final ConcurrentMap<String, Samples> rules = new ConcurrentHashMap<String, Samples>();
+    private final List<FileTiming> files = Collections.synchronizedList(new ArrayList<FileTiming>());
+
+    /**
+     * Starts attributing timings of the current thread to {@code fileName}.
+     */
+    public void beginFile(String fileName) {
+        CURRENT.set(new FileSample(this, fileName));
+    }
+
+    /**
+     * Ends the file opened by {@link #beginFile(String)} on the current thread and records its timings.
+     */
+    public void endFile() {
+        FileSample sample = CURRENT.get();
+        if (sample == null || sample.profiler != this) {
+            return;
+        }
+        CURRENT.remove();
+        long total = System.nanoTime() - sample.start;
+        for (Map.Entry<String, long[]> phase : sample.phases.entrySet()) {
+            samples(phases, phase.getKey()).add(phase.getValue()[0]);
+        }
+        for (Map.Entry<String, long[]> rule : sample.rules.entrySet()) {
+            samples(rules, rule.getKey()).add(rule.getValue()[0]);
+        }
+        long[] parse = sample.phases.get(PHASE_PARSER);
+        long[] ruleTime = sample.phases.get(PHASE_RULES);
+        files.add(new FileTiming(sample.fileName, total, parse == null ? 0 : parse[0], ruleTime == null ? 0 : ruleTime[0]));
+    }
+
+    /**
+     * Records time spent in an analysis phase of the file being profiled on this thread, and in the current
+     * {@link AnalysisMetrics}.
+     */
+    public static void phase(String phase, long nanos) {
+        FileSample sample = CURRENT.get();
+        if (sample != null) {
+            add(sample.phases, phase, nanos);
+        }
+        AnalysisMetrics.phase(phase, nanos);
+    }
+
+    /**
+     * Records time spent in a rule for the file being profiled on this thread, and in the current
+     * {@link AnalysisMetrics}.
+     */
+    public static void rule(String ruleName, long nanos) {
+        FileSample sample = CURRENT.get();
+        if (sample != null) {
+            add(sample.rules, ruleName, nanos);
+        }
+        AnalysisMetrics.rule(ruleName, nanos);
+    }
+
+    public Map<String, Stats> getPhaseStats() {
+        return stats(phases);
+    }
+
+    public Map<String, Stats> getRuleStats() {
+        return stats(rules);
+    }
+
+    /**
+     * @return the profiled files, slowest first
+     */
+    public List<FileTiming> getFileTimings() {
+        List<FileTiming> result;
+        synchronized (files) {
+            result = new ArrayList<FileTiming>(files);
+        }
+        Collections.sort(result, new Comparator<FileTiming>() {
+            @Override
+            public int compare(FileTiming o1, FileTiming o2) {
+                return o1.totalNanos == o2.totalNanos ? o1.fileName.compareTo(o2.fileName)
+                        : (o1.totalNanos < o2.totalNanos ? 1 : -1);
+            }
+        });
+        return result;
+    }
+
+    private static Samples samples(ConcurrentMap<String, Samples> map, String key) {
+        Samples samples = map.get(key);
+        if (samples == null) {
+            Samples created = new Samples();
+            samples = map.putIfAbsent(key, created);
+            if (samples == null) {
+                samples = created;
+            }
+        }
+        return samples;
+    }
+
+    private static Map<String, Stats> stats(Map<String, Samples> map) {
+        Map<String, Stats> result = new HashMap<String, Stats>();
+        for (Map.Entry<String, Samples> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toStats(entry.getKey()));
+        }
+        return result;
+    }
+
+    private static void add(Map<String, long[]> map, String key, long nanos) {
+        long[] value = map.get(key);
+        if (value == null) {
+            map.put(key, new long[]{nanos});
+        } else {
+            value[0] += nanos;
+        }
+    }
+
+    private static class FileSample {
+        private final AnalysisProfiler profiler;
+        private final String fileName;
+        private final long start = System.nanoTime();
+        private final Map<String, long[]> phases = new HashMap<String, long[]>();
+        private final Map<String, long[]> rules = new HashMap<String, long[]>();
+
+        FileSample(AnalysisProfiler profiler, String fileName) {
+            this.profiler = profiler;
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * Per-file durations of one phase or rule.
+     */
+    private static class Samples {
+        private long[] values = new long[64];
+        private int size;
+
+        synchronized void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized Stats toStats(String name) {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            return new Stats(name, sorted.length, total, percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    /**
+     * Distribution of the per-file time of a phase or rule in nanoseconds, or of the values of an
+     * {@link AnalysisMetrics} timer or histogram.
+     */
+    public static class Stats {
+        private final String name;
+        private final int count;
+        private final long total;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        Stats(String name, int count, long total, long p50, long p90, long p99, long max) {
+            this.name = name;
+            this.count = count;
+            this.total = total;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Number of files the phase or rule ran on.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * Time spent on one file, in nanoseconds.
+     */
+    public static class FileTiming {
+        private final String fileName;
+        private final long totalNanos;
+        private final long parseNanos;
+        private final long ruleNanos;
+
+        FileTiming(String fileName, long totalNanos, long parseNanos, long ruleNanos) {
+            this.fileName = fileName;
+            this.totalNanos = totalNanos;
+            this.parseNanos = parseNanos;
+            this.ruleNanos = ruleNanos;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        public long getRuleNanos() {
+            return ruleNanos;
+        }
+    }
+}
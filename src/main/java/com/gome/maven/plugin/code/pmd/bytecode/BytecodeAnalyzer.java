@@ -0,0 +1,665 @@
+package com.gome.maven.plugin.code.pmd.bytecode;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.cache.CachedRuleViolation;
+import com.gome.maven.plugin.code.pmd.index.SymbolIndex;
+import com.gome.maven.plugin.code.pmd.index.TypeSymbol;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.AuxClasspathClassLoader;
+import net.sourceforge.pmd.Rule;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+import org.jetbrains.org.objectweb.asm.Handle;
+import org.jetbrains.org.objectweb.asm.Label;
+import org.jetbrains.org.objectweb.asm.MethodVisitor;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the bytecode rules on compiled classes with a streaming ASM visitor, without parsing any source.
+ * Findings are mapped back to the source file through the <code>SourceFile</code> attribute and to source lines
+ * through the line number tables, so they are reported like those of the source rules.
+ * <p>
+ * Classes older than their source are skipped, their line numbers may no longer be right. The class files of a
+ * directory are checked by several threads; referenced classes are read once and shared between them.
+ */
+public class BytecodeAnalyzer {
+
+    private static Log LOG = new SystemStreamLog();
+
+    private final Map<String, Rule> rules;
+    private final Collection<File> classpath;
+    private final Charset sourceEncoding;
+    private final int threads;
+    private final List<String> ruleOrder;
+    private AuxClasspathClassLoader classpathLoader;
+    private ExecutorService executor;
+    private SymbolIndex symbolIndex;
+    private final ConcurrentMap<String, TypeSymbol> summaries = new ConcurrentHashMap<String, TypeSymbol>();
+    private final Set<String> missing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<File, SourceDeclarations> declarationsBySource = new ConcurrentHashMap<File, SourceDeclarations>();
+
+    private final Map<File, List<ProblemDescriptor>> problems = new LinkedHashMap<File, List<ProblemDescriptor>>();
+    private final AtomicInteger scannedClasses = new AtomicInteger();
+    private final AtomicInteger staleClasses = new AtomicInteger();
+
+    /**
+     * @param rules          the selected bytecode rules, keyed by rule name
+     * @param classpath      where referenced classes are looked up to find deprecated and overridden members
+     * @param sourceEncoding encoding of the sources, which are read for annotations without class file retention
+     * @param threads        number of threads checking class files
+     */
+    public BytecodeAnalyzer(Map<String, Rule> rules, Collection<File> classpath, Charset sourceEncoding, int threads) {
+        this.rules = rules;
+        this.classpath = classpath;
+        this.sourceEncoding = sourceEncoding;
+        this.threads = Math.max(1, threads);
+        this.ruleOrder = new ArrayList<String>(rules.keySet());
+    }
+
+    /**
+     * Looks up the types compiled from the analyzed projects in {@code symbolIndex} instead of reading their class
+     * files; the index has to be up to date with the scanned directories.
+     */
+    public void setSymbolIndex(SymbolIndex symbolIndex) {
+        this.symbolIndex = symbolIndex;
+    }
+
+    /**
+     * Scans every class file below {@code classesDirectory}.
+     *
+     * @param sources the analyzed source files, keyed by their path relative to the source root with
+     *                <code>/</code> separators; classes compiled from other files are ignored
+     */
+    public void scan(File classesDirectory, final Map<String, File> sources) throws IOException {
+        if (!classesDirectory.isDirectory() || sources.isEmpty()) {
+            return;
+        }
+        final List<Path> classFiles = new ArrayList<Path>();
+        final List<Long> classModified = new ArrayList<Long>();
+        Files.walkFileTree(classesDirectory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.getFileName().toString().endsWith(".class")) {
+                    classFiles.add(file);
+                    classModified.add(attrs.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        int workers = Math.min(threads, classFiles.size());
+        if (workers <= 1) {
+            for (int i = 0; i < classFiles.size(); i++) {
+                scanClass(classFiles.get(i), classModified.get(i), sources);
+            }
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int worker = 0; worker < workers; worker++) {
+            final int first = worker;
+            final int step = workers;
+            futures.add(executor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    for (int i = first; i < classFiles.size(); i += step) {
+                        scanClass(classFiles.get(i), classModified.get(i), sources);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while checking " + classesDirectory, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(AnalysisMetrics.inheriting(r),
+                            "code-check-bytecode-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private void scanClass(Path classFile, long classModified, Map<String, File> sources) throws IOException {
+        ClassReader reader;
+        InputStream in = Files.newInputStream(classFile);
+        try {
+            reader = new ClassReader(in);
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to read class file " + classFile, e);
+            return;
+        } finally {
+            in.close();
+        }
+        scannedClasses.incrementAndGet();
+        reader.accept(new ClassScanner(sources, classModified), ClassReader.SKIP_FRAMES);
+    }
+
+    /**
+     * @return the problems per source file, ordered by rule and line
+     */
+    public Map<File, List<ProblemDescriptor>> getProblems() {
+        for (List<ProblemDescriptor> fileProblems : problems.values()) {
+            Collections.sort(fileProblems, new Comparator<ProblemDescriptor>() {
+                @Override
+                public int compare(ProblemDescriptor o1, ProblemDescriptor o2) {
+                    int byRule = ruleOrder.indexOf(o1.getRule().getName()) - ruleOrder.indexOf(o2.getRule().getName());
+                    if (byRule != 0) {
+                        return byRule;
+                    }
+                    // the threads find the problems of a file in any order
+                    int byLine = o1.getBeginLine() - o2.getBeginLine();
+                    if (byLine != 0) {
+                        return byLine;
+                    }
+                    int byClass = o1.getClassName().compareTo(o2.getClassName());
+                    return byClass != 0 ? byClass : o1.getMethodName().compareTo(o2.getMethodName());
+                }
+            });
+        }
+        return problems;
+    }
+
+    public int getScannedClasses() {
+        return scannedClasses.get();
+    }
+
+    public int getStaleClasses() {
+        return staleClasses.get();
+    }
+
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (classpathLoader != null) {
+            classpathLoader.close();
+        }
+    }
+
+    private void report(String ruleName, File source, String className, String methodName, int line) {
+        Rule rule = rules.get(ruleName);
+        if (rule == null || line <= 0) {
+            return;
+        }
+        String internalName = className.replace('/', '.');
+        int dot = internalName.lastIndexOf('.');
+        ProblemDescriptor problem = new ProblemDescriptor(new CachedRuleViolation(rule, rule.getMessage(),
+                source.getPath(), line, 0, line, 0, dot < 0 ? "" : internalName.substring(0, dot),
+                internalName.substring(dot + 1), methodName, null));
+        synchronized (problems) {
+            List<ProblemDescriptor> fileProblems = problems.get(source);
+            if (fileProblems == null) {
+                fileProblems = new ArrayList<ProblemDescriptor>();
+                problems.put(source, fileProblems);
+            }
+            fileProblems.add(problem);
+        }
+    }
+
+    /**
+     * Whether {@code owner.name} is deprecated, or the owner class itself.
+     *
+     * @param descriptor the method descriptor, <code>null</code> for a field
+     */
+    private boolean isDeprecated(String owner, String name, String descriptor) {
+        TypeSymbol summary = summary(owner);
+        if (summary != null && summary.isDeprecated()) {
+            return true;
+        }
+        for (int depth = 0; summary != null && depth < 32; depth++) {
+            Integer access = descriptor == null ? summary.getFieldAccess(name) : summary.getMethodAccess(name, descriptor);
+            if (access != null) {
+                return isDeprecated(access);
+            }
+            summary = summary.getSuperName() == null ? null : summary(summary.getSuperName());
+        }
+        return false;
+    }
+
+    /**
+     * Whether an instance method {@code name + descriptor} declared in a class of {@code packageName} overrides or
+     * implements a method of one of the given supertypes.
+     */
+    private boolean overrides(String name, String descriptor, String packageName, String superName, String[] interfaces) {
+        List<String> pending = new ArrayList<String>();
+        if (superName != null) {
+            pending.add(superName);
+        }
+        if (interfaces != null) {
+            Collections.addAll(pending, interfaces);
+        }
+        Set<String> visited = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            String type = pending.remove(pending.size() - 1);
+            TypeSymbol summary = visited.add(type) ? summary(type) : null;
+            if (summary == null) {
+                continue;
+            }
+            Integer access = summary.getMethodAccess(name, descriptor);
+            if (access != null && (access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+                    && ((access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) != 0
+                    || packageName.equals(packageName(type)))) {
+                return true;
+            }
+            if (summary.getSuperName() != null) {
+                pending.add(summary.getSuperName());
+            }
+            Collections.addAll(pending, summary.getInterfaces());
+        }
+        return false;
+    }
+
+    /**
+     * @return the declarations of {@code source}, or <code>null</code> if it cannot be read
+     */
+    private SourceDeclarations declarations(File source) {
+        SourceDeclarations result = declarationsBySource.get(source);
+        if (result != null) {
+            return result;
+        }
+        try {
+            result = new SourceDeclarations(new String(Files.readAllBytes(source.toPath()), sourceEncoding));
+        } catch (IOException e) {
+            LOG.debug("Unable to read " + source + ", missing annotations are not checked", e);
+            return null;
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to lex " + source + ", missing annotations are not checked", e);
+            return null;
+        }
+        SourceDeclarations previous = declarationsBySource.putIfAbsent(source, result);
+        return previous != null ? previous : result;
+    }
+
+    /**
+     * @return the symbol of the type from the index or else the classpath, <code>null</code> if it is not found
+     */
+    private TypeSymbol summary(String internalName) {
+        TypeSymbol cached = summaries.get(internalName);
+        if (cached != null || missing.contains(internalName)) {
+            return cached;
+        }
+        TypeSymbol summary = symbolIndex != null ? symbolIndex.get(internalName) : null;
+        InputStream in = summary != null ? null : classpathLoader().getResourceAsStream(internalName + ".class");
+        if (in != null) {
+            try {
+                summary = TypeSymbol.read(new ClassReader(in));
+            } catch (IOException e) {
+                summary = null;
+            } catch (RuntimeException e) {
+                summary = null;
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        if (summary == null) {
+            missing.add(internalName);
+            return null;
+        }
+        TypeSymbol previous = summaries.putIfAbsent(internalName, summary);
+        return previous != null ? previous : summary;
+    }
+
+    private synchronized AuxClasspathClassLoader classpathLoader() {
+        if (classpathLoader == null) {
+            classpathLoader = new AuxClasspathClassLoader(classpath);
+        }
+        return classpathLoader;
+    }
+
+    private static String packageName(String internalName) {
+        int slash = internalName.lastIndexOf('/');
+        return slash < 0 ? "" : internalName.substring(0, slash);
+    }
+
+    private static String topLevel(String internalName) {
+        int dollar = internalName.indexOf('$', internalName.lastIndexOf('/') + 1);
+        return dollar < 0 ? internalName : internalName.substring(0, dollar);
+    }
+
+    private static boolean isDeprecated(int access) {
+        return (access & Opcodes.ACC_DEPRECATED) != 0;
+    }
+
+    /**
+     * Checks one class file.
+     */
+    private class ClassScanner extends ClassVisitor {
+        private final Map<String, File> sources;
+        private final long classModified;
+        private File source;
+        private String className;
+        private String superName;
+        private String[] interfaces;
+        private boolean classDeprecated;
+        private int equalsLine = -1;
+        private int hashCodeLine = -1;
+        private final Set<String> reported = new HashSet<String>();
+        /**
+         * Instance methods that may override a supertype method, checked once the class is read.
+         */
+        private final List<MethodScanner> overrideCandidates = new ArrayList<MethodScanner>();
+        /**
+         * Methods the compiler generated bridges to, they override a method with a different erasure.
+         */
+        private final Set<String> bridged = new HashSet<String>();
+
+        ClassScanner(Map<String, File> sources, long classModified) {
+            super(Opcodes.ASM5);
+            this.sources = sources;
+            this.classModified = classModified;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            className = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            classDeprecated = isDeprecated(access);
+        }
+
+        @Override
+        public void visitSource(String sourceFile, String debug) {
+            if (sourceFile == null) {
+                return;
+            }
+            int slash = className.lastIndexOf('/');
+            File file = sources.get(slash < 0 ? sourceFile : className.substring(0, slash + 1) + sourceFile);
+            if (file == null) {
+                return;
+            }
+            if (file.lastModified() > classModified) {
+                staleClasses.incrementAndGet();
+                return;
+            }
+            source = file;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            if (source == null) {
+                return null;
+            }
+            if ((access & Opcodes.ACC_BRIDGE) != 0 && rules.containsKey(BytecodeRules.MISSING_OVERRIDE)) {
+                return new BridgeScanner(name);
+            }
+            if ((access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0) {
+                return null;
+            }
+            boolean instance = (access & Opcodes.ACC_STATIC) == 0;
+            MethodScanner scanner = new MethodScanner(name, classDeprecated || isDeprecated(access));
+            if (instance && (access & Opcodes.ACC_PRIVATE) == 0 && !"<init>".equals(name)
+                    && rules.containsKey(BytecodeRules.MISSING_OVERRIDE)) {
+                scanner.descriptor = desc;
+                overrideCandidates.add(scanner);
+            }
+            if (instance && "equals".equals(name) && "(Ljava/lang/Object;)Z".equals(desc)) {
+                scanner.recordsFirstLineOf = "equals";
+                equalsLine = 0;
+            } else if (instance && "hashCode".equals(name) && "()I".equals(desc)) {
+                scanner.recordsFirstLineOf = "hashCode";
+                hashCodeLine = 0;
+            }
+            return scanner;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (source == null) {
+                return;
+            }
+            if (equalsLine >= 0 && hashCodeLine < 0) {
+                report(BytecodeRules.EQUALS_HASH_CODE, source, className, "equals", equalsLine);
+            } else if (hashCodeLine >= 0 && equalsLine < 0) {
+                report(BytecodeRules.EQUALS_HASH_CODE, source, className, "hashCode", hashCodeLine);
+            }
+            for (MethodScanner candidate : overrideCandidates) {
+                checkOverrideAnnotation(candidate);
+            }
+        }
+
+        /**
+         * Reports an overriding method declared without <code>@Override</code>. A declaration is found in the source
+         * from the first line of its code, so abstract methods are not checked, nor are declarations the lexer does
+         * not recognize.
+         */
+        private void checkOverrideAnnotation(MethodScanner method) {
+            if (method.firstLine <= 0 || !bridged.contains(method.methodName + method.descriptor)
+                    && !overrides(method.methodName, method.descriptor, packageName(className), superName, interfaces)) {
+                return;
+            }
+            SourceDeclarations sourceDeclarations = declarations(source);
+            SourceDeclarations.Declaration declaration = sourceDeclarations == null ? null
+                    : sourceDeclarations.find(method.methodName, method.firstLine);
+            if (declaration != null && !declaration.isOverrideAnnotated()) {
+                report(BytecodeRules.MISSING_OVERRIDE, source, className, method.methodName, declaration.getLine());
+            }
+        }
+
+        /**
+         * Records the method a bridge delegates to.
+         */
+        private class BridgeScanner extends MethodVisitor {
+            private final String methodName;
+
+            BridgeScanner(String methodName) {
+                super(Opcodes.ASM5);
+                this.methodName = methodName;
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                if (className.equals(owner) && methodName.equals(name)) {
+                    bridged.add(name + desc);
+                }
+            }
+        }
+
+        /**
+         * Checks the instructions of one method, tracking the current source line.
+         */
+        private class MethodScanner extends MethodVisitor {
+            private final String methodName;
+            private final boolean deprecatedContext;
+            private String recordsFirstLineOf;
+            private String descriptor;
+            private int firstLine;
+            private int line;
+            /**
+             * The two preceding opcodes in the current basic block, <code>-1</code> when unknown.
+             */
+            private int previous = -1;
+            private int beforePrevious = -1;
+
+            MethodScanner(String methodName, boolean deprecatedContext) {
+                super(Opcodes.ASM5);
+                this.methodName = methodName;
+                this.deprecatedContext = deprecatedContext;
+            }
+
+            @Override
+            public void visitLineNumber(int line, Label start) {
+                this.line = line;
+                if (firstLine == 0 || line < firstLine) {
+                    firstLine = line;
+                }
+                if ("equals".equals(recordsFirstLineOf) && equalsLine == 0) {
+                    equalsLine = line;
+                } else if ("hashCode".equals(recordsFirstLineOf) && hashCodeLine == 0) {
+                    hashCodeLine = line;
+                }
+            }
+
+            @Override
+            public void visitLabel(Label label) {
+                // a jump target may sit between a receiver and its use
+                previous = -1;
+                beforePrevious = -1;
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                if (opcode == Opcodes.INVOKESTATIC) {
+                    if ("java/util/concurrent/Executors".equals(owner) && name.startsWith("new")) {
+                        once(BytecodeRules.THREAD_POOL_CREATION, owner + '.' + name);
+                    }
+                    checkStaticViaInstance(owner, name);
+                }
+                checkDeprecated(owner, name, desc);
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                if (opcode == Opcodes.GETSTATIC) {
+                    checkStaticViaInstance(owner, name);
+                }
+                checkDeprecated(owner, name, null);
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitInsn(int opcode) {
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitVarInsn(int opcode, int var) {
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitIntInsn(int opcode, int operand) {
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitJumpInsn(int opcode, Label label) {
+                opcode(opcode);
+            }
+
+            @Override
+            public void visitLdcInsn(Object cst) {
+                opcode(Opcodes.LDC);
+            }
+
+            @Override
+            public void visitIincInsn(int var, int increment) {
+                opcode(Opcodes.IINC);
+            }
+
+            @Override
+            public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                opcode(Opcodes.TABLESWITCH);
+            }
+
+            @Override
+            public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                opcode(Opcodes.LOOKUPSWITCH);
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String desc, int dims) {
+                opcode(Opcodes.MULTIANEWARRAY);
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+                opcode(Opcodes.INVOKEDYNAMIC);
+            }
+
+            private void opcode(int opcode) {
+                beforePrevious = previous;
+                previous = opcode;
+            }
+
+            /**
+             * javac evaluates the receiver of <code>instance.staticMember</code> and discards it, which shows as a
+             * plain load immediately popped before the static access.
+             */
+            private void checkStaticViaInstance(String owner, String name) {
+                if (previous == Opcodes.POP && (beforePrevious == Opcodes.ALOAD || beforePrevious == Opcodes.GETFIELD
+                        || beforePrevious == Opcodes.GETSTATIC)) {
+                    once(BytecodeRules.ACCESS_STATIC_VIA_INSTANCE, owner + '.' + name);
+                }
+            }
+
+            private void checkDeprecated(String owner, String name, String desc) {
+                if (deprecatedContext || !rules.containsKey(BytecodeRules.DEPRECATION) || owner.startsWith("[")
+                        || topLevel(owner).equals(topLevel(className))) {
+                    return;
+                }
+                if (isDeprecated(owner, name, desc)) {
+                    once(BytecodeRules.DEPRECATION, owner + '.' + name);
+                }
+            }
+
+            /**
+             * Reports a finding once per rule, member and line, as one source reference can compile to several
+             * instructions.
+             */
+            private void once(String ruleName, String member) {
+                if (rules.containsKey(ruleName) && reported.add(ruleName + ' ' + member + ' ' + line)) {
+                    report(ruleName, source, className, methodName, line);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.gome.maven.plugin.code.pmd.bytecode;
+
+import com.gome.maven.plugin.code.pmd.i18n.P3cBundle;
+import com.siyeh.ig.inheritance.AliAccessStaticViaInstanceRule;
+import com.siyeh.ig.inheritance.AliDeprecationRule;
+import com.siyeh.ig.inheritance.AliMissingOverrideAnnotationRule;
+import com.siyeh.ig.inheritance.MapOrSetKeyShouldOverrideHashCodeEqualsRule;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RulePriority;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rules of the bytecode tier. They only need signatures and call sites, so they are checked on the compiled
+ * classes instead of the AST; the rule instances carry name, message and priority for the reports but are never
+ * applied to an AST.
+ */
+public final class BytecodeRules {
+
+    public static final String EQUALS_HASH_CODE = "MapOrSetKeyShouldOverrideHashCodeEqualsRule";
+    public static final String DEPRECATION = "AliDeprecationRule";
+    public static final String ACCESS_STATIC_VIA_INSTANCE = "AliAccessStaticViaInstanceRule";
+    public static final String MISSING_OVERRIDE = "AliMissingOverrideAnnotationRule";
+    /**
+     * The p3c source rule the bytecode tier takes over when both are selected.
+     */
+    public static final String THREAD_POOL_CREATION = "ThreadPoolCreationRule";
+
+    /**
+     * The bytecode-only rules, in report order.
+     */
+    public static final List<String> RULE_NAMES = Collections.unmodifiableList(Arrays.asList(EQUALS_HASH_CODE,
+            DEPRECATION, ACCESS_STATIC_VIA_INSTANCE, MISSING_OVERRIDE));
+
+    /**
+     * Source rules that are checked on bytecode instead when the takeover is enabled.
+     */
+    public static final List<String> TAKEN_OVER = Collections.unmodifiableList(Arrays.asList(THREAD_POOL_CREATION));
+
+    private static final String INSPECTION_KEY = "com.alibaba.p3c.idea.inspection.standalone.";
+
+    private BytecodeRules() {
+    }
+
+    /**
+     * @return fresh instances of the bytecode-only rules, keyed by rule name
+     */
+    public static Map<String, Rule> newRules() {
+        Map<String, Rule> rules = new LinkedHashMap<String, Rule>();
+        add(rules, new MapOrSetKeyShouldOverrideHashCodeEqualsRule(), EQUALS_HASH_CODE,
+                "MapOrSetKeyShouldOverrideHashCodeEqualsInspection", RulePriority.MEDIUM_HIGH);
+        add(rules, new AliDeprecationRule(), DEPRECATION, "AliDeprecationInspection", RulePriority.MEDIUM_HIGH);
+        add(rules, new AliAccessStaticViaInstanceRule(), ACCESS_STATIC_VIA_INSTANCE,
+                "AliAccessStaticViaInstanceInspection", RulePriority.HIGH);
+        add(rules, new AliMissingOverrideAnnotationRule(), MISSING_OVERRIDE, "AliMissingOverrideAnnotationInspection",
+                RulePriority.MEDIUM);
+        return rules;
+    }
+
+    private static void add(Map<String, Rule> rules, Rule rule, String name, String inspection, RulePriority priority) {
+        rule.setName(name);
+        rule.setMessage(P3cBundle.getMessage(INSPECTION_KEY + inspection + ".message"));
+        rule.setDescription(P3cBundle.getMessage(INSPECTION_KEY + inspection + ".desc"));
+        rule.setPriority(priority);
+        rules.put(name, rule);
+    }
+}
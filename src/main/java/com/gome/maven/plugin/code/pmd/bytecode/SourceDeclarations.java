@@ -0,0 +1,145 @@
+package com.gome.maven.plugin.code.pmd.bytecode;
+
+import com.gome.maven.lang.java.lexer.JavaLexer;
+import com.gome.maven.pom.java.LanguageLevel;
+import com.gome.maven.psi.JavaTokenType;
+import com.gome.maven.psi.impl.source.tree.ElementType;
+import com.gome.maven.psi.tree.IElementType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The method declarations of one source file and whether they are annotated with <code>@Override</code>, which has
+ * source retention and so is not visible in the class files. The file is lexed once with the {@link JavaLexer};
+ * a declaration is an identifier followed by <code>(</code> whose preceding token ends a type, its annotations are
+ * those between it and the end of the previous member.
+ */
+class SourceDeclarations {
+
+    private static final ThreadLocal<JavaLexer> LEXERS = new ThreadLocal<JavaLexer>() {
+        @Override
+        protected JavaLexer initialValue() {
+            return new JavaLexer(LanguageLevel.HIGHEST);
+        }
+    };
+
+    private final List<Declaration> declarations = new ArrayList<Declaration>();
+
+    SourceDeclarations(CharSequence source) {
+        List<IElementType> types = new ArrayList<IElementType>();
+        List<String> images = new ArrayList<String>();
+        List<Integer> lines = new ArrayList<Integer>();
+        JavaLexer lexer = LEXERS.get();
+        lexer.start(source, 0, source.length(), 0);
+        int line = 1;
+        IElementType type;
+        while ((type = lexer.getTokenType()) != null) {
+            int start = lexer.getTokenStart();
+            int end = lexer.getTokenEnd();
+            if (!ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(type)) {
+                types.add(type);
+                images.add(type == JavaTokenType.IDENTIFIER ? source.subSequence(start, end).toString() : null);
+                lines.add(line);
+            }
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) == '\n') {
+                    line++;
+                }
+            }
+            lexer.advance();
+        }
+        for (int i = 1; i + 1 < types.size(); i++) {
+            if (types.get(i) == JavaTokenType.IDENTIFIER && types.get(i + 1) == JavaTokenType.LPARENTH
+                    && endsType(types.get(i - 1))) {
+                declarations.add(new Declaration(images.get(i), lines.get(i), isOverrideAnnotated(types, images, i)));
+            }
+        }
+    }
+
+    /**
+     * Finds the declaration of a method from the first line of its code: the last declaration of that name
+     * starting on or before it.
+     *
+     * @return the declaration, or <code>null</code> if none was recognized
+     */
+    Declaration find(String name, int firstCodeLine) {
+        Declaration found = null;
+        for (Declaration declaration : declarations) {
+            if (declaration.line > firstCodeLine) {
+                break;
+            }
+            if (declaration.name.equals(name) && (found == null || declaration.line > found.line)) {
+                found = declaration;
+            }
+        }
+        return found;
+    }
+
+    private static boolean endsType(IElementType type) {
+        return type == JavaTokenType.IDENTIFIER || type == JavaTokenType.GT || type == JavaTokenType.RBRACKET
+                || ElementType.PRIMITIVE_TYPE_BIT_SET.contains(type);
+    }
+
+    /**
+     * Walks back from the declared name to the end of the previous member, skipping annotation arguments.
+     */
+    private static boolean isOverrideAnnotated(List<IElementType> types, List<String> images, int name) {
+        for (int i = name - 1; i >= 0; i--) {
+            IElementType type = types.get(i);
+            if (type == JavaTokenType.RPARENTH) {
+                int depth = 1;
+                while (depth > 0 && --i >= 0) {
+                    if (types.get(i) == JavaTokenType.RPARENTH) {
+                        depth++;
+                    } else if (types.get(i) == JavaTokenType.LPARENTH) {
+                        depth--;
+                    }
+                }
+            } else if (type == JavaTokenType.SEMICOLON || type == JavaTokenType.LBRACE || type == JavaTokenType.RBRACE) {
+                return false;
+            } else if (type == JavaTokenType.AT && isOverride(types, images, i + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the annotation name starting at {@code start} is <code>Override</code> or
+     * <code>java.lang.Override</code>.
+     */
+    private static boolean isOverride(List<IElementType> types, List<String> images, int start) {
+        StringBuilder name = new StringBuilder();
+        for (int i = start; i < types.size(); i++) {
+            if (types.get(i) == JavaTokenType.IDENTIFIER) {
+                name.append(images.get(i));
+            } else if (types.get(i) == JavaTokenType.DOT) {
+                name.append('.');
+            } else {
+                break;
+            }
+        }
+        return "Override".contentEquals(name) || "java.lang.Override".contentEquals(name);
+    }
+
+    static class Declaration {
+        private final String name;
+        private final int line;
+        private final boolean overrideAnnotated;
+
+        Declaration(String name, int line, boolean overrideAnnotated) {
+            this.name = name;
+            this.line = line;
+            this.overrideAnnotated = overrideAnnotated;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        boolean isOverrideAnnotated() {
+            return overrideAnnotated;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.gome.maven.plugin.code.pmd.cache;
+
+import com.alibaba.p3c.pmd.I18nResources;
+import com.gome.maven.util.io.DataExternalizer;
+import com.gome.maven.util.io.DataInputOutputUtil;
+import com.gome.maven.util.io.EnumeratorStringDescriptor;
+import com.gome.maven.util.io.IOUtil;
+import com.gome.maven.util.io.PersistentHashMap;
+import com.gome.maven.util.io.PersistentStringEnumerator;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of analysis results that survives between builds.
+ * <p>
+ * Entries are keyed by file path and hold the SHA-1 of the decoded file content together with the violations
+ * found for it. The whole store is bound to a fingerprint of the active rules, the priority threshold,
+ * the encoding, the type resolution classpath, the rule prefilter, the suppress marker and the p3c-pmd/PMD versions;
+ * when the fingerprint changes the store is dropped.
+ * Rule, package and class names are interned through a {@link PersistentStringEnumerator}.
+ * <p>
+ * A file whose analysis timed out can be quarantined: its entry then records the reason instead of violations,
+ * and later builds skip the file until its content changes.
+ */
+public class AnalysisCache {
+
+    private static Log LOG = new SystemStreamLog();
+
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+    private static final String NAMES_SUFFIX = ".names";
+
+    /**
+     * Version of the entry layout, part of the fingerprint so that stores in an older layout are dropped.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private final File location;
+    private final PersistentStringEnumerator names;
+    private final PersistentHashMap<String, Entry> entries;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private AnalysisCache(File location) throws IOException {
+        this.location = location;
+        this.names = new PersistentStringEnumerator(new File(location.getPath() + NAMES_SUFFIX));
+        this.entries = new PersistentHashMap<String, Entry>(location, EnumeratorStringDescriptor.INSTANCE, new EntryExternalizer());
+    }
+
+    /**
+     * Opens the cache stored at {@code location}, discarding it when it was written with another fingerprint
+     * or cannot be read.
+     */
+    public static AnalysisCache open(File location, String fingerprint) throws IOException {
+        File parent = location.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create analysis cache directory " + parent);
+        }
+        File fingerprintFile = new File(location.getPath() + FINGERPRINT_SUFFIX);
+        String stored = fingerprintFile.isFile() ? Files.toString(fingerprintFile, StandardCharsets.UTF_8) : null;
+        if (!fingerprint.equals(stored)) {
+            if (stored != null) {
+                LOG.info("Analysis cache fingerprint changed, dropping " + location);
+            }
+            IOUtil.deleteAllFilesStartingWith(location);
+        }
+        AnalysisCache cache;
+        try {
+            cache = new AnalysisCache(location);
+        } catch (IOException e) {
+            LOG.warn("Analysis cache " + location + " is corrupted, recreating it", e);
+            IOUtil.deleteAllFilesStartingWith(location);
+            cache = new AnalysisCache(location);
+        }
+        Files.write(fingerprint, fingerprintFile, StandardCharsets.UTF_8);
+        return cache;
+    }
+
+    /**
+     * Fingerprint of everything besides the file content that influences the analysis result.
+     *
+     * @param auxClasspath   the type resolution classpath, <code>null</code> when type resolution is disabled; jars
+     *                       are hashed with their modification time, so that a changed dependency drops the store.
+     *                       Class directories are hashed by path only: their changes are tracked per type by the
+     *                       symbol index, which drops the entries of the files depending on a changed type
+     * @param rulePrefilter  whether rules are skipped for files lacking their declared tokens
+     * @param suppressMarker the marker suppressing a violation, <code>null</code> for PMD's default
+     */
+    public static String fingerprint(Collection<String> ruleNames, int minimumPriority, String encoding,
+                                     Collection<File> auxClasspath, boolean rulePrefilter, String suppressMarker) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (String ruleName : new TreeSet<String>(ruleNames)) {
+            hasher.putString(ruleName, StandardCharsets.UTF_8).putChar(',');
+        }
+        hasher.putInt(FORMAT_VERSION);
+        hasher.putInt(minimumPriority);
+        hasher.putString(String.valueOf(encoding), StandardCharsets.UTF_8);
+        hasher.putString(getP3cVersion(), StandardCharsets.UTF_8);
+        hasher.putString(PMD.VERSION, StandardCharsets.UTF_8);
+        hasher.putBoolean(auxClasspath != null);
+        if (auxClasspath != null) {
+            for (File element : auxClasspath) {
+                hasher.putString(element.getPath(), StandardCharsets.UTF_8).putChar('@');
+                hasher.putLong(element.isFile() ? element.lastModified() : 0).putChar(File.pathSeparatorChar);
+            }
+        }
+        hasher.putBoolean(rulePrefilter);
+        hasher.putString(String.valueOf(suppressMarker), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return the SHA-1 of the decoded file content; the encoding is part of the fingerprint
+     */
+    public String contentHash(CharSequence source) {
+        return Hashing.sha1().hashUnencodedChars(source).toString();
+    }
+
+    /**
+     * Returns the cached violations of {@code file}, or <code>null</code> on a miss.
+     *
+     * @param rules the live rule instances the cached violations get bound to, keyed by rule name
+     */
+    public List<RuleViolation> lookup(File file, String contentHash, Map<String, Rule> rules) {
+        Entry entry;
+        try {
+            entry = entries.get(file.getPath());
+        } catch (IOException e) {
+            LOG.debug("Unable to read analysis cache entry for " + file, e);
+            entry = null;
+        }
+        if (entry == null || entry.quarantine != null || !entry.contentHash.equals(contentHash)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        List<RuleViolation> violations = new ArrayList<RuleViolation>(entry.violations.size());
+        for (ViolationRecord record : entry.violations) {
+            Rule rule = rules.get(record.ruleName);
+            if (rule == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            violations.add(new CachedRuleViolation(rule, record.description, record.filename,
+                    record.beginLine, record.beginColumn, record.endLine, record.endColumn,
+                    record.packageName, record.className, record.methodName, record.variableName));
+        }
+        hits.incrementAndGet();
+        return violations;
+    }
+
+    public void store(File file, String contentHash, List<? extends RuleViolation> violations) {
+        List<ViolationRecord> records = new ArrayList<ViolationRecord>(violations.size());
+        for (RuleViolation violation : violations) {
+            records.add(new ViolationRecord(violation));
+        }
+        try {
+            entries.put(file.getPath(), new Entry(contentHash, null, records));
+        } catch (IOException e) {
+            LOG.debug("Unable to write analysis cache entry for " + file, e);
+        }
+    }
+
+    /**
+     * Drops the entry of {@code file}, so that it is analyzed again even though its content did not change, for
+     * example because a type it depends on changed.
+     */
+    public void invalidate(File file) {
+        try {
+            entries.remove(file.getPath());
+        } catch (IOException e) {
+            LOG.debug("Unable to remove analysis cache entry for " + file, e);
+        }
+    }
+
+    /**
+     * @return why {@code file} was quarantined, or <code>null</code> when it is not or its content changed since
+     */
+    public String quarantined(File file, String contentHash) {
+        try {
+            Entry entry = entries.get(file.getPath());
+            return entry != null && entry.contentHash.equals(contentHash) ? entry.quarantine : null;
+        } catch (IOException e) {
+            LOG.debug("Unable to read analysis cache entry for " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Excludes {@code file} from analysis until its content changes.
+     */
+    public void quarantine(File file, String contentHash, String reason) {
+        try {
+            entries.put(file.getPath(), new Entry(contentHash, reason, Collections.<ViolationRecord>emptyList()));
+        } catch (IOException e) {
+            LOG.debug("Unable to write analysis cache entry for " + file, e);
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public File getLocation() {
+        return location;
+    }
+
+    public void close() {
+        try {
+            entries.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close analysis cache " + location, e);
+        }
+        try {
+            names.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close analysis cache names " + location, e);
+        }
+    }
+
+    /**
+     * @return the version of the p3c-pmd rule set on the classpath, <code>unknown</code> when it cannot be told
+     */
+    public static String getP3cVersion() {
+        String version = I18nResources.class.getPackage() != null
+                ? I18nResources.class.getPackage().getImplementationVersion() : null;
+        if (version != null) {
+            return version;
+        }
+        InputStream in = I18nResources.class.getResourceAsStream("/META-INF/maven/com.alibaba.p3c/p3c-pmd/pom.properties");
+        if (in == null) {
+            return "unknown";
+        }
+        try {
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty("version", "unknown");
+        } catch (IOException e) {
+            return "unknown";
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String contentHash;
+        /**
+         * Why the file is quarantined, <code>null</code> for a regular entry.
+         */
+        private final String quarantine;
+        private final List<ViolationRecord> violations;
+
+        Entry(String contentHash, String quarantine, List<ViolationRecord> violations) {
+            this.contentHash = contentHash;
+            this.quarantine = quarantine;
+            this.violations = violations;
+        }
+    }
+
+    private static class ViolationRecord {
+        private String ruleName;
+        private String description;
+        private String filename;
+        private int beginLine;
+        private int beginColumn;
+        private int endLine;
+        private int endColumn;
+        private String packageName;
+        private String className;
+        private String methodName;
+        private String variableName;
+
+        ViolationRecord() {
+        }
+
+        ViolationRecord(RuleViolation violation) {
+            ruleName = violation.getRule().getName();
+            description = violation.getDescription();
+            filename = violation.getFilename();
+            beginLine = violation.getBeginLine();
+            beginColumn = violation.getBeginColumn();
+            endLine = violation.getEndLine();
+            endColumn = violation.getEndColumn();
+            packageName = violation.getPackageName();
+            className = violation.getClassName();
+            methodName = violation.getMethodName();
+            variableName = violation.getVariableName();
+        }
+    }
+
+    private class EntryExternalizer implements DataExternalizer<Entry> {
+
+        @Override
+        public void save(DataOutput out, Entry value) throws IOException {
+            IOUtil.writeUTF(out, value.contentHash);
+            writeString(out, value.quarantine);
+            DataInputOutputUtil.writeINT(out, value.violations.size());
+            for (ViolationRecord record : value.violations) {
+                writeName(out, record.ruleName);
+                writeString(out, record.description);
+                writeName(out, record.filename);
+                DataInputOutputUtil.writeINT(out, record.beginLine);
+                DataInputOutputUtil.writeINT(out, record.beginColumn);
+                DataInputOutputUtil.writeINT(out, record.endLine);
+                DataInputOutputUtil.writeINT(out, record.endColumn);
+                writeName(out, record.packageName);
+                writeName(out, record.className);
+                writeString(out, record.methodName);
+                writeString(out, record.variableName);
+            }
+        }
+
+        @Override
+        public Entry read(DataInput in) throws IOException {
+            String contentHash = IOUtil.readUTF(in);
+            String quarantine = readString(in);
+            int size = DataInputOutputUtil.readINT(in);
+            List<ViolationRecord> records = size == 0
+                    ? Collections.<ViolationRecord>emptyList() : new ArrayList<ViolationRecord>(size);
+            for (int i = 0; i < size; i++) {
+                ViolationRecord record = new ViolationRecord();
+                record.ruleName = readName(in);
+                record.description = readString(in);
+                record.filename = readName(in);
+                record.beginLine = DataInputOutputUtil.readINT(in);
+                record.beginColumn = DataInputOutputUtil.readINT(in);
+                record.endLine = DataInputOutputUtil.readINT(in);
+                record.endColumn = DataInputOutputUtil.readINT(in);
+                record.packageName = readName(in);
+                record.className = readName(in);
+                record.methodName = readString(in);
+                record.variableName = readString(in);
+                records.add(record);
+            }
+            return new Entry(contentHash, quarantine, records);
+        }
+
+        private void writeName(DataOutput out, String name) throws IOException {
+            DataInputOutputUtil.writeINT(out, name == null ? 0 : names.enumerate(name));
+        }
+
+        private String readName(DataInput in) throws IOException {
+            int id = DataInputOutputUtil.readINT(in);
+            return id == 0 ? null : names.valueOf(id);
+        }
+
+        private void writeString(DataOutput out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                IOUtil.writeUTF(out, value);
+            }
+        }
+
+        private String readString(DataInput in) throws IOException {
+            return in.readBoolean() ? IOUtil.readUTF(in) : null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.gome.maven.plugin.code.pmd.cache;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * A {@link RuleViolation} restored from the analysis cache, bound to a live {@link Rule} instance.
+ */
+public class CachedRuleViolation implements RuleViolation {
+
+    private final Rule rule;
+    private final String description;
+    private final String filename;
+    private final int beginLine;
+    private final int beginColumn;
+    private final int endLine;
+    private final int endColumn;
+    private final String packageName;
+    private final String className;
+    private final String methodName;
+    private final String variableName;
+
+    public CachedRuleViolation(Rule rule, String description, String filename,
+                               int beginLine, int beginColumn, int endLine, int endColumn,
+                               String packageName, String className, String methodName, String variableName) {
+        this.rule = rule;
+        this.description = description;
+        this.filename = filename;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+        this.packageName = packageName;
+        this.className = className;
+        this.methodName = methodName;
+        this.variableName = variableName;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public boolean isSuppressed() {
+        return false;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public int getBeginLine() {
+        return beginLine;
+    }
+
+    @Override
+    public int getBeginColumn() {
+        return beginColumn;
+    }
+
+    @Override
+    public int getEndLine() {
+        return endLine;
+    }
+
+    @Override
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    @Override
+    public String getPackageName() {
+        return packageName;
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String getMethodName() {
+        return methodName;
+    }
+
+    @Override
+    public String getVariableName() {
+        return variableName;
+    }
+}
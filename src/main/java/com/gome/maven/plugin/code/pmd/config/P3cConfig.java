@@ -36,11 +36,20 @@ public class P3cConfig {
     long astCacheTime = 1000L;
     boolean astCacheEnable = true;
 
-    long ruleCacheTime = 1000L;
+    /**
+     * Lifetime of a cached rule result in milliseconds, <code>0</code> for none: results are keyed by the file's
+     * size and modification time, so an expiry is not needed to see edits.
+     */
+    long ruleCacheTime = 0L;
     boolean ruleCacheEnable = false;
 
     public static boolean analysisBeforeCheckin = false;
 
+    /**
+     * Encoding of the inspected sources, <code>null</code> for the platform encoding.
+     */
+    String sourceEncoding;
+
     public String locale = localeZh;
 
 
@@ -79,6 +88,14 @@ public class P3cConfig {
         this.ruleCacheTime = ruleCacheTime;
     }
 
+    public String getSourceEncoding() {
+        return sourceEncoding;
+    }
+
+    public void setSourceEncoding(String sourceEncoding) {
+        this.sourceEncoding = sourceEncoding;
+    }
+
     public boolean isRuleCacheEnable() {
         return ruleCacheEnable;
     }
@@ -0,0 +1,142 @@
+package com.gome.maven.plugin.code.pmd.cpd;
+
+import com.gome.maven.lang.java.lexer.JavaLexer;
+import com.gome.maven.pom.java.LanguageLevel;
+import com.gome.maven.psi.JavaTokenType;
+import com.gome.maven.psi.impl.source.tree.ElementType;
+import com.gome.maven.psi.tree.IElementType;
+import com.gome.maven.psi.tree.TokenSet;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns a Java source into the token codes the duplicates are searched in, lexing it once with the
+ * {@link JavaLexer}. Whitespace, comments and the package and import statements are dropped. Keywords, operators
+ * and separators are coded by their element type; identifiers and literals by their text, through a dictionary
+ * shared by all threads, unless they are ignored and coded by their type alone. Thread safe.
+ */
+class CpdTokenizer {
+
+    private static final TokenSet LITERALS = TokenSet.create(JavaTokenType.INTEGER_LITERAL,
+            JavaTokenType.LONG_LITERAL, JavaTokenType.FLOAT_LITERAL, JavaTokenType.DOUBLE_LITERAL,
+            JavaTokenType.CHARACTER_LITERAL, JavaTokenType.STRING_LITERAL);
+
+    /**
+     * Codes below are element type indexes, codes from here on dictionary entries.
+     */
+    private static final int FIRST_TEXT_CODE = 1 << 16;
+
+    private static final ThreadLocal<JavaLexer> LEXERS = new ThreadLocal<JavaLexer>() {
+        @Override
+        protected JavaLexer initialValue() {
+            return new JavaLexer(LanguageLevel.HIGHEST);
+        }
+    };
+
+    private final boolean ignoreLiterals;
+    private final boolean ignoreIdentifiers;
+    private final ConcurrentMap<String, Integer> dictionary = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger nextCode = new AtomicInteger(FIRST_TEXT_CODE);
+
+    CpdTokenizer(boolean ignoreLiterals, boolean ignoreIdentifiers) {
+        this.ignoreLiterals = ignoreLiterals;
+        this.ignoreIdentifiers = ignoreIdentifiers;
+    }
+
+    /**
+     * @return the tokens of {@code source} with the line each starts on
+     */
+    Tokens tokenize(CharSequence source) {
+        Tokens tokens = new Tokens(Math.max(16, source.length() / 6));
+        JavaLexer lexer = LEXERS.get();
+        lexer.start(source, 0, source.length(), 0);
+        int line = 1;
+        boolean skipStatement = false;
+        IElementType type;
+        while ((type = lexer.getTokenType()) != null) {
+            int start = lexer.getTokenStart();
+            int end = lexer.getTokenEnd();
+            if (!ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(type)) {
+                if (type == JavaTokenType.PACKAGE_KEYWORD || type == JavaTokenType.IMPORT_KEYWORD) {
+                    skipStatement = true;
+                } else if (skipStatement) {
+                    skipStatement = type != JavaTokenType.SEMICOLON;
+                } else {
+                    tokens.add(code(type, source, start, end), line);
+                }
+            }
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) == '\n') {
+                    line++;
+                }
+            }
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    private int code(IElementType type, CharSequence source, int start, int end) {
+        boolean byText = type == JavaTokenType.IDENTIFIER ? !ignoreIdentifiers
+                : LITERALS.contains(type) && !ignoreLiterals;
+        if (!byText) {
+            return type.getIndex();
+        }
+        String text = source.subSequence(start, end).toString();
+        Integer code = dictionary.get(text);
+        if (code == null) {
+            Integer created = nextCode.getAndIncrement();
+            code = dictionary.putIfAbsent(text, created);
+            if (code == null) {
+                code = created;
+            }
+        }
+        return code;
+    }
+
+    /**
+     * The token codes of one file and the line of each token, in growable primitive arrays.
+     */
+    static class Tokens {
+        private int[] codes;
+        private int[] lines;
+        private int size;
+
+        Tokens(int capacity) {
+            this.codes = new int[capacity];
+            this.lines = new int[capacity];
+        }
+
+        void add(int code, int line) {
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            codes[size] = code;
+            lines[size] = line;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int code(int index) {
+            return codes[index];
+        }
+
+        int line(int index) {
+            return lines[index];
+        }
+
+        /**
+         * Drops the unused capacity, the tokens are kept until the search ends.
+         */
+        void trim() {
+            codes = Arrays.copyOf(codes, size);
+            lines = Arrays.copyOf(lines, size);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.gome.maven.plugin.code.pmd.cpd;
+
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.plugin.code.pmd.pmd.SourceBuffer;
+import com.gome.maven.util.containers.IntIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds blocks of at least {@code minimumTokens} equal tokens across a set of Java files.
+ * <p>
+ * Every file is read and lexed once, and the Rabin-Karp hash of each window of {@code minimumTokens} tokens is
+ * rolled along it; both run in parallel per file. The windows are then indexed by hash in one
+ * {@link IntIntHashMap} per shard of the hash space, each built by its own thread, which maps a hash to the first
+ * window having it. A later window with the same hash is a candidate duplicate of that first one, so the index
+ * holds one entry per distinct window and the candidates one per repeated window. Candidates are verified token by
+ * token, to rule out hash collisions, in the order of the later window: a window continuing a verified match on the
+ * same diagonal is covered by it, any other one starts a match that is extended as far as the tokens agree.
+ * Matches of equal length starting at the same first window are reported as one {@link Duplication}.
+ */
+public class DuplicateDetector {
+
+    /**
+     * Odd multiplier of the polynomial hash, computed modulo <code>2^32</code>.
+     */
+    private static final int BASE = 1000003;
+
+    private final int minimumTokens;
+    private final CpdTokenizer tokenizer;
+    private final Charset encoding;
+    private final int threads;
+    private final SkippedInputs skippedInputs = new SkippedInputs();
+    private long tokenCount;
+
+    /**
+     * @param threads number of threads, <code>0</code> for one per available processor
+     */
+    public DuplicateDetector(int minimumTokens, boolean ignoreLiterals, boolean ignoreIdentifiers, Charset encoding,
+                             int threads) {
+        if (minimumTokens < 1) {
+            throw new IllegalArgumentException("minimumTokens must be positive: " + minimumTokens);
+        }
+        this.minimumTokens = minimumTokens;
+        this.tokenizer = new CpdTokenizer(ignoreLiterals, ignoreIdentifiers);
+        this.encoding = encoding;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the duplications in {@code files}, the longest first
+     */
+    public List<Duplication> detect(List<File> files) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new CpdThreadFactory());
+        try {
+            final CpdTokenizer.Tokens[] tokens = tokenize(files, executor);
+            final int[][] hashes = new int[files.size()][];
+            final int[] starts = new int[files.size() + 1];
+            for (int i = 0; i < files.size(); i++) {
+                int size = tokens[i] == null ? 0 : tokens[i].size();
+                if ((long) starts[i] + size > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Too many tokens to search for duplicates: more than "
+                            + Integer.MAX_VALUE);
+                }
+                starts[i + 1] = starts[i] + size;
+            }
+            tokenCount = starts[files.size()];
+            hash(tokens, hashes, executor);
+            long[] candidates = index(hashes, starts, executor);
+            return report(files, tokens, starts, candidates);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the files that could not be read or lexed and were left out
+     */
+    public SkippedInputs getSkippedInputs() {
+        return skippedInputs;
+    }
+
+    /**
+     * @return the number of tokens compared by the last {@link #detect}
+     */
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    private CpdTokenizer.Tokens[] tokenize(List<File> files, ExecutorService executor) throws InterruptedException {
+        List<Future<CpdTokenizer.Tokens>> futures = new ArrayList<Future<CpdTokenizer.Tokens>>(files.size());
+        for (final File file : files) {
+            futures.add(executor.submit(new Callable<CpdTokenizer.Tokens>() {
+                @Override
+                public CpdTokenizer.Tokens call() {
+                    long start = System.nanoTime();
+                    try {
+                        CpdTokenizer.Tokens result = tokenizer.tokenize(SourceBuffer.read(file, encoding));
+                        result.trim();
+                        return result;
+                    } catch (IOException e) {
+                        skippedInputs.add(file.getPath(), SkippedInputs.Kind.ERROR, String.valueOf(e), elapsed(start));
+                    } catch (RuntimeException e) {
+                        skippedInputs.add(file.getPath(), SkippedInputs.Kind.ERROR, String.valueOf(e), elapsed(start));
+                    }
+                    return null;
+                }
+            }));
+        }
+        CpdTokenizer.Tokens[] result = new CpdTokenizer.Tokens[files.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = await(futures.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Rolls the hash of every window of {@code minimumTokens} tokens along each file.
+     */
+    private void hash(final CpdTokenizer.Tokens[] tokens, final int[][] hashes, ExecutorService executor)
+            throws InterruptedException {
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>(tokens.length);
+        for (final CpdTokenizer.Tokens fileTokens : tokens) {
+            futures.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return windowHashes(fileTokens);
+                }
+            }));
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = await(futures.get(i));
+        }
+    }
+
+    private int[] windowHashes(CpdTokenizer.Tokens fileTokens) {
+        int windows = fileTokens == null ? 0 : fileTokens.size() - minimumTokens + 1;
+        if (windows <= 0) {
+            return new int[0];
+        }
+        // BASE^minimumTokens, the weight of the token leaving the window after the multiplication
+        int leaving = 1;
+        for (int i = 0; i < minimumTokens; i++) {
+            leaving *= BASE;
+        }
+        int[] result = new int[windows];
+        int hash = 0;
+        for (int i = 0; i < minimumTokens; i++) {
+            hash = hash * BASE + spread(fileTokens.code(i));
+        }
+        result[0] = hash;
+        for (int i = 1; i < windows; i++) {
+            hash = hash * BASE - leaving * spread(fileTokens.code(i - 1))
+                    + spread(fileTokens.code(i + minimumTokens - 1));
+            result[i] = hash;
+        }
+        for (int i = 0; i < windows; i++) {
+            result[i] = finish(result[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the index shard by shard.
+     *
+     * @return the candidates as <code>later &lt;&lt; 32 | first</code> global token positions, ascending
+     */
+    private long[] index(final int[][] hashes, final int[] starts, ExecutorService executor)
+            throws InterruptedException {
+        final int shards = threads;
+        List<Future<LongList>> futures = new ArrayList<Future<LongList>>(shards);
+        long windows = 0;
+        for (int[] fileHashes : hashes) {
+            windows += fileHashes.length;
+        }
+        final int capacity = (int) Math.min(Integer.MAX_VALUE / 2, windows / shards + 16);
+        for (int shard = 0; shard < shards; shard++) {
+            final int owned = shard;
+            futures.add(executor.submit(new Callable<LongList>() {
+                @Override
+                public LongList call() {
+                    IntIntHashMap firstWindows = new IntIntHashMap(capacity);
+                    LongList candidates = new LongList();
+                    for (int file = 0; file < hashes.length; file++) {
+                        int[] fileHashes = hashes[file];
+                        for (int i = 0; i < fileHashes.length; i++) {
+                            int hash = fileHashes[i];
+                            if ((hash & Integer.MAX_VALUE) % shards != owned) {
+                                continue;
+                            }
+                            int position = starts[file] + i;
+                            int first = firstWindows.get(hash);
+                            if (first < 0) {
+                                firstWindows.put(hash, position);
+                            } else {
+                                candidates.add((long) position << 32 | first);
+                            }
+                        }
+                    }
+                    return candidates;
+                }
+            }));
+        }
+        LongList candidates = new LongList();
+        for (Future<LongList> future : futures) {
+            candidates.addAll(await(future));
+        }
+        long[] result = candidates.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private List<Duplication> report(List<File> files, CpdTokenizer.Tokens[] tokens, int[] starts, long[] candidates) {
+        // later window -> first window of the verified candidates, to recognize the continuation of a match
+        IntIntHashMap verified = new IntIntHashMap(Math.max(16, candidates.length));
+        Map<Long, List<Integer>> matches = new LinkedHashMap<Long, List<Integer>>();
+        for (long candidate : candidates) {
+            int later = (int) (candidate >>> 32);
+            int first = (int) candidate;
+            int laterFile = fileOf(starts, later);
+            int firstFile = fileOf(starts, first);
+            CpdTokenizer.Tokens laterTokens = tokens[laterFile];
+            CpdTokenizer.Tokens firstTokens = tokens[firstFile];
+            int laterOffset = later - starts[laterFile];
+            int firstOffset = first - starts[firstFile];
+            if (laterOffset > 0 && firstOffset > 0 && verified.get(later - 1) == first - 1) {
+                // the window before matched the same way, only the token entering this window is new
+                int last = minimumTokens - 1;
+                if (laterTokens.code(laterOffset + last) == firstTokens.code(firstOffset + last)) {
+                    verified.put(later, first);
+                }
+                continue;
+            }
+            if (laterFile == firstFile && laterOffset - firstOffset < minimumTokens) {
+                // the window overlaps itself, as in a long run of equal statements
+                continue;
+            }
+            int length = 0;
+            while (length < minimumTokens
+                    && laterTokens.code(laterOffset + length) == firstTokens.code(firstOffset + length)) {
+                length++;
+            }
+            if (length < minimumTokens) {
+                // hash collision
+                continue;
+            }
+            verified.put(later, first);
+            while (laterOffset + length < laterTokens.size() && firstOffset + length < firstTokens.size()
+                    && (laterFile != firstFile || firstOffset + length < laterOffset)
+                    && laterTokens.code(laterOffset + length) == firstTokens.code(firstOffset + length)) {
+                length++;
+            }
+            Long key = (long) first << 32 | length;
+            List<Integer> laterWindows = matches.get(key);
+            if (laterWindows == null) {
+                laterWindows = new ArrayList<Integer>(2);
+                matches.put(key, laterWindows);
+            }
+            laterWindows.add(later);
+        }
+        List<Duplication> duplications = new ArrayList<Duplication>(matches.size());
+        for (Map.Entry<Long, List<Integer>> entry : matches.entrySet()) {
+            int first = (int) (entry.getKey() >>> 32);
+            int length = (int) (long) entry.getKey();
+            List<Duplication.Occurrence> occurrences =
+                    new ArrayList<Duplication.Occurrence>(entry.getValue().size() + 1);
+            occurrences.add(occurrence(files, tokens, starts, first, length));
+            for (int later : entry.getValue()) {
+                occurrences.add(occurrence(files, tokens, starts, later, length));
+            }
+            duplications.add(new Duplication(length, occurrences));
+        }
+        Collections.sort(duplications, new Comparator<Duplication>() {
+            @Override
+            public int compare(Duplication o1, Duplication o2) {
+                if (o1.getTokens() != o2.getTokens()) {
+                    return o1.getTokens() < o2.getTokens() ? 1 : -1;
+                }
+                Duplication.Occurrence first1 = o1.getOccurrences().get(0);
+                Duplication.Occurrence first2 = o2.getOccurrences().get(0);
+                int byFile = first1.getFile().compareTo(first2.getFile());
+                return byFile != 0 ? byFile : first1.getBeginLine() - first2.getBeginLine();
+            }
+        });
+        return duplications;
+    }
+
+    private static Duplication.Occurrence occurrence(List<File> files, CpdTokenizer.Tokens[] tokens, int[] starts,
+                                                     int position, int length) {
+        int file = fileOf(starts, position);
+        int offset = position - starts[file];
+        return new Duplication.Occurrence(files.get(file), tokens[file].line(offset),
+                tokens[file].line(offset + length - 1));
+    }
+
+    /**
+     * @return the index of the file holding the global token {@code position}
+     */
+    private static int fileOf(int[] starts, int position) {
+        int low = 0;
+        int high = starts.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Spreads the token codes over all bits before they enter the hash.
+     */
+    private static int spread(int code) {
+        return code * 0x9E3779B9;
+    }
+
+    /**
+     * The murmur3 finalizer: a bijection, so it adds no collisions, that evens out the low bits the shards are
+     * chosen by.
+     */
+    private static int finish(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("duplicate detection failed", e.getCause());
+        }
+    }
+
+    /**
+     * A growable array of primitive longs.
+     */
+    private static class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class CpdThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "code-check-cpd-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.gome.maven.plugin.code.pmd.cpd;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A block of tokens found at two or more places; the first occurrence is the one found first in the scanned
+ * files.
+ */
+public class Duplication {
+
+    private final int tokens;
+    private final List<Occurrence> occurrences;
+
+    Duplication(int tokens, List<Occurrence> occurrences) {
+        this.tokens = tokens;
+        this.occurrences = Collections.unmodifiableList(occurrences);
+    }
+
+    public int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the number of lines the first occurrence spans
+     */
+    public int getLines() {
+        Occurrence first = occurrences.get(0);
+        return first.endLine - first.beginLine + 1;
+    }
+
+    public List<Occurrence> getOccurrences() {
+        return occurrences;
+    }
+
+    @Override
+    public String toString() {
+        return getLines() + " lines (" + tokens + " tokens) in " + occurrences;
+    }
+
+    public static class Occurrence {
+        private final File file;
+        private final int beginLine;
+        private final int endLine;
+
+        Occurrence(File file, int beginLine, int endLine) {
+            this.file = file;
+            this.beginLine = beginLine;
+            this.endLine = endLine;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + beginLine + "-" + endLine;
+        }
+    }
+}
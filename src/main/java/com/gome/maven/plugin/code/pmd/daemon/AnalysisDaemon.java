@@ -0,0 +1,299 @@
+package com.gome.maven.plugin.code.pmd.daemon;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.cache.AnalysisCache;
+import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisEngine;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisScheduler;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisFailedException;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisWatchdog;
+import com.gome.maven.plugin.code.pmd.pmd.AuxClasspathClassLoader;
+import com.gome.maven.plugin.code.pmd.pmd.RulePrefilter;
+import com.gome.maven.util.io.DataInputOutputUtil;
+import com.gome.maven.util.io.IOUtil;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived analysis process that keeps the loaded rules, the JIT-compiled engine, the type resolution
+ * class loader and the open analysis caches warm between builds.
+ * <p>
+ * It listens on a loopback port announced in a {@link DaemonRegistry} file and serves one build at a time;
+ * further builds wait in the accept backlog. It exits after being idle for the configured timeout.
+ */
+public class AnalysisDaemon implements Closeable {
+
+    private static Log LOG = new SystemStreamLog();
+
+    private final ServerSocket serverSocket;
+    private final File registryLocation;
+    private final String token;
+
+    private final Map<String, AnalysisCache> caches = new HashMap<String, AnalysisCache>();
+    private final Map<String, String> cacheFingerprints = new HashMap<String, String>();
+    private AuxClasspathClassLoader auxClassLoader;
+    private String auxClassLoaderKey;
+    private final RulePrefilter prefilter = RulePrefilter.load();
+    /**
+     * Accumulates over every build served, visible in JMX for as long as the daemon runs.
+     */
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+
+    /**
+     * @param port             the loopback port to listen on, <code>0</code> for any free port
+     * @param registryLocation where the port and token are published
+     * @param idleTimeoutMillis time without a build after which {@link #serve()} returns, <code>0</code> for never
+     */
+    public AnalysisDaemon(int port, File registryLocation, long idleTimeoutMillis) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.serverSocket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, Math.max(0, idleTimeoutMillis)));
+        this.registryLocation = registryLocation;
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : secret) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        this.token = hex.toString();
+        new DaemonRegistry(getPort(), token).write(registryLocation);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves builds until the daemon is closed or has been idle for the timeout.
+     */
+    public void serve() throws IOException {
+        LOG.info("Code check daemon listening on " + serverSocket.getLocalSocketAddress()
+                + ", registered in " + registryLocation);
+        metrics.registerJvmGauges();
+        metrics.registerMBean("daemon:" + getPort());
+        metrics.activate();
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    LOG.info("Code check daemon idle, shutting down");
+                    return;
+                } catch (IOException e) {
+                    if (serverSocket.isClosed()) {
+                        return;
+                    }
+                    throw e;
+                }
+                try {
+                    handle(socket);
+                } catch (IOException e) {
+                    LOG.debug("Build connection ended: " + e);
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        } finally {
+            // the metrics are current on the serving thread only
+            metrics.deactivate();
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        String clientToken = IOUtil.readUTF(in);
+        int version = DataInputOutputUtil.readINT(in);
+        if (!token.equals(clientToken)) {
+            error(out, "invalid token");
+            return;
+        }
+        if (version != DaemonProtocol.VERSION) {
+            error(out, "protocol version " + version + " is not supported, daemon speaks " + DaemonProtocol.VERSION);
+            return;
+        }
+        DaemonProtocol.Request request = DaemonProtocol.Request.read(in);
+        long start = System.nanoTime();
+        AnalysisWatchdog watchdog = null;
+        try {
+            List<RuleInfo> ruleInfos = new ArrayList<RuleInfo>(request.ruleNames.size());
+            for (String ruleName : request.ruleNames) {
+                RuleInfo ruleInfo = AliLocalInspectionToolProvider.getRuleInfoMap().get(ruleName);
+                if (ruleInfo == null) {
+                    error(out, "rule " + ruleName + " is unknown to the daemon, restart it with the current plugin");
+                    return;
+                }
+                ruleInfos.add(ruleInfo);
+            }
+            AliPmdAnalysisEngine engine = new AliPmdAnalysisEngine(ruleInfos, request.encoding);
+            AnalysisCache cache = cacheFor(request);
+            if (cache != null) {
+                for (String path : request.invalidated) {
+                    cache.invalidate(new File(path));
+                }
+            }
+            engine.setAnalysisCache(cache);
+            engine.setAuxClassLoader(auxClassLoaderFor(request.auxClasspath));
+            engine.setRulePrefilter(request.rulePrefilter ? prefilter : null);
+            engine.setSuppressMarker(request.suppressMarker);
+            engine.setQuarantine(request.quarantine);
+            if (request.fileTimeout > 0 || request.ruleTimeout > 0) {
+                watchdog = new AnalysisWatchdog(request.fileTimeout, request.ruleTimeout);
+                engine.setWatchdog(watchdog);
+            }
+            List<File> files = DaemonProtocol.Request.files(request.files);
+            new AliPmdAnalysisScheduler(engine, request.threads).run(files, new AliPmdAnalysisScheduler.ResultHandler() {
+                @Override
+                public void handle(File file, List<ProblemDescriptor> problems) throws IOException {
+                    out.writeByte(DaemonProtocol.FILE);
+                    IOUtil.writeUTF(out, file.getPath());
+                    DaemonProtocol.writeViolations(out, problems);
+                    out.flush();
+                }
+            });
+            out.writeByte(DaemonProtocol.DONE);
+            DaemonProtocol.writeSkippedInputs(out, engine.getSkippedInputs().getInputs());
+            out.flush();
+            LOG.info("Checked " + files.size() + " files in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error(out, "daemon interrupted");
+        } catch (AnalysisFailedException e) {
+            LOG.error("Code check failed", e);
+            error(out, e.getMessage());
+        } catch (RuntimeException e) {
+            LOG.error("Code check failed", e);
+            error(out, String.valueOf(e));
+        } finally {
+            if (watchdog != null) {
+                watchdog.close();
+            }
+        }
+    }
+
+    private AnalysisCache cacheFor(DaemonProtocol.Request request) {
+        if (request.analysisCacheLocation == null) {
+            return null;
+        }
+        List<File> auxClasspath = request.auxClasspath == null ? null : DaemonProtocol.Request.files(request.auxClasspath);
+        String fingerprint = AnalysisCache.fingerprint(request.ruleNames, request.minimumPriority, request.encoding,
+                auxClasspath, request.rulePrefilter, request.suppressMarker);
+        String location = request.analysisCacheLocation;
+        AnalysisCache cache = caches.get(location);
+        if (cache != null && fingerprint.equals(cacheFingerprints.get(location))) {
+            return cache;
+        }
+        if (cache != null) {
+            cache.close();
+            caches.remove(location);
+        }
+        try {
+            cache = AnalysisCache.open(new File(location), fingerprint);
+        } catch (IOException e) {
+            LOG.warn("Unable to open analysis cache " + location + ", running without it", e);
+            return null;
+        }
+        caches.put(location, cache);
+        cacheFingerprints.put(location, fingerprint);
+        return cache;
+    }
+
+    /**
+     * Reuses the class loader of the previous build while the classpath and its jars are unchanged.
+     */
+    private AuxClasspathClassLoader auxClassLoaderFor(List<String> classpath) {
+        if (classpath == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        List<File> elements = new ArrayList<File>(classpath.size());
+        for (String element : classpath) {
+            File file = new File(element);
+            elements.add(file);
+            key.append(element).append('@').append(file.isFile() ? file.lastModified() : 0).append(File.pathSeparatorChar);
+        }
+        if (auxClassLoader != null && key.toString().equals(auxClassLoaderKey)) {
+            return auxClassLoader;
+        }
+        if (auxClassLoader != null) {
+            auxClassLoader.close();
+        }
+        auxClassLoader = new AuxClasspathClassLoader(elements);
+        auxClassLoaderKey = key.toString();
+        return auxClassLoader;
+    }
+
+    private static void error(DataOutputStream out, String message) throws IOException {
+        out.writeByte(DaemonProtocol.ERROR);
+        IOUtil.writeUTF(out, message);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (AnalysisCache cache : caches.values()) {
+            cache.close();
+        }
+        caches.clear();
+        if (auxClassLoader != null) {
+            auxClassLoader.close();
+        }
+        metrics.unregisterMBean();
+        try {
+            DaemonRegistry registered = DaemonRegistry.read(registryLocation);
+            if (registered != null && token.equals(registered.getToken())) {
+                registryLocation.delete();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Starts a daemon in the foreground: <code>[port [idleMinutes [registryFile]]]</code>.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        long idleMillis = TimeUnit.MINUTES.toMillis(args.length > 1 ? Long.parseLong(args[1]) : 180);
+        File registry = args.length > 2 ? new File(args[2]) : DaemonRegistry.defaultLocation();
+        final AnalysisDaemon daemon = new AnalysisDaemon(port, registry, idleMillis);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.close();
+            }
+        }, "code-check-daemon-shutdown"));
+        try {
+            daemon.serve();
+        } finally {
+            daemon.close();
+        }
+    }
+}
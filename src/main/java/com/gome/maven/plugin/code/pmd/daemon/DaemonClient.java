@@ -0,0 +1,190 @@
+package com.gome.maven.plugin.code.pmd.daemon;
+
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisScheduler;
+import com.gome.maven.plugin.code.pmd.pmd.AnalysisRunner;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.util.io.DataInputOutputUtil;
+import com.gome.maven.util.io.IOUtil;
+import net.sourceforge.pmd.Rule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the analysis in a running {@link AnalysisDaemon} instead of the build JVM. The violations are bound
+ * to the local rule instances, so the results are handled exactly like those of an in-process run.
+ */
+public class DaemonClient implements AnalysisRunner {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final Socket socket;
+    private final String token;
+    private final DaemonProtocol.Request request = new DaemonProtocol.Request();
+    private final Map<String, Rule> rules = new HashMap<String, Rule>();
+    private final SkippedInputs skippedInputs = new SkippedInputs();
+    private volatile boolean cancelled;
+
+    private DaemonClient(Socket socket, String token) {
+        this.socket = socket;
+        this.token = token;
+    }
+
+    /**
+     * @return a client connected to the daemon registered at {@code registryLocation}, or <code>null</code>
+     * if no daemon is registered or it does not accept connections
+     */
+    public static DaemonClient connect(File registryLocation) {
+        DaemonRegistry registry;
+        try {
+            registry = DaemonRegistry.read(registryLocation);
+        } catch (IOException e) {
+            return null;
+        }
+        if (registry == null) {
+            return null;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), registry.getPort()), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            return new DaemonClient(socket, registry.getToken());
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param analysisCacheLocation the daemon side analysis cache, <code>null</code> to run without it
+     * @param auxClasspath          the type resolution classpath, <code>null</code> to disable type resolution
+     * @param rulePrefilter         whether rules are skipped for files lacking their declared tokens
+     * @param suppressMarker        the source marker suppressing a violation, <code>null</code> for PMD's default
+     */
+    public void configure(String encoding, int minimumPriority, int threads, File analysisCacheLocation,
+                          Collection<File> auxClasspath, boolean rulePrefilter, String suppressMarker,
+                          List<RuleInfo> ruleInfos) {
+        request.encoding = encoding;
+        request.minimumPriority = minimumPriority;
+        request.threads = threads;
+        request.analysisCacheLocation = analysisCacheLocation == null ? null : analysisCacheLocation.getAbsolutePath();
+        request.auxClasspath = auxClasspath == null ? null : DaemonProtocol.Request.paths(auxClasspath);
+        request.rulePrefilter = rulePrefilter;
+        request.suppressMarker = suppressMarker;
+        request.ruleNames = new ArrayList<String>(ruleInfos.size());
+        rules.clear();
+        for (RuleInfo ruleInfo : ruleInfos) {
+            Rule rule = ruleInfo.getRule();
+            request.ruleNames.add(rule.getName());
+            rules.put(rule.getName(), rule);
+        }
+    }
+
+    /**
+     * @param fileTimeout budget of a file in milliseconds, <code>0</code> for none
+     * @param ruleTimeout budget of a rule on a file in milliseconds, <code>0</code> for none
+     * @param quarantine  whether files that time out are skipped by later builds until they change
+     */
+    public void configureTimeouts(long fileTimeout, long ruleTimeout, boolean quarantine) {
+        request.fileTimeout = fileTimeout;
+        request.ruleTimeout = ruleTimeout;
+        request.quarantine = quarantine;
+    }
+
+    /**
+     * @param files files whose daemon side cached results are dropped before the run
+     */
+    public void invalidate(Collection<File> files) {
+        request.invalidated = DaemonProtocol.Request.paths(files);
+    }
+
+    @Override
+    public void run(Collection<File> files, AliPmdAnalysisScheduler.ResultHandler handler) throws IOException {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            IOUtil.writeUTF(out, token);
+            DataInputOutputUtil.writeINT(out, DaemonProtocol.VERSION);
+            request.files = DaemonProtocol.Request.paths(files);
+            request.write(out);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            while (true) {
+                byte type = in.readByte();
+                if (type == DaemonProtocol.DONE) {
+                    DaemonProtocol.readSkippedInputs(in, skippedInputs);
+                    return;
+                }
+                if (type == DaemonProtocol.ERROR) {
+                    throw new IOException("code check daemon failed: " + IOUtil.readUTF(in));
+                }
+                if (type != DaemonProtocol.FILE) {
+                    throw new IOException("unexpected record " + type + " from the code check daemon");
+                }
+                File file = new File(IOUtil.readUTF(in));
+                handler.handle(file, DaemonProtocol.readViolations(in, rules));
+                if (cancelled) {
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            if (!cancelled) {
+                throw new IOException("code check daemon closed the connection", e);
+            }
+        } catch (IOException e) {
+            if (!cancelled) {
+                throw e;
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection, which makes the daemon abandon the run.
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+        close();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public int getThreads() {
+        return request.threads;
+    }
+
+    @Override
+    public SkippedInputs getSkippedInputs() {
+        return skippedInputs;
+    }
+
+    private void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.gome.maven.plugin.code.pmd.daemon;
+
+import com.gome.maven.plugin.code.pmd.cache.CachedRuleViolation;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.util.io.DataInputOutputUtil;
+import com.gome.maven.util.io.IOUtil;
+import net.sourceforge.pmd.Rule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format between the check goal and the {@link AnalysisDaemon}, over a plain localhost socket.
+ * <p>
+ * The client sends the token from the daemon's registry file, the protocol version and a {@link Request}.
+ * The daemon answers with one {@link #FILE} record per analyzed file, in request order, followed by
+ * {@link #DONE} and the files that were skipped, or by {@link #ERROR}. Closing the connection cancels the analysis.
+ */
+final class DaemonProtocol {
+
+    static final int VERSION = 6;
+
+    static final byte FILE = 1;
+    static final byte DONE = 2;
+    static final byte ERROR = 3;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * Everything besides the rule set implementation that determines the result of a run.
+     */
+    static class Request {
+        String encoding;
+        int minimumPriority;
+        int threads;
+        /**
+         * Location of the persistent analysis cache, <code>null</code> to run without it.
+         */
+        String analysisCacheLocation;
+        /**
+         * Classpath for type resolution, <code>null</code> to disable it.
+         */
+        List<String> auxClasspath;
+        boolean rulePrefilter;
+        /**
+         * Source marker suppressing a violation, <code>null</code> for PMD's default.
+         */
+        String suppressMarker;
+        /**
+         * Time budgets of a file and of a rule on a file in milliseconds, <code>0</code> for none.
+         */
+        long fileTimeout;
+        long ruleTimeout;
+        boolean quarantine;
+        /**
+         * Files whose cached results are dropped before the run, as types they depend on changed.
+         */
+        List<String> invalidated = new ArrayList<String>();
+        List<String> ruleNames;
+        List<String> files;
+
+        void write(DataOutput out) throws IOException {
+            writeString(out, encoding);
+            DataInputOutputUtil.writeINT(out, minimumPriority);
+            DataInputOutputUtil.writeINT(out, threads);
+            writeString(out, analysisCacheLocation);
+            out.writeBoolean(auxClasspath != null);
+            if (auxClasspath != null) {
+                writeStrings(out, auxClasspath);
+            }
+            out.writeBoolean(rulePrefilter);
+            writeString(out, suppressMarker);
+            DataInputOutputUtil.writeLONG(out, fileTimeout);
+            DataInputOutputUtil.writeLONG(out, ruleTimeout);
+            out.writeBoolean(quarantine);
+            writeStrings(out, invalidated);
+            writeStrings(out, ruleNames);
+            writeStrings(out, files);
+        }
+
+        static Request read(DataInput in) throws IOException {
+            Request request = new Request();
+            request.encoding = readString(in);
+            request.minimumPriority = DataInputOutputUtil.readINT(in);
+            request.threads = DataInputOutputUtil.readINT(in);
+            request.analysisCacheLocation = readString(in);
+            request.auxClasspath = in.readBoolean() ? readStrings(in) : null;
+            request.rulePrefilter = in.readBoolean();
+            request.suppressMarker = readString(in);
+            request.fileTimeout = DataInputOutputUtil.readLONG(in);
+            request.ruleTimeout = DataInputOutputUtil.readLONG(in);
+            request.quarantine = in.readBoolean();
+            request.invalidated = readStrings(in);
+            request.ruleNames = readStrings(in);
+            request.files = readStrings(in);
+            return request;
+        }
+
+        static List<String> paths(Collection<File> files) {
+            List<String> paths = new ArrayList<String>(files.size());
+            for (File file : files) {
+                paths.add(file.getPath());
+            }
+            return paths;
+        }
+
+        static List<File> files(Collection<String> paths) {
+            List<File> files = new ArrayList<File>(paths.size());
+            for (String path : paths) {
+                files.add(new File(path));
+            }
+            return files;
+        }
+    }
+
+    static void writeViolations(DataOutput out, List<ProblemDescriptor> violations) throws IOException {
+        DataInputOutputUtil.writeINT(out, violations.size());
+        for (ProblemDescriptor violation : violations) {
+            IOUtil.writeUTF(out, violation.getRule().getName());
+            writeString(out, violation.getDescription());
+            writeString(out, violation.getFilename());
+            DataInputOutputUtil.writeINT(out, violation.getBeginLine());
+            DataInputOutputUtil.writeINT(out, violation.getBeginColumn());
+            DataInputOutputUtil.writeINT(out, violation.getEndLine());
+            DataInputOutputUtil.writeINT(out, violation.getEndColumn());
+            writeString(out, violation.getPackageName());
+            writeString(out, violation.getClassName());
+            writeString(out, violation.getMethodName());
+            writeString(out, violation.getVariableName());
+            writeString(out, violation.getSnippet());
+        }
+    }
+
+    /**
+     * @param rules the client's rule instances the violations get bound to, keyed by rule name
+     */
+    static List<ProblemDescriptor> readViolations(DataInput in, Map<String, Rule> rules) throws IOException {
+        int size = DataInputOutputUtil.readINT(in);
+        List<ProblemDescriptor> violations = new ArrayList<ProblemDescriptor>(size);
+        for (int i = 0; i < size; i++) {
+            String ruleName = IOUtil.readUTF(in);
+            Rule rule = rules.get(ruleName);
+            if (rule == null) {
+                throw new IOException("daemon reported unknown rule " + ruleName);
+            }
+            ProblemDescriptor violation = new ProblemDescriptor(new CachedRuleViolation(rule, readString(in),
+                    readString(in), DataInputOutputUtil.readINT(in), DataInputOutputUtil.readINT(in),
+                    DataInputOutputUtil.readINT(in), DataInputOutputUtil.readINT(in),
+                    readString(in), readString(in), readString(in), readString(in)));
+            violation.setSnippet(readString(in));
+            violations.add(violation);
+        }
+        return violations;
+    }
+
+    static void writeSkippedInputs(DataOutput out, List<SkippedInputs.SkippedInput> inputs) throws IOException {
+        DataInputOutputUtil.writeINT(out, inputs.size());
+        for (SkippedInputs.SkippedInput input : inputs) {
+            IOUtil.writeUTF(out, input.getFileName());
+            DataInputOutputUtil.writeINT(out, input.getKind().ordinal());
+            writeString(out, input.getReason());
+            DataInputOutputUtil.writeLONG(out, input.getMillis());
+        }
+    }
+
+    static void readSkippedInputs(DataInput in, SkippedInputs inputs) throws IOException {
+        int size = DataInputOutputUtil.readINT(in);
+        SkippedInputs.Kind[] kinds = SkippedInputs.Kind.values();
+        for (int i = 0; i < size; i++) {
+            String fileName = IOUtil.readUTF(in);
+            int kind = DataInputOutputUtil.readINT(in);
+            if (kind < 0 || kind >= kinds.length) {
+                throw new IOException("daemon reported unknown skip kind " + kind);
+            }
+            inputs.add(fileName, kinds[kind], readString(in), DataInputOutputUtil.readLONG(in));
+        }
+    }
+
+    static void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+        DataInputOutputUtil.writeINT(out, values.size());
+        for (String value : values) {
+            IOUtil.writeUTF(out, value);
+        }
+    }
+
+    static List<String> readStrings(DataInput in) throws IOException {
+        int size = DataInputOutputUtil.readINT(in);
+        List<String> values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(IOUtil.readUTF(in));
+        }
+        return values;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            IOUtil.writeUTF(out, value);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? IOUtil.readUTF(in) : null;
+    }
+}
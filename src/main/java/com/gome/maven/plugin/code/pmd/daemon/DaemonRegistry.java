@@ -0,0 +1,92 @@
+package com.gome.maven.plugin.code.pmd.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * The file through which a running {@link AnalysisDaemon} announces its port and the token clients must
+ * present. It is only readable by its owner, so other local users cannot submit work.
+ */
+public class DaemonRegistry {
+
+    private final int port;
+    private final String token;
+
+    DaemonRegistry(int port, String token) {
+        this.port = port;
+        this.token = token;
+    }
+
+    /**
+     * <code>~/.code-check/daemon.properties</code>
+     */
+    public static File defaultLocation() {
+        return new File(System.getProperty("user.home"), ".code-check" + File.separator + "daemon.properties");
+    }
+
+    /**
+     * @return the registered daemon, or <code>null</code> if none is registered
+     */
+    static DaemonRegistry read(File location) throws IOException {
+        if (!location.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(location);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        String port = properties.getProperty("port");
+        String token = properties.getProperty("token");
+        if (port == null || token == null) {
+            return null;
+        }
+        try {
+            return new DaemonRegistry(Integer.parseInt(port.trim()), token.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    void write(File location) throws IOException {
+        File parent = location.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        File temp = new File(location.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            temp.setReadable(false, false);
+            temp.setReadable(true, true);
+            temp.setWritable(false, false);
+            temp.setWritable(true, true);
+            Properties properties = new Properties();
+            properties.setProperty("port", String.valueOf(port));
+            properties.setProperty("token", token);
+            properties.store(out, "code check analysis daemon");
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(location)) {
+            location.delete();
+            if (!temp.renameTo(location)) {
+                throw new IOException("Unable to write " + location);
+            }
+        }
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getToken() {
+        return token;
+    }
+}
@@ -0,0 +1,578 @@
+package com.gome.maven.plugin.code.pmd.index;
+
+import com.gome.maven.util.io.DataExternalizer;
+import com.gome.maven.util.io.DataInputOutputUtil;
+import com.gome.maven.util.io.EnumeratorStringDescriptor;
+import com.gome.maven.util.io.IOUtil;
+import com.gome.maven.util.io.PersistentHashMap;
+import com.gome.maven.util.io.PersistentStringEnumerator;
+import com.google.common.io.Files;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk index of the types compiled from the analyzed projects, so that rules can look up facts about types
+ * declared in other files without loading or parsing them.
+ * <p>
+ * The index is keyed by internal class name and built from the class files of the output directories and of the
+ * class directories on the classpath, so that types of upstream reactor modules are tracked as well. Each
+ * entry remembers the directory, size and modification time of its class file; {@link #update(File)} only reads
+ * the class files that changed since and drops the entries of deleted ones. Looked up symbols are kept in memory,
+ * so a type is read from disk at most once per build. Type, annotation and member names are interned through a
+ * {@link PersistentStringEnumerator}.
+ * <p>
+ * The index also keeps the dependency graph between the types: which types each class file references, through
+ * its constant pool and the descriptors and generic signatures of its members, and the reverse. It tells which
+ * types may be affected by the classes whose signatures changed since the last build; a class recompiled with
+ * the same signatures counts as unchanged.
+ */
+public class SymbolIndex {
+
+    private static Log LOG = new SystemStreamLog();
+
+    private static final String VERSION_SUFFIX = ".version";
+    private static final String NAMES_SUFFIX = ".names";
+    private static final String STAMPS_SUFFIX = ".stamps";
+    private static final String REFERENCES_SUFFIX = ".references";
+    private static final String DEPENDENTS_SUFFIX = ".dependents";
+
+    /**
+     * Version of the entry layout; stores in another layout are dropped.
+     */
+    private static final String FORMAT_VERSION = "2";
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+
+    /**
+     * A class type in a descriptor or generic signature.
+     */
+    private static final Pattern TYPE_IN_SIGNATURE = Pattern.compile("L([\\w/$]+)[;<]");
+
+    /**
+     * Stands for a type that is not indexed, which a concurrent map cannot hold as <code>null</code>.
+     */
+    private static final TypeSymbol MISSING = new TypeSymbol(0, null, null, null, null, null, null, null, 0);
+
+    private final File location;
+    private final PersistentStringEnumerator names;
+    private final PersistentHashMap<String, TypeSymbol> symbols;
+    private final PersistentHashMap<String, Stamp> stamps;
+    /**
+     * The types each indexed type references.
+     */
+    private final PersistentHashMap<String, List<String>> references;
+    /**
+     * The indexed types referencing each type, the reverse of {@link #references}.
+     */
+    private final PersistentHashMap<String, List<String>> dependents;
+    private final ConcurrentMap<String, TypeSymbol> loaded = new ConcurrentHashMap<String, TypeSymbol>();
+    private final Set<String> changedTypes = new HashSet<String>();
+    /**
+     * Whether the index was created empty, then nothing is known about the previous build and no type counts as
+     * changed.
+     */
+    private boolean created;
+
+    private SymbolIndex(File location) throws IOException {
+        this.location = location;
+        this.names = new PersistentStringEnumerator(new File(location.getPath() + NAMES_SUFFIX));
+        this.symbols = new PersistentHashMap<String, TypeSymbol>(location, EnumeratorStringDescriptor.INSTANCE,
+                new SymbolExternalizer());
+        this.stamps = new PersistentHashMap<String, Stamp>(new File(location.getPath() + STAMPS_SUFFIX),
+                EnumeratorStringDescriptor.INSTANCE, new StampExternalizer());
+        this.references = new PersistentHashMap<String, List<String>>(new File(location.getPath() + REFERENCES_SUFFIX),
+                EnumeratorStringDescriptor.INSTANCE, new NamesExternalizer());
+        this.dependents = new PersistentHashMap<String, List<String>>(new File(location.getPath() + DEPENDENTS_SUFFIX),
+                EnumeratorStringDescriptor.INSTANCE, new NamesExternalizer());
+    }
+
+    /**
+     * Opens the index stored at {@code location}, discarding it when it was written in another layout or cannot
+     * be read.
+     */
+    public static SymbolIndex open(File location) throws IOException {
+        File parent = location.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create symbol index directory " + parent);
+        }
+        File versionFile = new File(location.getPath() + VERSION_SUFFIX);
+        String stored = versionFile.isFile() ? Files.toString(versionFile, StandardCharsets.UTF_8) : null;
+        boolean created = !FORMAT_VERSION.equals(stored);
+        if (created) {
+            IOUtil.deleteAllFilesStartingWith(location);
+        }
+        SymbolIndex index;
+        try {
+            index = new SymbolIndex(location);
+        } catch (IOException e) {
+            LOG.warn("Symbol index " + location + " is corrupted, recreating it", e);
+            IOUtil.deleteAllFilesStartingWith(location);
+            index = new SymbolIndex(location);
+            created = true;
+        }
+        index.created = created;
+        Files.write(FORMAT_VERSION, versionFile, StandardCharsets.UTF_8);
+        return index;
+    }
+
+    /**
+     * Brings the entries of the classes below {@code classesDirectory} up to date.
+     *
+     * @return the number of class files read
+     */
+    public int update(File classesDirectory) throws IOException {
+        if (!classesDirectory.isDirectory()) {
+            return 0;
+        }
+        final String directory = classesDirectory.getAbsolutePath();
+        final Path root = classesDirectory.toPath();
+        final Set<String> present = new HashSet<String>();
+        final int[] updated = new int[1];
+        final Map<String, Set<String>> addedDependents = new HashMap<String, Set<String>>();
+        final Map<String, Set<String>> removedDependents = new HashMap<String, Set<String>>();
+        java.nio.file.Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String fileName = file.toString();
+                if (!fileName.endsWith(".class")) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String relative = root.relativize(file).toString().replace(File.separatorChar, '/');
+                String internalName = relative.substring(0, relative.length() - ".class".length());
+                present.add(internalName);
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                Stamp stored = stamps.get(internalName);
+                if (stored != null && stored.isSameFile(directory, lastModified, attrs.size())) {
+                    return FileVisitResult.CONTINUE;
+                }
+                TypeSymbol symbol;
+                List<String> referenced;
+                try {
+                    ClassReader reader = readClass(file);
+                    symbol = TypeSymbol.read(reader);
+                    referenced = referencedTypes(reader, internalName);
+                } catch (IOException e) {
+                    LOG.debug("Unable to index class file " + file, e);
+                    return FileVisitResult.CONTINUE;
+                } catch (RuntimeException e) {
+                    LOG.debug("Unable to index class file " + file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+                symbols.put(internalName, symbol);
+                loaded.remove(internalName);
+                long apiHash = symbol.apiHash();
+                stamps.put(internalName, new Stamp(directory, lastModified, attrs.size(), apiHash));
+                updateReferences(internalName, referenced, addedDependents, removedDependents);
+                // a recompiled class whose signatures are the same does not affect the types using it
+                if (!created && (stored == null || stored.apiHash != apiHash)) {
+                    changedTypes.add(internalName);
+                }
+                updated[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        List<String> removed = new ArrayList<String>();
+        for (String internalName : stamps.getAllKeysWithExistingMapping()) {
+            if (!present.contains(internalName)) {
+                Stamp stamp = stamps.get(internalName);
+                if (stamp != null && stamp.directory.equals(directory)) {
+                    removed.add(internalName);
+                }
+            }
+        }
+        for (String internalName : removed) {
+            updateReferences(internalName, Collections.<String>emptyList(), addedDependents, removedDependents);
+            stamps.remove(internalName);
+            symbols.remove(internalName);
+            loaded.remove(internalName);
+            changedTypes.add(internalName);
+        }
+        Set<String> targets = new HashSet<String>(addedDependents.keySet());
+        targets.addAll(removedDependents.keySet());
+        for (String target : targets) {
+            List<String> stored = dependents.get(target);
+            Set<String> updatedDependents = stored == null ? new LinkedHashSet<String>() : new LinkedHashSet<String>(stored);
+            if (removedDependents.containsKey(target)) {
+                updatedDependents.removeAll(removedDependents.get(target));
+            }
+            if (addedDependents.containsKey(target)) {
+                updatedDependents.addAll(addedDependents.get(target));
+            }
+            if (updatedDependents.isEmpty()) {
+                dependents.remove(target);
+            } else {
+                dependents.put(target, new ArrayList<String>(updatedDependents));
+            }
+        }
+        LOG.debug("Symbol index " + location + ": " + updated[0] + " classes of " + classesDirectory
+                + " updated, " + removed.size() + " removed");
+        return updated[0];
+    }
+
+    private static ClassReader readClass(Path classFile) throws IOException {
+        InputStream in = java.nio.file.Files.newInputStream(classFile);
+        try {
+            return new ClassReader(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Records the new references of {@code internalName} and collects the changes to the reverse edges, which
+     * are written once per referenced type at the end of an update.
+     */
+    private void updateReferences(String internalName, List<String> referenced, Map<String, Set<String>> added,
+                                  Map<String, Set<String>> removed) throws IOException {
+        List<String> stored = references.get(internalName);
+        Set<String> previous = stored == null ? Collections.<String>emptySet() : new HashSet<String>(stored);
+        Set<String> current = new HashSet<String>(referenced);
+        for (String type : previous) {
+            if (!current.contains(type)) {
+                edge(removed, type, internalName);
+            }
+        }
+        for (String type : current) {
+            if (!previous.contains(type)) {
+                edge(added, type, internalName);
+            }
+        }
+        if (!referenced.isEmpty()) {
+            references.put(internalName, referenced);
+        } else if (stored != null) {
+            references.remove(internalName);
+        }
+    }
+
+    private static void edge(Map<String, Set<String>> edges, String type, String dependent) {
+        Set<String> types = edges.get(type);
+        if (types == null) {
+            types = new HashSet<String>();
+            edges.put(type, types);
+        }
+        types.add(dependent);
+    }
+
+    /**
+     * The types named by the class constants and by the descriptors and signatures of a class file, except the
+     * class itself and the platform's <code>java.*</code> types, which do not change between builds.
+     */
+    static List<String> referencedTypes(ClassReader reader, String internalName) throws IOException {
+        Set<String> types = new TreeSet<String>();
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int item = 1; item < reader.getItemCount(); item++) {
+            int offset = reader.getItem(item);
+            if (offset <= 0) {
+                // the second slot of a long or double constant
+                continue;
+            }
+            int tag = reader.b[offset - 1];
+            if (tag == CONSTANT_CLASS) {
+                String name = reader.readUTF8(offset, buffer);
+                if (name.startsWith("[")) {
+                    addTypes(types, name);
+                } else {
+                    types.add(name);
+                }
+            } else if (tag == CONSTANT_UTF8) {
+                int length = reader.readUnsignedShort(offset);
+                addTypes(types, new DataInputStream(new ByteArrayInputStream(reader.b, offset, length + 2)).readUTF());
+            }
+        }
+        List<String> result = new ArrayList<String>(types.size());
+        for (String type : types) {
+            if (!type.equals(internalName) && !type.startsWith("java/")) {
+                result.add(type);
+            }
+        }
+        return result;
+    }
+
+    private static void addTypes(Set<String> types, String signature) {
+        if (signature.indexOf('L') < 0) {
+            return;
+        }
+        Matcher matcher = TYPE_IN_SIGNATURE.matcher(signature);
+        while (matcher.find()) {
+            types.add(matcher.group(1));
+        }
+    }
+
+    /**
+     * The types whose analysis may change because of the types that changed: the types referencing a changed type,
+     * and transitively those referencing a subtype of a changed type, as the subtype inherits the change.
+     */
+    public Set<String> getAffectedTypes(Collection<String> types) throws IOException {
+        Set<String> affected = new HashSet<String>(types);
+        Set<String> inherited = new HashSet<String>(types);
+        Deque<String> pending = new ArrayDeque<String>(types);
+        while (!pending.isEmpty()) {
+            String type = pending.poll();
+            List<String> referencing = dependents.get(type);
+            if (referencing == null) {
+                continue;
+            }
+            for (String dependent : referencing) {
+                affected.add(dependent);
+                if (isDirectSubtype(dependent, type) && inherited.add(dependent)) {
+                    pending.add(dependent);
+                }
+            }
+        }
+        return affected;
+    }
+
+    private boolean isDirectSubtype(String subtype, String type) {
+        TypeSymbol symbol = get(subtype);
+        return symbol != null && (type.equals(symbol.getSuperName()) || Arrays.asList(symbol.interfaces()).contains(type));
+    }
+
+    /**
+     * @return the types whose class files were added, changed or deleted by the updates since the index was opened,
+     * none if the index was created by this build
+     */
+    public Set<String> getChangedTypes() {
+        return Collections.unmodifiableSet(changedTypes);
+    }
+
+    /**
+     * @return the path of the source file of an indexed type relative to its source root, with <code>/</code>
+     * separators, or <code>null</code> if it is unknown
+     */
+    public String getSourcePath(String internalName) {
+        TypeSymbol symbol = get(internalName);
+        if (symbol == null || symbol.getSourceFile() == null) {
+            return null;
+        }
+        int slash = internalName.lastIndexOf('/');
+        return slash < 0 ? symbol.getSourceFile() : internalName.substring(0, slash + 1) + symbol.getSourceFile();
+    }
+
+    /**
+     * @param internalName the type's internal name, e.g. <code>java/lang/String</code>
+     * @return the symbol of the type, or <code>null</code> if it is not compiled from the analyzed projects
+     */
+    public TypeSymbol get(String internalName) {
+        TypeSymbol symbol = loaded.get(internalName);
+        if (symbol == null) {
+            try {
+                symbol = symbols.get(internalName);
+            } catch (IOException e) {
+                LOG.debug("Unable to read symbol index entry of " + internalName, e);
+            }
+            loaded.putIfAbsent(internalName, symbol == null ? MISSING : symbol);
+        }
+        return symbol == MISSING ? null : symbol;
+    }
+
+    public File getLocation() {
+        return location;
+    }
+
+    public void close() {
+        try {
+            symbols.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close symbol index " + location, e);
+        }
+        try {
+            stamps.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close symbol index stamps " + location, e);
+        }
+        try {
+            references.close();
+            dependents.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close symbol index dependencies " + location, e);
+        }
+        try {
+            names.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close symbol index names " + location, e);
+        }
+    }
+
+    private static class Stamp {
+        private final String directory;
+        private final long lastModified;
+        private final long length;
+        /**
+         * {@link TypeSymbol#apiHash()} of the indexed class file.
+         */
+        private final long apiHash;
+
+        Stamp(String directory, long lastModified, long length, long apiHash) {
+            this.directory = directory;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.apiHash = apiHash;
+        }
+
+        boolean isSameFile(String directory, long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length && this.directory.equals(directory);
+        }
+    }
+
+    private class StampExternalizer implements DataExternalizer<Stamp> {
+
+        @Override
+        public void save(DataOutput out, Stamp value) throws IOException {
+            DataInputOutputUtil.writeINT(out, names.enumerate(value.directory));
+            DataInputOutputUtil.writeLONG(out, value.lastModified);
+            DataInputOutputUtil.writeLONG(out, value.length);
+            out.writeLong(value.apiHash);
+        }
+
+        @Override
+        public Stamp read(DataInput in) throws IOException {
+            String directory = names.valueOf(DataInputOutputUtil.readINT(in));
+            return new Stamp(directory, DataInputOutputUtil.readLONG(in), DataInputOutputUtil.readLONG(in),
+                    in.readLong());
+        }
+    }
+
+    private class NamesExternalizer implements DataExternalizer<List<String>> {
+
+        @Override
+        public void save(DataOutput out, List<String> value) throws IOException {
+            DataInputOutputUtil.writeINT(out, value.size());
+            for (String name : value) {
+                DataInputOutputUtil.writeINT(out, names.enumerate(name));
+            }
+        }
+
+        @Override
+        public List<String> read(DataInput in) throws IOException {
+            int size = DataInputOutputUtil.readINT(in);
+            List<String> value = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                value.add(names.valueOf(DataInputOutputUtil.readINT(in)));
+            }
+            return value;
+        }
+    }
+
+    private class SymbolExternalizer implements DataExternalizer<TypeSymbol> {
+
+        @Override
+        public void save(DataOutput out, TypeSymbol value) throws IOException {
+            DataInputOutputUtil.writeINT(out, value.getAccess());
+            writeName(out, value.getSourceFile());
+            writeName(out, value.getSuperName());
+            String[] interfaces = value.interfaces();
+            DataInputOutputUtil.writeINT(out, interfaces.length);
+            for (String name : interfaces) {
+                writeName(out, name);
+            }
+            writeNames(out, value.getAnnotations());
+            writeMembers(out, value.getMethods());
+            writeMembers(out, value.getFields());
+            DataInputOutputUtil.writeINT(out, value.getMethodAnnotations().size());
+            for (Map.Entry<String, List<String>> entry : value.getMethodAnnotations().entrySet()) {
+                writeName(out, entry.getKey());
+                writeNames(out, entry.getValue());
+            }
+            out.writeLong(value.apiHash());
+        }
+
+        @Override
+        public TypeSymbol read(DataInput in) throws IOException {
+            int access = DataInputOutputUtil.readINT(in);
+            String sourceFile = readName(in);
+            String superName = readName(in);
+            String[] interfaces = new String[DataInputOutputUtil.readINT(in)];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaces[i] = readName(in);
+            }
+            List<String> annotations = readNames(in);
+            Map<String, Integer> methods = readMembers(in);
+            Map<String, Integer> fields = readMembers(in);
+            int annotated = DataInputOutputUtil.readINT(in);
+            Map<String, List<String>> methodAnnotations = annotated == 0
+                    ? Collections.<String, List<String>>emptyMap() : new HashMap<String, List<String>>(annotated * 2);
+            for (int i = 0; i < annotated; i++) {
+                methodAnnotations.put(readName(in), readNames(in));
+            }
+            return new TypeSymbol(access, sourceFile, superName, interfaces, annotations, methods, fields,
+                    methodAnnotations, in.readLong());
+        }
+
+        private void writeMembers(DataOutput out, Map<String, Integer> members) throws IOException {
+            DataInputOutputUtil.writeINT(out, members.size());
+            for (Map.Entry<String, Integer> member : members.entrySet()) {
+                writeName(out, member.getKey());
+                DataInputOutputUtil.writeINT(out, member.getValue());
+            }
+        }
+
+        private Map<String, Integer> readMembers(DataInput in) throws IOException {
+            int size = DataInputOutputUtil.readINT(in);
+            Map<String, Integer> members = new HashMap<String, Integer>(size * 2);
+            for (int i = 0; i < size; i++) {
+                members.put(readName(in), DataInputOutputUtil.readINT(in));
+            }
+            return members;
+        }
+
+        private void writeNames(DataOutput out, List<String> values) throws IOException {
+            DataInputOutputUtil.writeINT(out, values.size());
+            for (String value : values) {
+                writeName(out, value);
+            }
+        }
+
+        private List<String> readNames(DataInput in) throws IOException {
+            int size = DataInputOutputUtil.readINT(in);
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            List<String> values = new ArrayList<String>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readName(in));
+            }
+            return values;
+        }
+
+        private void writeName(DataOutput out, String name) throws IOException {
+            DataInputOutputUtil.writeINT(out, name == null ? 0 : names.enumerate(name));
+        }
+
+        private String readName(DataInput in) throws IOException {
+            int id = DataInputOutputUtil.readINT(in);
+            return id == 0 ? null : names.valueOf(id);
+        }
+    }
+}
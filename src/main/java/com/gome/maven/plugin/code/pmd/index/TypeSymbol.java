@@ -0,0 +1,237 @@
+package com.gome.maven.plugin.code.pmd.index;
+
+import org.jetbrains.org.objectweb.asm.AnnotationVisitor;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+import org.jetbrains.org.objectweb.asm.FieldVisitor;
+import org.jetbrains.org.objectweb.asm.MethodVisitor;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What other files need to know about a type: its supertypes, the access flags of its members and the annotations
+ * retained in the class file. Immutable once read.
+ */
+public final class TypeSymbol {
+
+    private static final String[] NO_NAMES = new String[0];
+
+    private final int access;
+    private final String sourceFile;
+    private final String superName;
+    private final String[] interfaces;
+    private final List<String> annotations;
+    /**
+     * Access flags of the methods keyed by name and descriptor, including constructors and static methods.
+     */
+    private final Map<String, Integer> methods;
+    /**
+     * Access flags of the fields keyed by name.
+     */
+    private final Map<String, Integer> fields;
+    /**
+     * Annotation descriptors of the annotated methods keyed by name and descriptor.
+     */
+    private final Map<String, List<String>> methodAnnotations;
+    private final long apiHash;
+
+    TypeSymbol(int access, String sourceFile, String superName, String[] interfaces, List<String> annotations,
+               Map<String, Integer> methods, Map<String, Integer> fields, Map<String, List<String>> methodAnnotations,
+               long apiHash) {
+        this.access = access;
+        this.sourceFile = sourceFile;
+        this.superName = superName;
+        this.interfaces = interfaces == null ? NO_NAMES : interfaces;
+        this.annotations = annotations;
+        this.methods = methods;
+        this.fields = fields;
+        this.methodAnnotations = methodAnnotations;
+        this.apiHash = apiHash;
+    }
+
+    /**
+     * Reads the symbol of a class file, skipping all code.
+     */
+    public static TypeSymbol read(ClassReader reader) {
+        Reader symbolReader = new Reader();
+        reader.accept(symbolReader, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+        return new TypeSymbol(symbolReader.access, symbolReader.sourceFile, symbolReader.superName,
+                symbolReader.interfaces, symbolReader.annotations, symbolReader.methods, symbolReader.fields,
+                symbolReader.methodAnnotations, symbolReader.api.hash().asLong());
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public boolean isInterface() {
+        return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    public boolean isDeprecated() {
+        return (access & Opcodes.ACC_DEPRECATED) != 0;
+    }
+
+    /**
+     * @return the name of the source file the type was compiled from, without directories, or <code>null</code>
+     * if the class file does not tell
+     */
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * @return the internal name of the superclass, <code>null</code> for <code>java.lang.Object</code>
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * @return the internal names of the directly implemented interfaces
+     */
+    public String[] getInterfaces() {
+        return interfaces.clone();
+    }
+
+    /**
+     * @return the descriptors of the class file retained annotations of the type
+     */
+    public List<String> getAnnotations() {
+        return annotations;
+    }
+
+    /**
+     * @return the access flags of the method, or <code>null</code> if the type does not declare it
+     */
+    public Integer getMethodAccess(String name, String descriptor) {
+        return methods.get(name + descriptor);
+    }
+
+    /**
+     * @return the access flags of the field, or <code>null</code> if the type does not declare it
+     */
+    public Integer getFieldAccess(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * @return the descriptors of the class file retained annotations of the method
+     */
+    public List<String> getMethodAnnotations(String name, String descriptor) {
+        List<String> result = methodAnnotations.get(name + descriptor);
+        return result == null ? Collections.<String>emptyList() : result;
+    }
+
+    /**
+     * Hash of everything other types can see: access flags, supertypes, member signatures and annotations, but not
+     * the source file name. It does not change when only method bodies do.
+     */
+    long apiHash() {
+        return apiHash;
+    }
+
+    Map<String, Integer> getMethods() {
+        return methods;
+    }
+
+    Map<String, Integer> getFields() {
+        return fields;
+    }
+
+    Map<String, List<String>> getMethodAnnotations() {
+        return methodAnnotations;
+    }
+
+    String[] interfaces() {
+        return interfaces;
+    }
+
+    private static class Reader extends ClassVisitor {
+        private int access;
+        private String sourceFile;
+        private String superName;
+        private String[] interfaces;
+        private final List<String> annotations = new ArrayList<String>();
+        private final Map<String, Integer> methods = new HashMap<String, Integer>();
+        private final Map<String, Integer> fields = new HashMap<String, Integer>();
+        private final Map<String, List<String>> methodAnnotations = new HashMap<String, List<String>>();
+        private final Hasher api = Hashing.murmur3_128().newHasher();
+
+        Reader() {
+            super(Opcodes.ASM5);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            api.putInt(access);
+            signature('<', superName);
+            signature('<', signature);
+            if (interfaces != null) {
+                for (String implemented : interfaces) {
+                    signature(',', implemented);
+                }
+            }
+        }
+
+        @Override
+        public void visitSource(String source, String debug) {
+            this.sourceFile = source;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            annotations.add(desc);
+            signature('@', desc);
+            return null;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            fields.put(name, access);
+            api.putInt(access);
+            signature('.', name);
+            signature(':', desc);
+            signature(':', signature);
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            final String key = name + desc;
+            methods.put(key, access);
+            api.putInt(access);
+            signature('(', key);
+            signature(':', signature);
+            return new MethodVisitor(Opcodes.ASM5) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+                    List<String> descriptors = methodAnnotations.get(key);
+                    if (descriptors == null) {
+                        descriptors = new ArrayList<String>(1);
+                        methodAnnotations.put(key, descriptors);
+                    }
+                    descriptors.add(annotationDesc);
+                    signature('@', annotationDesc);
+                    return null;
+                }
+            };
+        }
+
+        private void signature(char kind, String value) {
+            api.putChar(kind).putString(String.valueOf(value), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -21,8 +21,7 @@ import com.beust.jcommander.internal.Lists;
 import com.beust.jcommander.internal.Maps;
 import com.gome.maven.plugin.code.pmd.config.P3cConfig;
 //import com.gome.maven.plugin.code.pmd.inspection.standalone.AliMissingOverrideAnnotationInspection;
-import com.gome.maven.plugin.code.pmd.util.Intrinsics;
-import javassist.*;
+import com.gome.maven.util.ReflectionUtil;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSetFactory;
@@ -30,18 +29,20 @@ import net.sourceforge.pmd.RuleSetNotFoundException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 
-import javax.annotation.Generated;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 ;
 
 /**
+ * Registry of the Ali inspections. Every PMD rule is exposed through an {@link AliPmdInspection} instance
+ * parameterized by the rule name; the rule sets are only loaded on first access.
+ *
  * @author caikang
  * @date 2016/12/16
  */
@@ -49,9 +50,16 @@ public class AliLocalInspectionToolProvider {
 
     private static Log LOGGER = new SystemStreamLog();
 
-    private static List<Class<?>> CLASS_LIST = Lists.newArrayList();
-    public static List<String> ruleNames = Lists.newArrayList();
-    private static Map<String, RuleInfo> ruleInfoMap = Maps.newHashMap();
+    private static final String INSPECTION_SUFFIX = "Inspection";
+    private static final String RULE_SUFFIX = "Rule";
+
+    /**
+     * The IDE inspections of the Ali rules. They need the IDE application and a project model to resolve against,
+     * so the build checks the same things otherwise: by p3c PMD rules (equals on null, upper case L, braces,
+     * wrapper equality, array brackets, static <code>SimpleDateFormat</code> fields) and by the bytecode rules
+     * behind <code>pmd.bytecodeRules</code> (missing @Override, deprecation, static access via instance, hash keys
+     * without hashCode/equals).
+     */
     private static List<Class<?>> nativeInspectionToolClass =
             new ArrayList<Class<?>>() {{
 //                add(AliMissingOverrideAnnotationInspection.class);
@@ -66,21 +74,98 @@ public class AliLocalInspectionToolProvider {
 //                add(AliWrapperTypeEqualityInspection.class);
             }};
 
-    static {
-        I18nResources.changeLanguage(P3cConfig.getInstance().locale);
-        Thread.currentThread().setContextClassLoader(AliLocalInspectionToolProvider.class.getClassLoader());
-        initPmdInspection();
-//        initNativeInspection();
+    /**
+     * Holder of the loaded rules; initialized by the JVM on first use, exactly once.
+     */
+    private static class Registry {
+        private static final List<String> RULE_NAMES;
+        private static final Map<String, RuleInfo> RULE_INFOS;
+        private static final List<LocalInspectionTool> TOOLS;
+
+        static {
+            long start = System.currentTimeMillis();
+            ClassLoader origLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                Thread.currentThread().setContextClassLoader(AliLocalInspectionToolProvider.class.getClassLoader());
+                I18nResources.changeLanguage(P3cConfig.getInstance().locale);
+                Map<String, RuleInfo> ruleInfos = new LinkedHashMap<String, RuleInfo>();
+                for (RuleInfo ri : newRuleInfos()) {
+                    ruleInfos.put(ri.getRule().getName(), ri);
+                }
+                RULE_INFOS = Collections.unmodifiableMap(ruleInfos);
+                RULE_NAMES = Collections.unmodifiableList(new ArrayList<String>(ruleInfos.keySet()));
+            } finally {
+                Thread.currentThread().setContextClassLoader(origLoader);
+            }
+            List<LocalInspectionTool> tools = new ArrayList<LocalInspectionTool>();
+            for (String ruleName : RULE_NAMES) {
+                tools.add(new AliPmdInspection(ruleName));
+            }
+            tools.addAll(newNativeInspections());
+            TOOLS = Collections.unmodifiableList(tools);
+            LOGGER.debug("loaded " + RULE_NAMES.size() + " Ali rules in " + (System.currentTimeMillis() - start) + "ms");
+        }
     }
 
-    public static List<Class<?>> getInspectionClasses() {
-        List<Class<?>> classes = new ArrayList<Class<?>>(CLASS_LIST);
-        return classes;
+    /**
+     * @return one inspection instance per rule, in rule set order
+     */
+    public static List<LocalInspectionTool> getInspectionTools() {
+        return Registry.TOOLS;
     }
 
+    /**
+     * Looks up an inspection by rule name, e.g. <code>AvoidUseTimerRule</code>. The other spellings accepted by
+     * {@link #resolveRuleName} are accepted as well.
+     *
+     * @return the inspection, or <code>null</code> if there is no such rule
+     */
+    public static LocalInspectionTool getInspectionTool(String name) {
+        if (name == null) {
+            return null;
+        }
+        String ruleName = resolveRuleName(name, Registry.RULE_INFOS.keySet());
+        if (ruleName == null) {
+            ruleName = name.trim();
+        }
+        for (LocalInspectionTool tool : Registry.TOOLS) {
+            if (tool.ruleName().equals(ruleName)) {
+                return tool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a configured rule name against {@code ruleNames}. Besides the rule name itself, e.g.
+     * <code>AliDeprecationRule</code>, the former generated class name <code>AliDeprecationRuleInspection</code> and
+     * the IDE inspection name <code>AliDeprecationInspection</code> are accepted.
+     *
+     * @return the rule name, or <code>null</code> if {@code name} stands for none of {@code ruleNames}
+     */
+    public static String resolveRuleName(String name, Collection<String> ruleNames) {
+        String ruleName = name.trim();
+        if (ruleNames.contains(ruleName)) {
+            return ruleName;
+        }
+        if (ruleName.endsWith(INSPECTION_SUFFIX)) {
+            String base = ruleName.substring(0, ruleName.length() - INSPECTION_SUFFIX.length());
+            if (ruleNames.contains(base)) {
+                return base;
+            }
+            if (ruleNames.contains(base + RULE_SUFFIX)) {
+                return base + RULE_SUFFIX;
+            }
+        }
+        return null;
+    }
+
+    public static List<String> getRuleNames() {
+        return Registry.RULE_NAMES;
+    }
 
     public static Map<String, RuleInfo> getRuleInfoMap() {
-        return ruleInfoMap;
+        return Registry.RULE_INFOS;
     }
 
 
@@ -92,63 +177,29 @@ public class AliLocalInspectionToolProvider {
     };
 
 
-    public static void initNativeInspection() {
-        ClassPool pool = ClassPool.getDefault();
-        pool.insertClassPath(new ClassClassPath(DelegateLocalInspectionTool.class));
-        try {
-            for (Class<?> it : nativeInspectionToolClass) {
-                pool.insertClassPath(new ClassClassPath(it));
-                CtClass cc = pool.get(DelegateLocalInspectionTool.class.getName());
-                cc.setName("Delegate" + it.getSimpleName());
-                CtField ctField = cc.getField("forJavassist");
-                cc.removeField(ctField);
-                CtClass itClass = pool.get(it.getName());
-                CtClass toolClass = pool.get(LocalInspectionTool.class.getName());
-                CtField newField = new CtField(toolClass, "forJavassist", cc);
-                cc.addField(newField, CtField.Initializer.byNew(itClass));
-                CLASS_LIST.add(cc.toClass());
+    private static List<LocalInspectionTool> newNativeInspections() {
+        List<LocalInspectionTool> tools = new ArrayList<LocalInspectionTool>(nativeInspectionToolClass.size());
+        for (Class<?> it : nativeInspectionToolClass) {
+            try {
+                LocalInspectionTool tool = (LocalInspectionTool) ReflectionUtil.newInstance(it, new Class[0]);
+                tools.add(new DelegateLocalInspectionTool(tool));
+            } catch (RuntimeException e) {
+                LOGGER.error("unable to create native inspection " + it.getName(), e);
             }
-        } catch (NotFoundException e) {
-            e.printStackTrace();
-        } catch (CannotCompileException e) {
-            e.printStackTrace();
         }
+        return tools;
     }
 
-    public static void initPmdInspection() {
+    /**
+     * Loads a fresh set of Ali rule instances, keyed by rule name. PMD rules are not guaranteed to be
+     * stateless, so every analysis thread works on its own copies.
+     */
+    public static Map<String, Rule> newRuleInstances() {
+        Map<String, Rule> rules = Maps.newHashMap();
         for (RuleInfo ri : newRuleInfos()) {
-            ruleNames.add(ri.getRule().getName());
-            ruleInfoMap.put(ri.getRule().getName(), ri);
-        }
-        ClassPool pool = ClassPool.getDefault();
-        pool.insertClassPath(new ClassClassPath(DelegatePmdInspection.class));
-        try {
-            for (RuleInfo ruleInfo : ruleInfoMap.values()) {
-                String ruleName = ruleInfo.getRule().getName();
-                CtClass cc = pool.get(DelegatePmdInspection.class.getName());
-                cc.setName(ruleInfo.getRule().getName() + "Inspection");
-                CtField ctField = cc.getField("ruleName");
-                cc.removeField(ctField);
-                String value = "\"" + ruleInfo.getRule().getName() + "\"";
-                CtField newField = CtField.make("private String ruleName =" + value + ";", cc);
-                cc.addField(newField, value);
-
-                byte[] byteArr = cc.toBytecode();
-                FileOutputStream fos = new FileOutputStream(new File("D://" + cc.getName() + ".class"));
-                fos.write(byteArr);
-                fos.close();
-                CLASS_LIST.add(cc.toClass());
-            }
-
-        } catch (NotFoundException e) {
-            LOGGER.error(e);
-        } catch (CannotCompileException e) {
-            LOGGER.error(e);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+            rules.put(ri.getRule().getName(), ri.getRule());
         }
+        return rules;
     }
 
     private static List<RuleInfo> newRuleInfos() {
@@ -18,6 +18,7 @@ package com.gome.maven.plugin.code.pmd.inspection;
 
 import com.alibaba.p3c.pmd.lang.java.util.NumberConstants;
 import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevel;
+import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevels;
 import net.sourceforge.pmd.Rule;
 
 import java.io.File;
@@ -45,12 +46,11 @@ public class AliPmdInspection extends LocalInspectionTool implements AliBaseInsp
 
     public AliPmdInspection( String ruleName) {
         this.ruleName = ruleName;
-        staticDescription = RuleInspectionUtils.getRuleStaticDescription(ruleName);
         RuleInfo ruleInfo = AliLocalInspectionToolProvider.getRuleInfoMap().get(ruleName);
         shouldInspectChecker = ruleInfo.getShouldInspectChecker();
         rule = ruleInfo.getRule();
         displayName = rule.getMessage();
-        defaultLevel = RuleInspectionUtils.getHighlightDisplayLevel(rule.getPriority());
+        defaultLevel = HighlightDisplayLevels.getHighlightDisplayLevel(rule.getPriority());
     }
 
 
@@ -69,6 +69,10 @@ public class AliPmdInspection extends LocalInspectionTool implements AliBaseInsp
 
     @Override
     public String getStaticDescription() {
+        // rendering the description template is expensive and only needed for documentation
+        if (staticDescription == null) {
+            staticDescription = RuleInspectionUtils.getRuleStaticDescription(ruleName);
+        }
         return staticDescription;
     }
 
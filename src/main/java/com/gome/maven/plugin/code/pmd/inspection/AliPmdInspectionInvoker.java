@@ -17,10 +17,17 @@ package com.gome.maven.plugin.code.pmd.inspection;
 
 
 import com.beust.jcommander.internal.Lists;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.cache.AnalysisCache;
 import com.gome.maven.plugin.code.pmd.config.P3cConfig;
 import com.gome.maven.plugin.code.pmd.pmd.AliPmdProcessor;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleViolation;
 import org.apache.maven.plugin.logging.Log;
@@ -28,14 +35,31 @@ import org.apache.maven.plugin.logging.SystemStreamLog;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
-;
-
 /**
+ * Applies a single rule to a file for {@link AliPmdInspection}, caching the result per file and rule when
+ * <code>ruleCacheEnable</code> is set. Sources are read with the <code>sourceEncoding</code> of {@link P3cConfig}.
+ * The check goal does not go through here: its engine applies all rules to a file at once and keeps results in the
+ * persistent {@code AnalysisCache}.
+ * <p>
+ * The cache is keyed by the canonical path, the rule name, the encoding, the p3c-pmd and PMD versions and the size
+ * and modification time of the file, so an edited file or an upgraded rule set misses; entries do not expire unless
+ * <code>ruleCacheTime</code> is set. Concurrent requests for the same key compute the result once while the others
+ * wait; requests for other keys only contend on their cache segment. The cache is bounded by the number of
+ * violations it holds. Hits, misses and evictions are counted into the current {@link AnalysisMetrics} as
+ * {@value AnalysisMetrics#RULE_CACHE_HITS}, {@value AnalysisMetrics#RULE_CACHE_MISSES} and
+ * {@value AnalysisMetrics#RULE_CACHE_EVICTIONS}.
+ * <p>
+ * Rules keep state while visiting a file, so every thread applies its own instances of the Ali rules; only rules
+ * the provider does not know are shared, and applied to one file at a time.
+ *
  * @author caikang
  * @date 2016/12/13
  */
@@ -44,6 +68,21 @@ public class AliPmdInspectionInvoker {
 
     private static final Log logger = new SystemStreamLog();
 
+    /**
+     * Upper bound of the cache weight; every entry weighs one plus its number of violations.
+     */
+    private static final long MAX_CACHED_WEIGHT = 100000;
+
+    /**
+     * The Ali rule instances of the current thread, keyed by rule name.
+     */
+    private static final ThreadLocal<Map<String, Rule>> WORKER_RULES = new ThreadLocal<Map<String, Rule>>() {
+        @Override
+        protected Map<String, Rule> initialValue() {
+            return AliLocalInspectionToolProvider.newRuleInstances();
+        }
+    };
+
     private File psiFile;
     private Rule rule;
 
@@ -52,26 +91,30 @@ public class AliPmdInspectionInvoker {
         this.rule = rule;
     }
 
-    private List<RuleViolation> violations = Collections.emptyList();
+    private volatile List<RuleViolation> violations = Collections.emptyList();
 
     public void doInvoke() throws IOException {
         Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
-        AliPmdProcessor processor = new AliPmdProcessor(rule, Charset.defaultCharset().name());
-        long start = System.currentTimeMillis();
-        violations = processor.processFile(psiFile);
-        logger.info("elapsed "+(System.currentTimeMillis() - start)+"ms to" +
-                " to apply rule "+rule.getName()+" for file "+psiFile.getCanonicalPath());
+        String encoding = smartFoxConfig.getSourceEncoding();
+        Rule workerRule = WORKER_RULES.get().get(rule.getName());
+        if (workerRule != null) {
+            violations = new AliPmdProcessor(workerRule, encoding).processFile(psiFile);
+            return;
+        }
+        AliPmdProcessor processor = new AliPmdProcessor(rule, encoding);
+        synchronized (rule) {
+            violations = processor.processFile(psiFile);
+        }
     }
 
     public ProblemDescriptor[] getRuleProblems(Boolean isOnTheFly) {
+        List<RuleViolation> violations = this.violations;
         if (violations.isEmpty()) {
             return null;
         }
         List<ProblemDescriptor> problemDescriptors = Lists.newArrayList(violations.size());
         for (RuleViolation rv : violations) {
-            ProblemDescriptor problemDescriptor = new ProblemDescriptor(rv);
-            if (problemDescriptor == null) continue;
-            problemDescriptors.add(problemDescriptor);
+            problemDescriptors.add(new ProblemDescriptor(rv));
         }
         ProblemDescriptor[] problemDescriptorArray = new ProblemDescriptor[problemDescriptors.size()];
         problemDescriptorArray = problemDescriptors.toArray(problemDescriptorArray);
@@ -79,7 +122,7 @@ public class AliPmdInspectionInvoker {
     }
 
 
-    public static Cache<FileRule, AliPmdInspectionInvoker> invokers;
+    public static volatile Cache<FileRule, AliPmdInspectionInvoker> invokers;
 
 
     public static P3cConfig smartFoxConfig = P3cConfig.getInstance();
@@ -88,47 +131,85 @@ public class AliPmdInspectionInvoker {
         reInitInvokers(smartFoxConfig.getRuleCacheTime());
     }
 
-    public static ProblemDescriptor[] invokeInspection(File psiFile, Rule rule, Boolean isOnTheFly) {
+    public static ProblemDescriptor[] invokeInspection(final File psiFile, final Rule rule, Boolean isOnTheFly) {
         if (psiFile == null) {
             return null;
         }
-        AliPmdInspectionInvoker invoker = null;
+        AliPmdInspectionInvoker invoker;
         try {
             if (!smartFoxConfig.isRuleCacheEnable()) {
                 invoker = new AliPmdInspectionInvoker(psiFile, rule);
                 invoker.doInvoke();
                 return invoker.getRuleProblems(isOnTheFly);
             }
-            invoker = invokers.getIfPresent(new FileRule(psiFile.getCanonicalPath(), rule.getName()));
-            if (invoker == null) {
-                synchronized (psiFile) {
-                    invoker = invokers.getIfPresent(psiFile.getCanonicalPath());
-                    if (invoker == null) {
-                        invoker = new AliPmdInspectionInvoker(psiFile, rule);
-                        invoker.doInvoke();
-                        invokers.put(new FileRule(psiFile.getCanonicalPath(), rule.getName()), invoker);
-                    }
+            final boolean[] loaded = new boolean[1];
+            FileRule key = new FileRule(psiFile, rule.getName(), smartFoxConfig.getSourceEncoding());
+            invoker = invokers.get(key, new Callable<AliPmdInspectionInvoker>() {
+                @Override
+                public AliPmdInspectionInvoker call() throws IOException {
+                    loaded[0] = true;
+                    AliPmdInspectionInvoker created = new AliPmdInspectionInvoker(psiFile, rule);
+                    created.doInvoke();
+                    return created;
                 }
-            }
+            });
+            AnalysisMetrics.count(loaded[0] ? AnalysisMetrics.RULE_CACHE_MISSES : AnalysisMetrics.RULE_CACHE_HITS, 1);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.warn("Unable to inspect " + psiFile + " with " + rule.getName(), e);
+            return null;
+        } catch (ExecutionException e) {
+            logger.warn("Unable to inspect " + psiFile + " with " + rule.getName(), e.getCause());
+            return null;
         }
         return invoker.getRuleProblems(isOnTheFly);
     }
 
-    private static void doInvokeIfPresent(String filePath, String rule) throws IOException {
-        invokers.getIfPresent(new FileRule(filePath, rule)).doInvoke();
-    }
-
+    /**
+     * Drops the cached results of {@code file}, so that the next inspection analyzes it again.
+     */
     public static void refreshFileViolationsCache(File file) throws IOException {
-        for (String it : AliLocalInspectionToolProvider.ruleNames) {
-            doInvokeIfPresent(file.getCanonicalPath(), it);
-
+        String filePath = file.getCanonicalPath();
+        for (Iterator<FileRule> iterator = invokers.asMap().keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getFilePath().equals(filePath)) {
+                iterator.remove();
+            }
         }
     }
 
+    /**
+     * @param expireTime lifetime of a cached result in milliseconds, <code>0</code> to keep it until it is evicted
+     */
     public static void reInitInvokers(Long expireTime) {
-        invokers = CacheBuilder.newBuilder().maximumSize(500).expireAfterWrite(expireTime, TimeUnit.MILLISECONDS).build();
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (expireTime != null && expireTime > 0) {
+            builder.expireAfterWrite(expireTime, TimeUnit.MILLISECONDS);
+        }
+        invokers = builder
+                .concurrencyLevel(16)
+                .maximumWeight(MAX_CACHED_WEIGHT)
+                .weigher(new Weigher<FileRule, AliPmdInspectionInvoker>() {
+                    @Override
+                    public int weigh(FileRule key, AliPmdInspectionInvoker value) {
+                        return 1 + value.violations.size();
+                    }
+                })
+                .removalListener(new RemovalListener<FileRule, AliPmdInspectionInvoker>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<FileRule, AliPmdInspectionInvoker> notification) {
+                        if (notification.wasEvicted()) {
+                            AnalysisMetrics.count(AnalysisMetrics.RULE_CACHE_EVICTIONS, 1);
+                        }
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Hits, misses and load times of the result cache since it was last initialized.
+     */
+    public static CacheStats getCacheStats() {
+        return invokers.stats();
     }
 
 
@@ -142,31 +223,64 @@ public class AliPmdInspectionInvoker {
 }
 
 
+/**
+ * Cache key of a rule result: the file, identified by its canonical path and content stamp, the encoding it is read
+ * with, and the rule name and rule set version.
+ */
 class FileRule {
-    private String filePath;
-    private String ruleName;
-
-    public FileRule() {
-    }
-
-    public FileRule(String filePath, String ruleName) {
-        this.filePath = filePath;
+    private static final String RULESET_VERSION = AnalysisCache.getP3cVersion() + '/' + PMD.VERSION;
+
+    private final String filePath;
+    private final long lastModified;
+    private final long length;
+    private final String ruleName;
+    private final String encoding;
+    private final String rulesetVersion;
+
+    FileRule(File file, String ruleName, String encoding) throws IOException {
+        this.filePath = file.getCanonicalPath();
+        this.lastModified = file.lastModified();
+        this.length = file.length();
         this.ruleName = ruleName;
+        this.encoding = String.valueOf(encoding);
+        this.rulesetVersion = RULESET_VERSION;
     }
 
     public String getFilePath() {
         return filePath;
     }
 
-    public void setFilePath(String filePath) {
-        this.filePath = filePath;
-    }
-
     public String getRuleName() {
         return ruleName;
     }
 
-    public void setRuleName(String ruleName) {
-        this.ruleName = ruleName;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileRule)) {
+            return false;
+        }
+        FileRule other = (FileRule) o;
+        return lastModified == other.lastModified && length == other.length
+                && filePath.equals(other.filePath) && ruleName.equals(other.ruleName)
+                && encoding.equals(other.encoding) && rulesetVersion.equals(other.rulesetVersion);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = filePath.hashCode();
+        result = 31 * result + ruleName.hashCode();
+        result = 31 * result + encoding.hashCode();
+        result = 31 * result + rulesetVersion.hashCode();
+        result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+        result = 31 * result + (int) (length ^ (length >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return filePath + "#" + ruleName;
     }
 }
@@ -28,7 +28,6 @@ import java.io.File;
  */
 public class DelegateLocalInspectionTool extends LocalInspectionTool implements AliBaseInspection {
 
-    private LocalInspectionTool forJavassist;
     private LocalInspectionTool localInspectionTool;
 
     public boolean runForWholeFile() {
@@ -102,12 +101,10 @@ public class DelegateLocalInspectionTool extends LocalInspectionTool implements
 //        }
 //    }
 
-    public DelegateLocalInspectionTool() {
-        LocalInspectionTool var10001 = this.forJavassist;
-        if (this.forJavassist != null) {
-            this.localInspectionTool = var10001;
-        } else {
+    public DelegateLocalInspectionTool(LocalInspectionTool localInspectionTool) {
+        if (localInspectionTool == null) {
             throw new IllegalStateException();
         }
+        this.localInspectionTool = localInspectionTool;
     }
 }
\ No newline at end of file
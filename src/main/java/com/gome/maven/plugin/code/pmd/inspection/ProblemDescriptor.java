@@ -14,12 +14,25 @@ public class ProblemDescriptor implements RuleViolation {
 
     //    private File file;
     private RuleViolation ruleViolation;
+    private String snippet;
 
     public ProblemDescriptor(RuleViolation ruleViolation) {
 //        this.file = file;
         this.ruleViolation = ruleViolation;
     }
 
+    /**
+     * The whitespace-free text of the first line of the violation, taken from the analyzed source;
+     * <code>null</code> when it was not recorded.
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
     @Override
     public Rule getRule() {
         return ruleViolation.getRule();
@@ -0,0 +1,456 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.plugin.code.pmd.baseline.ViolationBaseline;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
+import com.gome.maven.plugin.code.pmd.cache.AnalysisCache;
+import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import com.gome.maven.plugin.code.pmd.inspection.ShouldInspectChecker;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File-major rule engine: all selected rules are collected into one {@link RuleSets} and applied
+ * to each file's AST in a single pass, instead of re-reading and re-parsing the file once per rule.
+ * <p>
+ * Problems of a file are returned grouped by rule, in the order the rules were selected, and by
+ * position inside each rule, which is the same per-file sequence the rule-major loop produced.
+ * <p>
+ * Files that time out or fail are recorded in {@link #getSkippedInputs()}; their results are never cached, a timed
+ * out file is quarantined instead when enabled.
+ */
+public class AliPmdAnalysisEngine {
+
+    /**
+     * Number of narrowed rule selections whose processors are kept for reuse.
+     */
+    private static final int NARROWED_PROCESSORS = 64;
+
+    private final List<RuleInfo> ruleInfos;
+    private final Map<String, Integer> ruleOrder = new HashMap<String, Integer>();
+    private final Map<String, Rule> rulesByName = new HashMap<String, Rule>();
+    /**
+     * The distinct {@code ShouldInspectChecker}s of the rules; rules of a rule set share one, so each is asked
+     * once per file rather than once per rule.
+     */
+    private final List<ShouldInspectChecker> checkers = new ArrayList<ShouldInspectChecker>();
+    /**
+     * Index into {@link #checkers} of each rule's checker, <code>-1</code> for rules without one.
+     */
+    private final int[] ruleCheckers;
+    private final String encoding;
+    private List<Rule> rules;
+    /**
+     * Whether the rules are applied one at a time by {@link InstrumentedRuleSets}, which only the profiler and a
+     * per-rule budget need.
+     */
+    private boolean instrumented;
+    private RuleSets ruleSets;
+    private AliPmdProcessor processor;
+    private AnalysisCache analysisCache;
+    private AnalysisProfiler profiler;
+    private ClassLoader auxClassLoader;
+    private AstCache nodeCache;
+    private String suppressMarker;
+    private RulePrefilter prefilter;
+    private AnalysisWatchdog watchdog;
+    private boolean quarantine;
+    private SkippedInputs skippedInputs = new SkippedInputs();
+    /**
+     * Why the file analyzed last was skipped, <code>null</code> when it was analyzed completely.
+     */
+    private SkippedInputs.Kind lastSkip;
+    private String lastSkipReason;
+    private final Map<BitSet, AliPmdProcessor> narrowedProcessors =
+            new LinkedHashMap<BitSet, AliPmdProcessor>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BitSet, AliPmdProcessor> eldest) {
+                    return size() > NARROWED_PROCESSORS;
+                }
+            };
+
+    public AliPmdAnalysisEngine(List<RuleInfo> ruleInfos, String encoding) {
+        this.ruleInfos = new ArrayList<RuleInfo>(ruleInfos);
+        this.encoding = encoding;
+        this.ruleCheckers = new int[this.ruleInfos.size()];
+        Map<ShouldInspectChecker, Integer> checkerIndex = new IdentityHashMap<ShouldInspectChecker, Integer>();
+        List<Rule> rules = new ArrayList<Rule>(ruleInfos.size());
+        for (RuleInfo ruleInfo : this.ruleInfos) {
+            ShouldInspectChecker checker = ruleInfo.getShouldInspectChecker();
+            if (checker != null && !checkerIndex.containsKey(checker)) {
+                checkerIndex.put(checker, checkers.size());
+                checkers.add(checker);
+            }
+            ruleCheckers[rules.size()] = checker == null ? -1 : checkerIndex.get(checker);
+            ruleOrder.put(ruleInfo.getRule().getName(), ruleOrder.size());
+            rulesByName.put(ruleInfo.getRule().getName(), ruleInfo.getRule());
+            rules.add(ruleInfo.getRule());
+        }
+        useRules(rules);
+    }
+
+    private void useRules(List<Rule> rules) {
+        this.rules = rules;
+        this.ruleSets = AliPmdProcessor.newRuleSets(rules, instrumented);
+        this.processor = newProcessor(ruleSets);
+        narrowedProcessors.clear();
+    }
+
+    private void updateInstrumentation() {
+        boolean instrumented = profiler != null || watchdog != null && watchdog.getRuleTimeoutMillis() > 0;
+        if (instrumented != this.instrumented) {
+            this.instrumented = instrumented;
+            useRules(rules);
+        }
+    }
+
+    private AliPmdProcessor newProcessor(RuleSets ruleSets) {
+        AliPmdProcessor processor = new AliPmdProcessor(ruleSets, encoding, auxClassLoader);
+        processor.setSuppressMarker(suppressMarker);
+        processor.setNodeCache(nodeCache);
+        return processor;
+    }
+
+    /**
+     * Applies every selected rule to the given file with a single parse.
+     *
+     * @param file the source file to check
+     * @return the problems found, never <code>null</code>
+     */
+    public List<ProblemDescriptor> analyze(File file) {
+        String path = canonicalPath(file);
+        if (profiler != null) {
+            profiler.beginFile(path);
+        }
+        try {
+            return analyze(file, path);
+        } finally {
+            if (profiler != null) {
+                profiler.endFile();
+            }
+        }
+    }
+
+    private List<ProblemDescriptor> analyze(File file, String path) {
+        CharSequence source = null;
+        String contentHash = null;
+        if (analysisCache != null) {
+            try {
+                // read once: the same buffer is hashed and, on a miss, parsed
+                source = processor.readSource(file);
+                contentHash = analysisCache.contentHash(source);
+            } catch (IOException e) {
+                // left to the processor, which reports unreadable files
+            }
+            if (contentHash != null) {
+                String quarantined = quarantine ? analysisCache.quarantined(file, contentHash) : null;
+                if (quarantined != null) {
+                    skipped(path, SkippedInputs.Kind.QUARANTINED, quarantined, 0);
+                    return Collections.emptyList();
+                }
+                List<RuleViolation> cached = analysisCache.lookup(file, contentHash, rulesByName);
+                if (cached != null) {
+                    return toProblems(cached, source);
+                }
+            }
+        }
+        lastSkip = null;
+        List<ProblemDescriptor> problems = doAnalyze(file, path, source);
+        if (analysisCache != null && contentHash != null) {
+            if (lastSkip == null) {
+                analysisCache.store(file, contentHash, problems);
+            } else if (lastSkip == SkippedInputs.Kind.TIMEOUT && quarantine) {
+                analysisCache.quarantine(file, contentHash, lastSkipReason);
+            }
+        }
+        return problems;
+    }
+
+    private List<ProblemDescriptor> doAnalyze(File file, String path, CharSequence source) {
+        BitSet present = null;
+        if (prefilter != null && isJava(file)) {
+            source = readSource(file, source);
+            if (source != null) {
+                present = prefilter.scan(source);
+            }
+        }
+        AliPmdProcessor fileProcessor = processorFor(file, present);
+        if (fileProcessor == null) {
+            return Collections.emptyList();
+        }
+        // read here rather than by the processor, the problems take their line snippets from it
+        source = readSource(file, source);
+        long start = System.nanoTime();
+        List<RuleViolation> violations;
+        String timeout = null;
+        if (watchdog != null) {
+            watchdog.beginFile(path);
+        }
+        try {
+            violations = fileProcessor.processFile(file, source);
+        } finally {
+            if (watchdog != null) {
+                timeout = watchdog.endFile();
+            }
+        }
+        // every selected rule has seen the AST now, keeping it would only take heap
+        if (nodeCache != null) {
+            nodeCache.invalidate(path);
+        } else {
+            SourceCodeProcessor.invalidateCache(path);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (timeout != null) {
+            // the violations found until the abort are incomplete, the file is reported as skipped instead
+            skipped(path, SkippedInputs.Kind.TIMEOUT, timeout, millis);
+            return Collections.emptyList();
+        }
+        if (fileProcessor.getLastError() != null) {
+            skipped(path, SkippedInputs.Kind.ERROR, fileProcessor.getLastError(), millis);
+        }
+        List<ProblemDescriptor> problems = toProblems(violations, source);
+        // stable sort: keeps PMD's positional order inside each rule
+        Collections.sort(problems, new Comparator<ProblemDescriptor>() {
+            @Override
+            public int compare(ProblemDescriptor o1, ProblemDescriptor o2) {
+                return ruleIndex(o1.getRule()) - ruleIndex(o2.getRule());
+            }
+        });
+        return problems;
+    }
+
+    /**
+     * Records that {@code file} was not analyzed completely.
+     */
+    void skipped(File file, SkippedInputs.Kind kind, String reason, long millis) {
+        skipped(canonicalPath(file), kind, reason, millis);
+    }
+
+    private void skipped(String path, SkippedInputs.Kind kind, String reason, long millis) {
+        lastSkip = kind;
+        lastSkipReason = reason;
+        skippedInputs.add(path, kind, reason, millis);
+    }
+
+    private static boolean isJava(File file) {
+        return file.getName().endsWith(".java");
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * @return {@code source}, or the content of {@code file} when it was not read yet; <code>null</code> when it
+     * cannot be read, which the processor then reports
+     */
+    private CharSequence readSource(File file, CharSequence source) {
+        if (source != null) {
+            return source;
+        }
+        try {
+            return processor.readSource(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param source the analyzed content of the file, for the line snippets of the problems; <code>null</code>
+     *               when it could not be read
+     */
+    private static List<ProblemDescriptor> toProblems(List<RuleViolation> violations, CharSequence source) {
+        if (violations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ProblemDescriptor> problems = new ArrayList<ProblemDescriptor>(violations.size());
+        for (RuleViolation violation : violations) {
+            problems.add(new ProblemDescriptor(violation));
+        }
+        if (source != null) {
+            ViolationBaseline.attachSnippets(problems, source);
+        }
+        return problems;
+    }
+
+    /**
+     * Enables the persistent analysis cache; unchanged files are then answered without parsing.
+     */
+    public void setAnalysisCache(AnalysisCache analysisCache) {
+        this.analysisCache = analysisCache;
+    }
+
+    /**
+     * Sets the class loader type resolution uses for the analyzed project's types.
+     */
+    public void setAuxClassLoader(ClassLoader auxClassLoader) {
+        this.auxClassLoader = auxClassLoader;
+        this.processor = newProcessor(ruleSets);
+        narrowedProcessors.clear();
+    }
+
+    /**
+     * Sets the cache of parsed files, <code>null</code> for the one {@link SourceCodeProcessor} shares.
+     */
+    public void setNodeCache(AstCache nodeCache) {
+        this.nodeCache = nodeCache;
+        this.processor = newProcessor(ruleSets);
+        narrowedProcessors.clear();
+    }
+
+    /**
+     * Sets the source marker suppressing a violation, <code>null</code> for PMD's default.
+    public void setSuppressMarker(String suppressMarker) {
+        this.suppressMarker = suppressMarker;
+        this.processor = newProcessor(ruleSets);
+        narrowedProcessors.clear();
+    }
+
+    /**
+     * Enables skipping rules whose declared tokens do not occur in a file; <code>null</code> applies every rule
+     * to every file.
+     */
+    public void setRulePrefilter(RulePrefilter prefilter) {
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Enforces the time budgets of {@code watchdog} on every analyzed file and rule.
+     */
+    public void setWatchdog(AnalysisWatchdog watchdog) {
+        this.watchdog = watchdog;
+        updateInstrumentation();
+    }
+
+    public AnalysisWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Whether files that time out are quarantined in the analysis cache, so that later builds skip them until
+     * they change.
+     */
+    public void setQuarantine(boolean quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Sets the collector of skipped files, to share one between engines.
+     */
+    public void setSkippedInputs(SkippedInputs skippedInputs) {
+        this.skippedInputs = skippedInputs;
+    }
+
+    public SkippedInputs getSkippedInputs() {
+        return skippedInputs;
+    }
+
+    /**
+     * Enables per-phase and per-rule profiling of every analyzed file. Without a profiler or a per-rule budget the
+     * rules are applied by PMD in one pass and only their total time reaches the current {@link AnalysisMetrics}.
+     */
+    public void setProfiler(AnalysisProfiler profiler) {
+        this.profiler = profiler;
+        updateInstrumentation();
+    }
+
+    /**
+     * Creates an engine with the same rule selection but its own rule instances and its own
+     * {@link AliPmdProcessor}, so it can be confined to a single worker thread.
+     */
+    public AliPmdAnalysisEngine newWorkerEngine() {
+        Map<String, Rule> freshRules = AliLocalInspectionToolProvider.newRuleInstances();
+        List<RuleInfo> copies = new ArrayList<RuleInfo>(ruleInfos.size());
+        for (RuleInfo ruleInfo : ruleInfos) {
+            Rule rule = freshRules.get(ruleInfo.getRule().getName());
+            copies.add(new RuleInfo(rule != null ? rule : ruleInfo.getRule(), ruleInfo.getShouldInspectChecker()));
+        }
+        AliPmdAnalysisEngine workerEngine = new AliPmdAnalysisEngine(copies, encoding);
+        workerEngine.setAnalysisCache(analysisCache);
+        workerEngine.setAuxClassLoader(auxClassLoader);
+        workerEngine.setNodeCache(nodeCache);
+        workerEngine.setSuppressMarker(suppressMarker);
+        workerEngine.setProfiler(profiler);
+        workerEngine.setRulePrefilter(prefilter);
+        workerEngine.setWatchdog(watchdog);
+        workerEngine.setQuarantine(quarantine);
+        workerEngine.setSkippedInputs(skippedInputs);
+        return workerEngine;
+    }
+
+    public List<RuleInfo> getRuleInfos() {
+        return Collections.unmodifiableList(ruleInfos);
+    }
+
+    private int ruleIndex(Rule rule) {
+        Integer index = ruleOrder.get(rule.getName());
+        return index == null ? Integer.MAX_VALUE : index;
+    }
+
+    /**
+     * The shared processor, or one over a narrowed rule selection when some rule's {@code ShouldInspectChecker}
+     * rejects the file or the prefilter rules it out; <code>null</code> when no rule is left.
+     *
+     * @param present the prefilter tokens of the file, <code>null</code> when it was not scanned
+     */
+    private AliPmdProcessor processorFor(File file, BitSet present) {
+        boolean[] verdicts = new boolean[checkers.size()];
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = Boolean.TRUE.equals(checkers.get(i).shouldInspect(file));
+        }
+        BitSet accepted = null;
+        int filtered = 0;
+        for (int i = 0; i < ruleInfos.size(); i++) {
+            boolean inspect = ruleCheckers[i] < 0 || verdicts[ruleCheckers[i]];
+            if (inspect && present != null && !prefilter.isApplicable(rules.get(i).getName(), present)) {
+                inspect = false;
+                filtered++;
+            }
+            if (!inspect && accepted == null) {
+                accepted = new BitSet(ruleInfos.size());
+                accepted.set(0, i);
+            } else if (inspect && accepted != null) {
+                accepted.set(i);
+            }
+        }
+        if (accepted == null) {
+            return processor;
+        }
+        if (filtered > 0) {
+            prefilter.skipped(filtered, accepted.isEmpty());
+        }
+        if (accepted.isEmpty()) {
+            return null;
+        }
+        AliPmdProcessor narrowed = narrowedProcessors.get(accepted);
+        if (narrowed == null) {
+            List<Rule> selected = new ArrayList<Rule>(accepted.cardinality());
+            for (int i = accepted.nextSetBit(0); i >= 0; i = accepted.nextSetBit(i + 1)) {
+                selected.add(rules.get(i));
+            }
+            narrowed = newProcessor(AliPmdProcessor.newRuleSets(selected, instrumented));
+            narrowedProcessors.put(accepted, narrowed);
+        }
+        return narrowed;
+    }
+}
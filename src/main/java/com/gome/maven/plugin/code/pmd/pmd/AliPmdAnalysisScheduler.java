@@ -0,0 +1,201 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an {@link AliPmdAnalysisEngine} over a set of files on a fixed pool of worker threads.
+ * <p>
+ * Every worker owns an engine created by {@link AliPmdAnalysisEngine#newWorkerEngine()}, hence its own
+ * rule instances, {@code PMDConfiguration}, {@code RuleContext} and {@code SourceCodeProcessor}.
+ * Results are handed to the {@link ResultHandler} on the calling thread in the iteration order of the
+ * submitted files, so the output is identical to a serial run.
+ * <p>
+ * With an {@link AnalysisWatchdog} on the engine, a worker that is still on one file after
+ * {@link AnalysisWatchdog#getAbandonAfterMillis()} is given up on: the file is reported as skipped and a new thread
+ * takes the worker's place. A serial run relies on the watchdog alone.
+ * <p>
+ * The time the workers spend per file, the time they were available and the depth of the work queue are reported
+ * to the current {@link AnalysisMetrics}, which yields the worker utilization.
+ */
+public class AliPmdAnalysisScheduler implements AnalysisRunner {
+
+    public interface ResultHandler {
+        /**
+         * Called on the scheduling thread, once per file, in submission order.
+         */
+        void handle(File file, List<ProblemDescriptor> problems) throws IOException;
+    }
+
+    private final AliPmdAnalysisEngine engine;
+    private final int threads;
+    private volatile boolean cancelled;
+
+    public AliPmdAnalysisScheduler(AliPmdAnalysisEngine engine, int threads) {
+        this.engine = engine;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Stops the current {@link #run}: no further file is started or handed to the handler, and files in
+     * flight are abandoned. Safe to call from the {@link ResultHandler}.
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws AnalysisFailedException when the analysis of a file threw; the run stops there
+     */
+    @Override
+    public void run(Collection<File> files, ResultHandler handler)
+            throws InterruptedException, IOException, AnalysisFailedException {
+        cancelled = false;
+        long start = System.nanoTime();
+        if (threads <= 1 || files.size() <= 1) {
+            try {
+                for (File file : files) {
+                    if (cancelled) {
+                        return;
+                    }
+                    List<ProblemDescriptor> problems;
+                    try {
+                        problems = analyze(engine, file);
+                    } catch (RuntimeException e) {
+                        throw new AnalysisFailedException(file, e);
+                    }
+                    handler.handle(file, problems);
+                }
+            } finally {
+                AnalysisMetrics.count(AnalysisMetrics.WORKER_CAPACITY_NANOS, System.nanoTime() - start);
+            }
+            return;
+        }
+
+        final ThreadLocal<AliPmdAnalysisEngine> workerEngine = new ThreadLocal<AliPmdAnalysisEngine>() {
+            @Override
+            protected AliPmdAnalysisEngine initialValue() {
+                return engine.newWorkerEngine();
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        try {
+            List<Future<List<ProblemDescriptor>>> futures = new ArrayList<Future<List<ProblemDescriptor>>>(files.size());
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<List<ProblemDescriptor>>() {
+                    @Override
+                    public List<ProblemDescriptor> call() {
+                        if (cancelled) {
+                            return Collections.emptyList();
+                        }
+                        return analyze(workerEngine.get(), file);
+                    }
+                }));
+            }
+            Iterator<File> fileIterator = files.iterator();
+            for (Future<List<ProblemDescriptor>> future : futures) {
+                if (cancelled) {
+                    return;
+                }
+                File file = fileIterator.next();
+                AnalysisMetrics.sample(AnalysisMetrics.WORKER_QUEUE_DEPTH, executor.getQueue().size());
+                List<ProblemDescriptor> problems;
+                try {
+                    problems = await(future, file, executor);
+                } catch (ExecutionException e) {
+                    throw new AnalysisFailedException(file, e.getCause());
+                }
+                handler.handle(file, problems);
+            }
+        } finally {
+            executor.shutdownNow();
+            AnalysisMetrics.count(AnalysisMetrics.WORKER_CAPACITY_NANOS,
+                    (System.nanoTime() - start) * threads);
+        }
+    }
+
+    /**
+     * Analyzes {@code file}, recording the time as busy time of the worker.
+     */
+    private static List<ProblemDescriptor> analyze(AliPmdAnalysisEngine engine, File file) {
+        long start = System.nanoTime();
+        try {
+            return engine.analyze(file);
+        } finally {
+            AnalysisMetrics.time(AnalysisMetrics.WORKER_BUSY, System.nanoTime() - start);
+            AnalysisMetrics.count(AnalysisMetrics.FILES_ANALYZED, 1);
+        }
+    }
+
+    /**
+     * Waits for the result of {@code file}. Its predecessors are done and the queue is served in order, so the file
+     * has been running for at least as long as this waits.
+     */
+    private List<ProblemDescriptor> await(Future<List<ProblemDescriptor>> future, File file, ThreadPoolExecutor executor)
+            throws InterruptedException, ExecutionException {
+        AnalysisWatchdog watchdog = engine.getWatchdog();
+        if (watchdog == null) {
+            return future.get();
+        }
+        long abandonAfter = watchdog.getAbandonAfterMillis();
+        try {
+            return future.get(abandonAfter, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            // the stuck thread keeps its slot, grow the pool so the remaining files still get every thread
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+            executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+            engine.skipped(file, SkippedInputs.Kind.TIMEOUT,
+                    "worker did not stop within " + abandonAfter + " ms and was abandoned", abandonAfter);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public SkippedInputs getSkippedInputs() {
+        return engine.getSkippedInputs();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(AnalysisMetrics.inheriting(r), "code-check-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            // PMD resolves rule sets and XPath functions through the context class loader;
+            // set it once per worker instead of on every invocation
+            thread.setContextClassLoader(AliPmdAnalysisScheduler.class.getClassLoader());
+            return thread;
+        }
+    }
+}
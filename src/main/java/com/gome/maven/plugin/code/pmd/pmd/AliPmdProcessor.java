@@ -16,17 +16,18 @@
 package com.gome.maven.plugin.code.pmd.pmd;
 
 
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
 import net.sourceforge.pmd.*;
+import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
-import org.codehaus.plexus.util.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -39,20 +40,91 @@ public class AliPmdProcessor {
 
     private RuleSetFactory ruleSetFactory;
     private PMDConfiguration configuration = new PMDConfiguration();
-    private Rule rule;
+    private RuleSets ruleSets;
     private String encoding;
+    private AstCache nodeCache;
+    private String lastError;
 
     public AliPmdProcessor(Rule rule, String encoding) {
-        this.rule = rule;
-        this.encoding = encoding;
+        this(singleRuleSets(rule), encoding);
+    }
+
+    /**
+     * Creates a processor that applies every rule of {@code ruleSets} to a file in a single pass,
+     * so the source is read and parsed only once no matter how many rules are selected.
+     */
+    public AliPmdProcessor(RuleSets ruleSets, String encoding) {
+        this.ruleSets = ruleSets;
+        this.encoding = StringUtils.isBlank(encoding) ? Charset.defaultCharset().name() : encoding;
         ruleSetFactory = RulesetsFactoryUtils.getRulesetFactory(configuration);
     }
 
+    /**
+     * Resolves types against {@code auxClassLoader}, typically an {@link AuxClasspathClassLoader} over the
+     * project classpath shared by all processors of a run.
+     */
+    public AliPmdProcessor(RuleSets ruleSets, String encoding, ClassLoader auxClassLoader) {
+        this(ruleSets, encoding);
+        if (auxClassLoader != null) {
+            configuration.setClassLoader(auxClassLoader);
+        }
+    }
 
-    public List<RuleViolation> processFile(File psiFile) {
-        if (StringUtils.isBlank(encoding)) {
-            encoding = Charset.defaultCharset().name();
+    /**
+     * Sets the source marker suppressing a violation, <code>null</code> keeps PMD's default <code>NOPMD</code>.
+     */
+    public void setSuppressMarker(String suppressMarker) {
+        if (suppressMarker != null) {
+            configuration.setSuppressMarker(suppressMarker);
+        }
+    }
+
+    /**
+     * Sets the cache of parsed files, <code>null</code> for the one {@link SourceCodeProcessor} shares.
+     */
+    public void setNodeCache(AstCache nodeCache) {
+        this.nodeCache = nodeCache;
+    }
+
+    public static RuleSets singleRuleSets(Rule rule) {
+        return newRuleSets(Collections.singletonList(rule), false);
+    }
+
+    /**
+     * @param instrumented whether each rule is applied and timed on its own, for the profiler and the per-rule
+     *                     budget of the watchdog; otherwise PMD applies the rules, all rule chain rules sharing one
+     *                     rule chain
+     * @return rule sets applying {@code rules} in their order
+     */
+    public static RuleSets newRuleSets(List<Rule> rules, boolean instrumented) {
+        RuleSet ruleSet = new RuleSet();
+        for (Rule rule : rules) {
+            ruleSet.addRule(rule);
         }
+        return instrumented ? new InstrumentedRuleSets(ruleSet) : new RuleSets(ruleSet);
+    }
+
+
+    public List<RuleViolation> processFile(File psiFile) {
+        return processFile(psiFile, null);
+    }
+
+    /**
+     * Reads the file once, with the configured encoding. The result can be hashed and then passed to
+     * {@link #processFile(File, CharSequence)} without reading the file again.
+     */
+    public CharSequence readSource(File psiFile) throws IOException {
+        long readStart = System.nanoTime();
+        CharSequence source = SourceBuffer.read(psiFile, Charset.forName(encoding));
+        AnalysisProfiler.phase(AnalysisProfiler.PHASE_READ, System.nanoTime() - readStart);
+        return source;
+    }
+
+    /**
+     * @param source the content of {@code psiFile} as returned by {@link #readSource(File)}, or
+     *               <code>null</code> to read it here
+     */
+    public List<RuleViolation> processFile(File psiFile, CharSequence source) {
         configuration.setSourceEncoding(encoding);
         try {
             configuration.setInputPaths(psiFile.getCanonicalPath());
@@ -62,7 +134,7 @@ public class AliPmdProcessor {
 //        Document document = FileDocumentManager.getInstance().getDocument(psiFile.getVirtualFile());
 //        if (document == null) return Collections.emptyList();
         final RuleContext ctx = new RuleContext();
-        SourceCodeProcessor processor = new SourceCodeProcessor(configuration);
+        SourceCodeProcessor processor = new SourceCodeProcessor(configuration, nodeCache);
         String niceFileName = null;
         try {
             niceFileName = psiFile.getCanonicalPath();
@@ -72,22 +144,28 @@ public class AliPmdProcessor {
 //        if (niceFileName==null) throw new Exception("niceFileName is null ");
 
         Report report = Report.createReport(ctx, niceFileName);
-        RuleSets ruleSets = new RuleSets();
-        RuleSet ruleSet = new RuleSet();
-        ruleSet.addRule(rule);
-        ruleSets.addRuleSet(ruleSet);
         LOG.debug("Processing " + ctx.getSourceCodeFilename());
+        lastError = null;
         ruleSets.start(ctx);
         try {
             ctx.setLanguageVersion(null);
-            processor.processSourceCode(new StringReader(FileUtils.fileRead(psiFile, encoding)), ruleSets, ctx);
+            if (source == null) {
+                source = readSource(psiFile);
+            }
+            processor.processSourceCode(new CharSequenceReader(source), ruleSets, ctx);
         } catch (PMDException pmde) {
-            LOG.debug("Error while processing file: " + niceFileName, pmde.getCause());
-            report.addError(new Report.ProcessingError(pmde.getMessage(), niceFileName));
+            // a timeout is reported by the watchdog that caused it
+            if (!(pmde.getCause() instanceof AnalysisTimeoutException)) {
+                LOG.debug("Error while processing file: " + niceFileName, pmde.getCause());
+                report.addError(new Report.ProcessingError(pmde.getMessage(), niceFileName));
+                lastError = pmde.getCause() != null ? pmde.getMessage() + ": " + pmde.getCause() : pmde.getMessage();
+            }
         } catch (IOException ioe) {
             LOG.error("Unable to read source file: " + niceFileName, ioe);
+            lastError = "Unable to read source file: " + ioe;
         } catch (RuntimeException re) {
             LOG.error("RuntimeException while processing file: " + niceFileName, re);
+            lastError = String.valueOf(re);
         }
         ruleSets.end(ctx);
         Report ctxReport = ctx.getReport();
@@ -100,5 +178,13 @@ public class AliPmdProcessor {
         return list;
     }
 
+    /**
+     * @return why the last {@link #processFile(File, CharSequence)} could not analyze its file completely, or
+     * <code>null</code> when it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
 
 }
@@ -0,0 +1,14 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import java.io.File;
+
+/**
+ * Thrown when the analysis of a file failed unexpectedly, as opposed to the parse errors and timeouts that are
+ * recorded in {@link SkippedInputs}.
+ */
+public class AnalysisFailedException extends Exception {
+
+    public AnalysisFailedException(File file, Throwable cause) {
+        super("code check of " + file + " failed: " + cause, cause);
+    }
+}
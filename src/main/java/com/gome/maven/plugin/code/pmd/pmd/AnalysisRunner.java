@@ -0,0 +1,35 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Runs the analysis of a set of files and hands the problems of each file, in submission order, to a
+ * {@link AliPmdAnalysisScheduler.ResultHandler}; either in process or in the analysis daemon.
+ */
+public interface AnalysisRunner {
+
+    /**
+     * @throws AnalysisFailedException when the analysis of a file failed unexpectedly
+     */
+    void run(Collection<File> files, AliPmdAnalysisScheduler.ResultHandler handler)
+            throws InterruptedException, IOException, AnalysisFailedException;
+
+    /**
+     * Stops the current {@link #run}; safe to call from the result handler.
+     */
+    void cancel();
+
+    boolean isCancelled();
+
+    /**
+     * Number of files analyzed concurrently.
+     */
+    int getThreads();
+
+    /**
+     * The files that were not analyzed completely, because they timed out, are quarantined or failed.
+     */
+    SkippedInputs getSkippedInputs();
+}
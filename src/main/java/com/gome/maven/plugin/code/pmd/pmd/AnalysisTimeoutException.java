@@ -0,0 +1,11 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+/**
+ * Thrown at an {@link AnalysisWatchdog#checkpoint()} once the file being analyzed has exceeded its time budget.
+ */
+public class AnalysisTimeoutException extends RuntimeException {
+
+    public AnalysisTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,191 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces a time budget per file and per rule application.
+ * <p>
+ * A worker thread opens a file with {@link #beginFile(String)} and closes it with {@link #endFile()};
+ * with a per-rule budget {@link InstrumentedRuleSets} reports the start and end of every rule in between. A timer
+ * thread checks the open files and, once a budget is exceeded, marks the file as timed out and interrupts its worker.
+ * The analysis gives up on the file at the next {@link #checkpoint()}, or at the next rule when the rules are applied
+ * one at a time. Code that neither returns nor honours interrupts cannot be stopped this way;
+ * {@link AliPmdAnalysisScheduler} abandons such a worker after {@link #getAbandonAfterMillis()}.
+ */
+public class AnalysisWatchdog implements Closeable {
+
+    private static final ThreadLocal<Watch> CURRENT = new ThreadLocal<Watch>();
+
+    private static final long MIN_CHECK_PERIOD_MILLIS = 10;
+    private static final long MAX_CHECK_PERIOD_MILLIS = 1000;
+
+    private final long fileTimeoutMillis;
+    private final long ruleTimeoutMillis;
+    private final Set<Watch> open = Collections.newSetFromMap(new ConcurrentHashMap<Watch, Boolean>());
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param fileTimeoutMillis budget of a whole file, <code>0</code> for none
+     * @param ruleTimeoutMillis budget of one rule on one file, <code>0</code> for none
+     */
+    public AnalysisWatchdog(long fileTimeoutMillis, long ruleTimeoutMillis) {
+        this.fileTimeoutMillis = Math.max(0, fileTimeoutMillis);
+        this.ruleTimeoutMillis = Math.max(0, ruleTimeoutMillis);
+        long shortest = this.fileTimeoutMillis == 0 ? this.ruleTimeoutMillis
+                : this.ruleTimeoutMillis == 0 ? this.fileTimeoutMillis : Math.min(this.fileTimeoutMillis, this.ruleTimeoutMillis);
+        long period = Math.min(MAX_CHECK_PERIOD_MILLIS, Math.max(MIN_CHECK_PERIOD_MILLIS, shortest / 4));
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "code-check-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the budget of {@code fileName} on the current thread.
+     */
+    public void beginFile(String fileName) {
+        Watch watch = new Watch(this, fileName, Thread.currentThread());
+        CURRENT.set(watch);
+        open.add(watch);
+    }
+
+    /**
+     * Ends the file opened by {@link #beginFile(String)} on the current thread.
+     *
+     * @return why the file was aborted, or <code>null</code> when it completed within its budgets
+     */
+    public String endFile() {
+        Watch watch = CURRENT.get();
+        if (watch == null || watch.watchdog != this) {
+            return null;
+        }
+        CURRENT.remove();
+        open.remove(watch);
+        String reason;
+        synchronized (watch) {
+            watch.done = true;
+            reason = watch.reason;
+        }
+        if (reason != null) {
+            // the interrupt was meant for this file only, the worker goes on with the next one
+            Thread.interrupted();
+        }
+        return reason;
+    }
+
+    /**
+     * Throws once the file being analyzed on the current thread has timed out; does nothing outside a watched file.
+     */
+    public static void checkpoint() {
+        Watch watch = CURRENT.get();
+        if (watch != null && watch.reason != null) {
+            throw new AnalysisTimeoutException(watch.reason);
+        }
+    }
+
+    /**
+     * @return <code>false</code> when the file has already timed out and the rule should not run
+     */
+    static boolean beginRule(String ruleName) {
+        Watch watch = CURRENT.get();
+        if (watch == null) {
+            return true;
+        }
+        if (watch.reason != null) {
+            return false;
+        }
+        watch.ruleStart = System.nanoTime();
+        watch.rule = ruleName;
+        return true;
+    }
+
+    static void endRule() {
+        Watch watch = CURRENT.get();
+        if (watch != null) {
+            watch.rule = null;
+        }
+    }
+
+    /**
+     * How long a worker may stay on one file before it is given up on, after the watchdog failed to stop it.
+     */
+    public long getAbandonAfterMillis() {
+        long budget = fileTimeoutMillis > 0 ? fileTimeoutMillis : ruleTimeoutMillis;
+        return 2 * budget + MAX_CHECK_PERIOD_MILLIS;
+    }
+
+    public long getFileTimeoutMillis() {
+        return fileTimeoutMillis;
+    }
+
+    public long getRuleTimeoutMillis() {
+        return ruleTimeoutMillis;
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Watch watch : open) {
+            String rule = watch.rule;
+            if (fileTimeoutMillis > 0 && TimeUnit.NANOSECONDS.toMillis(now - watch.start) > fileTimeoutMillis) {
+                watch.expire("analysis exceeded " + fileTimeoutMillis + " ms"
+                        + (rule != null ? ", in rule " + rule : ""));
+            } else if (rule != null && ruleTimeoutMillis > 0
+                    && TimeUnit.NANOSECONDS.toMillis(now - watch.ruleStart) > ruleTimeoutMillis) {
+                watch.expire("rule " + rule + " exceeded " + ruleTimeoutMillis + " ms");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        open.clear();
+    }
+
+    private static class Watch {
+        private final AnalysisWatchdog watchdog;
+        private final String fileName;
+        private final Thread thread;
+        private final long start = System.nanoTime();
+        private volatile String rule;
+        private volatile long ruleStart;
+        private volatile String reason;
+        private boolean done;
+
+        Watch(AnalysisWatchdog watchdog, String fileName, Thread thread) {
+            this.watchdog = watchdog;
+            this.fileName = fileName;
+            this.thread = thread;
+        }
+
+        synchronized void expire(String reason) {
+            if (done || this.reason != null) {
+                return;
+            }
+            this.reason = reason;
+            thread.interrupt();
+        }
+
+        @Override
+        public String toString() {
+            return fileName;
+        }
+    }
+}
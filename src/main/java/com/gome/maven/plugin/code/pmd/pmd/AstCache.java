@@ -0,0 +1,189 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import net.sourceforge.pmd.lang.ast.Node;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of parsed ASTs, keyed by source file name.
+ * <p>
+ * The strong tier is bounded by an estimate of the memory the ASTs occupy rather than by entry count,
+ * so a few huge generated files cannot blow the heap. Entries pushed out of it by weight move to a
+ * soft-reference tier that the garbage collector may reclaim under memory pressure.
+ */
+public class AstCache {
+
+    /**
+     * Rough heap footprint of the AST, symbol table and data flow nodes of one source line.
+     */
+    static final int ESTIMATED_BYTES_PER_LINE = 2048;
+
+    private final boolean enabled;
+    private final Cache<String, Entry> strong;
+    private final Cache<String, Entry> soft;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong softHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param enabled           whether ASTs are cached at all
+     * @param maxWeightBytes    estimated heap the strongly referenced ASTs may use
+     * @param expireAfterMillis lifetime of an entry, <code>0</code> for no expiry
+     */
+    public AstCache(boolean enabled, long maxWeightBytes, long expireAfterMillis) {
+        this.enabled = enabled;
+        CacheBuilder<Object, Object> softBuilder = CacheBuilder.newBuilder().concurrencyLevel(16).softValues();
+        CacheBuilder<Object, Object> strongBuilder = CacheBuilder.newBuilder().concurrencyLevel(16)
+                .maximumWeight(Math.max(0L, maxWeightBytes));
+        if (expireAfterMillis > 0) {
+            softBuilder.expireAfterWrite(expireAfterMillis, TimeUnit.MILLISECONDS);
+            strongBuilder.expireAfterWrite(expireAfterMillis, TimeUnit.MILLISECONDS);
+        }
+        this.soft = softBuilder.build();
+        this.strong = strongBuilder
+                .weigher(new Weigher<String, Entry>() {
+                    @Override
+                    public int weigh(String key, Entry value) {
+                        return value.weight;
+                    }
+                })
+                .removalListener(new RemovalListener<String, Entry>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, Entry> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            evictions.incrementAndGet();
+                            if (notification.getKey() != null && notification.getValue() != null) {
+                                soft.put(notification.getKey(), notification.getValue());
+                            }
+                        }
+                    }
+                })
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the cached entry, or <code>null</code> on a miss
+     */
+    public Entry get(String fileName) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = strong.getIfPresent(fileName);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        entry = soft.getIfPresent(fileName);
+        if (entry != null) {
+            softHits.incrementAndGet();
+            soft.invalidate(fileName);
+            strong.put(fileName, entry);
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public Entry put(String fileName, Node rootNode, Map<Integer, String> suppressMap) {
+        Entry entry = new Entry(rootNode, suppressMap);
+        if (enabled) {
+            strong.put(fileName, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Drops the AST of a file, typically once every rule has been applied to it.
+     */
+    public void invalidate(String fileName) {
+        strong.invalidate(fileName);
+        soft.invalidate(fileName);
+    }
+
+    public void invalidateAll() {
+        strong.invalidateAll();
+        soft.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getSoftHits() {
+        return softHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AST cache: " + hits + " hits, " + softHits + " soft hits, " + misses + " misses, "
+                + evictions + " evictions";
+    }
+
+    /**
+     * A cached AST together with the optional passes that have already been run on it.
+     */
+    public static class Entry {
+        private final Node rootNode;
+        private final Map<Integer, String> suppressMap;
+        private final int weight;
+        private volatile boolean dataFlow;
+        private volatile boolean typeResolution;
+
+        Entry(Node rootNode, Map<Integer, String> suppressMap) {
+            this.rootNode = rootNode;
+            this.suppressMap = suppressMap == null ? Collections.<Integer, String>emptyMap() : suppressMap;
+            long lines = Math.max(1, rootNode.getEndLine());
+            this.weight = (int) Math.min(Integer.MAX_VALUE, lines * ESTIMATED_BYTES_PER_LINE);
+        }
+
+        public Node getRootNode() {
+            return rootNode;
+        }
+
+        /**
+         * The NOPMD markers found while parsing, to be applied to the report of every cache hit.
+         */
+        public Map<Integer, String> getSuppressMap() {
+            return suppressMap;
+        }
+
+        public boolean hasDataFlow() {
+            return dataFlow;
+        }
+
+        void setDataFlow() {
+            dataFlow = true;
+        }
+
+        public boolean hasTypeResolution() {
+            return typeResolution;
+        }
+
+        void setTypeResolution() {
+            typeResolution = true;
+        }
+    }
+}
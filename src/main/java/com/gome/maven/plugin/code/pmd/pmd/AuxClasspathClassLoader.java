@@ -0,0 +1,185 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Class loader over the analyzed project's classpath, used by PMD's type resolution.
+ * <p>
+ * All jars and class directories are indexed once up front, mapping every resource name to the first
+ * classpath element containing it, so a lookup never scans the classpath. Jars stay open for the lifetime
+ * of the loader. The index is immutable after construction and the loader is parallel capable, so one
+ * instance is shared by all analysis threads of a run.
+ * <p>
+ * The parent is the bootstrap loader: the project's types must not be resolved against the plugin's own
+ * dependencies.
+ */
+public class AuxClasspathClassLoader extends ClassLoader implements Closeable {
+
+    private static Log LOG = new SystemStreamLog();
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final List<File> elements = new ArrayList<File>();
+    private final List<ZipFile> jars = new ArrayList<ZipFile>();
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+    public AuxClasspathClassLoader(Collection<File> classpath) {
+        super(null);
+        for (File element : classpath) {
+            try {
+                if (element.isDirectory()) {
+                    indexDirectory(elements.size(), element, "");
+                    elements.add(element);
+                    jars.add(null);
+                } else if (element.isFile()) {
+                    ZipFile jar = new ZipFile(element);
+                    indexJar(elements.size(), jar);
+                    elements.add(element);
+                    jars.add(jar);
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to index classpath element " + element + ", type resolution will not see it", e);
+            }
+        }
+        LOG.debug("Indexed " + index.size() + " resources in " + elements.size() + " classpath elements");
+    }
+
+    public int getIndexedResourceCount() {
+        return index.size();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String resource = name.replace('.', '/') + ".class";
+        Integer element = index.get(resource);
+        if (element == null) {
+            throw new ClassNotFoundException(name);
+        }
+        try {
+            byte[] bytes = read(element, resource);
+            return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        Integer element = index.get(name);
+        if (element == null) {
+            return null;
+        }
+        try {
+            File file = elements.get(element);
+            if (jars.get(element) == null) {
+                return new File(file, name).toURI().toURL();
+            }
+            return new URL("jar:" + file.toURI() + "!/" + name);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        URL url = findResource(name);
+        return url == null ? Collections.<URL>emptyEnumeration() : Collections.enumeration(Collections.singleton(url));
+    }
+
+    /**
+     * Reads class files straight from the indexed jar instead of going through a <code>jar:</code> URL.
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        Integer element = index.get(name);
+        if (element == null || jars.get(element) == null) {
+            return super.getResourceAsStream(name);
+        }
+        try {
+            ZipFile jar = jars.get(element);
+            return jar.getInputStream(jar.getEntry(name));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ZipFile jar : jars) {
+            if (jar != null) {
+                try {
+                    jar.close();
+                } catch (IOException e) {
+                    LOG.debug("Unable to close " + jar.getName(), e);
+                }
+            }
+        }
+    }
+
+    private byte[] read(int element, String resource) throws IOException {
+        ZipFile jar = jars.get(element);
+        InputStream in;
+        if (jar == null) {
+            in = new FileInputStream(new File(elements.get(element), resource));
+        } else {
+            in = jar.getInputStream(jar.getEntry(resource));
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void indexJar(int element, ZipFile jar) {
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && !index.containsKey(entry.getName())) {
+                index.put(entry.getName(), element);
+            }
+        }
+    }
+
+    private void indexDirectory(int element, File directory, String prefix) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = prefix + child.getName();
+            if (child.isDirectory()) {
+                indexDirectory(element, child, name + "/");
+            } else if (!index.containsKey(name)) {
+                index.put(name, element);
+            }
+        }
+    }
+}
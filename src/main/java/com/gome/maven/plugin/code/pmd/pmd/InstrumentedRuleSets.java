@@ -0,0 +1,77 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.ast.Node;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies the rules of a rule set one at a time, reports the time of each to {@link AnalysisProfiler} and holds each
+ * to the per-rule budget of the {@link AnalysisWatchdog} watching the file. The rules themselves are not wrapped for
+ * this: PMD's rule chain dispatches only to <code>XPathRule</code>s and <code>JavaParserVisitor</code>s, so a wrapped
+ * rule chain rule would fail or go unwatched. Once the file has timed out the remaining rules are not applied.
+ * <p>
+ * Every rule chain rule gets a rule chain of its own, which indexes the AST once more per such rule but keeps its
+ * time apart from the others, so these rule sets are only used with a profiler or a per-rule budget. A rule that
+ * throws is logged and the next rule applied, as PMD does.
+ */
+class InstrumentedRuleSets extends RuleSets {
+
+    private static Log LOG = new SystemStreamLog();
+
+    private final List<Rule> rules = new ArrayList<Rule>();
+    /**
+     * The rule chain of each rule in {@link #rules}, <code>null</code> for the rules applied to the AST directly.
+     */
+    private final List<RuleSets> ruleChains = new ArrayList<RuleSets>();
+
+    InstrumentedRuleSets(RuleSet ruleSet) {
+        super(ruleSet);
+        for (Rule rule : ruleSet.getRules()) {
+            rules.add(rule);
+            if (rule.usesRuleChain()) {
+                RuleSet single = new RuleSet();
+                single.addRule(rule);
+                ruleChains.add(new RuleSets(single));
+            } else {
+                ruleChains.add(null);
+            }
+        }
+    }
+
+    @Override
+    public void apply(List<Node> acuNodes, RuleContext ctx, Language language) {
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            RuleSets ruleChain = ruleChains.get(i);
+            if (ruleChain == null && !RuleSet.applies(rule, ctx.getLanguageVersion())) {
+                continue;
+            }
+            if (!AnalysisWatchdog.beginRule(rule.getName())) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                if (ruleChain != null) {
+                    ruleChain.apply(acuNodes, ctx, language);
+                } else {
+                    rule.apply(acuNodes, ctx);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Exception applying rule " + rule.getName() + " on file " + ctx.getSourceCodeFilename()
+                        + ", continuing with next rule", e);
+            } finally {
+                AnalysisWatchdog.endRule();
+                AnalysisProfiler.rule(rule.getName(), System.nanoTime() - start);
+            }
+        }
+    }
+}
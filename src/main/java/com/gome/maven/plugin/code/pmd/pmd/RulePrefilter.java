@@ -0,0 +1,218 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.lang.java.lexer.JavaLexer;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
+import com.gome.maven.pom.java.LanguageLevel;
+import com.gome.maven.psi.JavaTokenType;
+import com.gome.maven.psi.impl.source.tree.ElementType;
+import com.gome.maven.psi.tree.IElementType;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skips rules that cannot match a file. Rules declare the keywords or identifiers they need in
+ * {@value #RESOURCE}; before a Java file is parsed it is lexed once with the {@link JavaLexer} into a bitmap of
+ * the declared tokens it contains, and a rule none of whose tokens occur is left out of the file's rule set.
+ * When no rule is left the file is not parsed at all.
+ * <p>
+ * Rules without a declaration always run. Lexing never allocates per token: identifiers are looked up in an
+ * open addressing table over the source buffer.
+ */
+public class RulePrefilter {
+
+    private static Log LOG = new SystemStreamLog();
+
+    static final String RESOURCE = "META-INF/code-check/rule-prerequisites.properties";
+
+    private final Map<String, BitSet> prerequisites;
+    private final char[][] tokenTable;
+    private final int[] tokenIds;
+
+    private final ThreadLocal<JavaLexer> lexers = new ThreadLocal<JavaLexer>() {
+        @Override
+        protected JavaLexer initialValue() {
+            return new JavaLexer(LanguageLevel.HIGHEST);
+        }
+    };
+
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong skippedRules = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+
+    /**
+     * @param prerequisites rule name to the tokens at least one of which must occur for the rule to apply
+     */
+    public RulePrefilter(Map<String, ? extends Iterable<String>> prerequisites) {
+        Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+        Map<String, BitSet> byRule = new HashMap<String, BitSet>();
+        for (Map.Entry<String, ? extends Iterable<String>> entry : prerequisites.entrySet()) {
+            BitSet required = new BitSet();
+            for (String token : entry.getValue()) {
+                Integer id = ids.get(token);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(token, id);
+                }
+                required.set(id);
+            }
+            if (!required.isEmpty()) {
+                byRule.put(entry.getKey(), required);
+            }
+        }
+        this.prerequisites = Collections.unmodifiableMap(byRule);
+        int capacity = Integer.highestOneBit(Math.max(1, ids.size() * 2 + 1)) << 1;
+        this.tokenTable = new char[capacity][];
+        this.tokenIds = new int[capacity];
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            char[] token = entry.getKey().toCharArray();
+            int slot = hash(CharBuffer.wrap(token), 0, token.length) & (capacity - 1);
+            while (tokenTable[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            tokenTable[slot] = token;
+            tokenIds[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * Loads the declarations of every {@value #RESOURCE} on the plugin classpath.
+     */
+    public static RulePrefilter load() {
+        Map<String, List<String>> prerequisites = new HashMap<String, List<String>>();
+        ClassLoader loader = RulePrefilter.class.getClassLoader();
+        try {
+            Enumeration<URL> resources = loader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                URL url = resources.nextElement();
+                Properties properties = new Properties();
+                InputStream in = url.openStream();
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+                for (String ruleName : properties.stringPropertyNames()) {
+                    List<String> tokens = new ArrayList<String>();
+                    for (String token : properties.getProperty(ruleName).split(",")) {
+                        if (!token.trim().isEmpty()) {
+                            tokens.add(token.trim());
+                        }
+                    }
+                    prerequisites.put(ruleName, tokens);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to load rule prerequisites, every rule is applied to every file", e);
+            prerequisites.clear();
+        }
+        return new RulePrefilter(prerequisites);
+    }
+
+    /**
+     * @return the declared tokens occurring in {@code source}, or <code>null</code> if it cannot be lexed and
+     * every rule has to run
+     */
+    public BitSet scan(CharSequence source) {
+        long start = System.nanoTime();
+        BitSet present = new BitSet();
+        JavaLexer lexer = lexers.get();
+        try {
+            lexer.start(source, 0, source.length(), 0);
+            IElementType type;
+            while ((type = lexer.getTokenType()) != null) {
+                if (type == JavaTokenType.IDENTIFIER || ElementType.KEYWORD_BIT_SET.contains(type)) {
+                    int id = lookup(source, lexer.getTokenStart(), lexer.getTokenEnd());
+                    if (id >= 0) {
+                        present.set(id);
+                    }
+                }
+                lexer.advance();
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Unable to lex source, applying every rule", e);
+            return null;
+        } finally {
+            AnalysisProfiler.phase(AnalysisProfiler.PHASE_PREFILTER, System.nanoTime() - start);
+        }
+        scannedFiles.incrementAndGet();
+        return present;
+    }
+
+    /**
+     * @param present the result of {@link #scan(CharSequence)}
+     */
+    public boolean isApplicable(String ruleName, BitSet present) {
+        BitSet required = prerequisites.get(ruleName);
+        return required == null || present == null || required.intersects(present);
+    }
+
+    void skipped(int rules, boolean wholeFile) {
+        skippedRules.addAndGet(rules);
+        if (wholeFile) {
+            skippedFiles.incrementAndGet();
+        }
+    }
+
+    public int getDeclaredRuleCount() {
+        return prerequisites.size();
+    }
+
+    public Set<String> getDeclaredRuleNames() {
+        return prerequisites.keySet();
+    }
+
+    @Override
+    public String toString() {
+        return "Rule prefilter: " + scannedFiles + " files scanned, " + skippedRules + " rule applications and "
+                + skippedFiles + " files skipped";
+    }
+
+    private int lookup(CharSequence source, int start, int end) {
+        int mask = tokenTable.length - 1;
+        int slot = hash(source, start, end) & mask;
+        char[] token;
+        while ((token = tokenTable[slot]) != null) {
+            if (equals(token, source, start, end)) {
+                return tokenIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean equals(char[] token, CharSequence source, int start, int end) {
+        if (token.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (token[i] != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
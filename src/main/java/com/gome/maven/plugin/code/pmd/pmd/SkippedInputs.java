@@ -0,0 +1,97 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The files whose analysis was aborted, quarantined or failed, so that they show up in the report instead of
+ * silently contributing no violations. Shared by the worker engines of a run.
+ */
+public class SkippedInputs {
+
+    public enum Kind {
+        /**
+         * The analysis exceeded its time budget and was aborted.
+         */
+        TIMEOUT,
+        /**
+         * The file timed out in an earlier build and is unchanged since, so it was not analyzed again.
+         */
+        QUARANTINED,
+        /**
+         * The file could not be read or parsed, or a rule failed on it.
+         */
+        ERROR
+    }
+
+    private final List<SkippedInput> inputs = Collections.synchronizedList(new ArrayList<SkippedInput>());
+
+    public void add(String fileName, Kind kind, String reason, long millis) {
+        inputs.add(new SkippedInput(fileName, kind, reason, millis));
+    }
+
+    /**
+     * @return the skipped files ordered by name, independent of the order the workers finished in
+     */
+    public List<SkippedInput> getInputs() {
+        List<SkippedInput> result;
+        synchronized (inputs) {
+            result = new ArrayList<SkippedInput>(inputs);
+        }
+        Collections.sort(result, new Comparator<SkippedInput>() {
+            @Override
+            public int compare(SkippedInput o1, SkippedInput o2) {
+                return o1.fileName.compareTo(o2.fileName);
+            }
+        });
+        return result;
+    }
+
+    public int size() {
+        return inputs.size();
+    }
+
+    public boolean isEmpty() {
+        return inputs.isEmpty();
+    }
+
+    public static class SkippedInput {
+        private final String fileName;
+        private final Kind kind;
+        private final String reason;
+        private final long millis;
+
+        public SkippedInput(String fileName, Kind kind, String reason, long millis) {
+            this.fileName = fileName;
+            this.kind = kind;
+            this.reason = reason;
+            this.millis = millis;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Time spent on the file before it was given up on, <code>0</code> when it was not analyzed at all.
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return fileName + ": " + kind + " " + reason;
+        }
+    }
+}
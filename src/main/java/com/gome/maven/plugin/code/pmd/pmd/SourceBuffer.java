@@ -0,0 +1,100 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads a source file once and decodes it once, into a {@link CharBuffer} that is handed to hashing and parsing
+ * alike.
+ * <p>
+ * Small files are read into a per-thread byte buffer that is reused between files; files of at least
+ * {@link #MAP_THRESHOLD} bytes are memory mapped. Either way the decoded characters are the only copy
+ * allocated per file. Malformed input is replaced, as {@code new String(bytes, charset)} does.
+ */
+public final class SourceBuffer {
+
+    static final int MAP_THRESHOLD = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(64 * 1024);
+        }
+    };
+
+    private SourceBuffer() {
+    }
+
+    public static CharBuffer read(File file, Charset charset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be analyzed");
+            }
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = readFully(channel, (int) size);
+            }
+            AnalysisMetrics.count(AnalysisMetrics.BYTES_READ, size);
+            AnalysisMetrics.sample(AnalysisMetrics.FILE_BYTES, size);
+            return decode(bytes, charset);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.min(MAP_THRESHOLD, Math.max(size, buffer.capacity() * 2)));
+            READ_BUFFER.set(buffer);
+        }
+        buffer.clear();
+        // the file may grow while it is read; read until end of stream
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static CharBuffer decode(ByteBuffer bytes, Charset charset) throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = decoder.flush(chars);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        chars.flip();
+        return chars;
+    }
+}
@@ -3,9 +3,8 @@
  */
 package com.gome.maven.plugin.code.pmd.pmd;
 
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
 import com.gome.maven.plugin.code.pmd.config.P3cConfig;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import net.sourceforge.pmd.*;
 import net.sourceforge.pmd.benchmark.Benchmark;
 import net.sourceforge.pmd.benchmark.Benchmarker;
@@ -23,27 +22,32 @@ import org.apache.maven.plugin.logging.SystemStreamLog;
 import java.io.Reader;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 public class SourceCodeProcessor {
 
     private static Log logger = new SystemStreamLog();
 
-    private static Cache<String, Node> nodeCache;
-
+    /**
+     * Default estimated heap for cached ASTs: 64 MB.
+     */
+    public static final long DEFAULT_AST_CACHE_WEIGHT = 64L * 1024 * 1024;
 
-    static {
-        try {
-            reInitNodeCache(P3cConfig.getInstance().getAstCacheTime());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+    private static volatile AstCache nodeCache = new AstCache(P3cConfig.getInstance().isAstCacheEnable(),
+            DEFAULT_AST_CACHE_WEIGHT, P3cConfig.getInstance().getAstCacheTime());
 
     private PMDConfiguration configuration;
+    private final AstCache cache;
 
     public SourceCodeProcessor(PMDConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * @param cache the cache of parsed files to use, <code>null</code> for the shared one
+     */
+    public SourceCodeProcessor(PMDConfiguration configuration, AstCache cache) {
         this.configuration = configuration;
+        this.cache = cache;
     }
 
     /**
@@ -86,6 +90,7 @@ public class SourceCodeProcessor {
         ctx.getReport().suppress(parser.getSuppressMap());
         long end = System.nanoTime();
         Benchmarker.mark(Benchmark.Parser, end - start, 0);
+        AnalysisProfiler.phase(AnalysisProfiler.PHASE_PARSER, end - start);
         return rootNode;
     }
 
@@ -94,24 +99,31 @@ public class SourceCodeProcessor {
         languageVersionHandler.getSymbolFacade(configuration.getClassLoader()).start(rootNode);
         long end = System.nanoTime();
         Benchmarker.mark(Benchmark.SymbolTable, end - start, 0);
+        AnalysisProfiler.phase(AnalysisProfiler.PHASE_SYMBOL_TABLE, end - start);
     }
 
-    private void usesDFA(LanguageVersion languageVersion, Node rootNode, RuleSets ruleSets) {
-        if (ruleSets.usesDFA(languageVersion.getLanguage())) {
+    private void usesDFA(LanguageVersion languageVersion, AstCache.Entry entry, RuleSets ruleSets) {
+        if (!entry.hasDataFlow() && ruleSets.usesDFA(languageVersion.getLanguage())) {
+            Node rootNode = entry.getRootNode();
             long start = System.nanoTime();
             VisitorStarter dataFlowFacade = languageVersion.getLanguageVersionHandler().getDataFlowFacade();
             dataFlowFacade.start(rootNode);
             long end = System.nanoTime();
             Benchmarker.mark(Benchmark.DFA, end - start, 0);
+            AnalysisProfiler.phase(AnalysisProfiler.PHASE_DFA, end - start);
+            entry.setDataFlow();
         }
     }
 
-    private void usesTypeResolution(LanguageVersion languageVersion, Node rootNode, RuleSets  ruleSets) {
-        if (ruleSets.usesTypeResolution(languageVersion.getLanguage())) {
+    private void usesTypeResolution(LanguageVersion languageVersion, AstCache.Entry entry, RuleSets  ruleSets) {
+        if (!entry.hasTypeResolution() && ruleSets.usesTypeResolution(languageVersion.getLanguage())) {
+            Node rootNode = entry.getRootNode();
             long start = System.nanoTime();
             languageVersion.getLanguageVersionHandler().getTypeResolutionFacade(configuration.getClassLoader()).start(rootNode);
             long end = System.nanoTime();
             Benchmarker.mark(Benchmark.TypeResolution, end - start, 0);
+            AnalysisProfiler.phase(AnalysisProfiler.PHASE_TYPE_RESOLUTION, end - start);
+            entry.setTypeResolution();
         }
     }
 
@@ -120,30 +132,36 @@ public class SourceCodeProcessor {
         List<Node> acus = Collections.singletonList(getRootNode(sourceCode, ruleSets, ctx));
         logger.debug("elapsed "+(System.currentTimeMillis() - start)+"ms to" +
                 " parse ast tree for file "+ctx.getSourceCodeFilename());
+        AnalysisWatchdog.checkpoint();
+        long rulesStart = System.nanoTime();
         ruleSets.apply(acus, ctx, ctx.getLanguageVersion().getLanguage());
+        AnalysisProfiler.phase(AnalysisProfiler.PHASE_RULES, System.nanoTime() - rulesStart);
     }
 
     private Node getRootNode(Reader sourceCode, RuleSets ruleSets, RuleContext ctx){
-        if (!P3cConfig.getInstance().isAstCacheEnable()) {
-            return parseNode(ctx, ruleSets, sourceCode);
+        AstCache cache = this.cache != null ? this.cache : nodeCache;
+        AstCache.Entry entry = cache.get(ctx.getSourceCodeFilename());
+        if (entry == null) {
+            entry = parseNode(ctx, sourceCode, cache);
+        } else {
+            ctx.getReport().suppress(entry.getSuppressMap());
         }
-        Node node = nodeCache.getIfPresent(ctx.getSourceCodeFilename());
-        if (node != null) {
-            return node;
-        }
-        return parseNode(ctx, ruleSets, sourceCode);
+        // a cached AST may have been built for rules that needed neither DFA nor type resolution
+        LanguageVersion languageVersion = ctx.getLanguageVersion();
+        AnalysisWatchdog.checkpoint();
+        usesDFA(languageVersion, entry, ruleSets);
+        AnalysisWatchdog.checkpoint();
+        usesTypeResolution(languageVersion, entry, ruleSets);
+        return entry.getRootNode();
     }
 
-    private Node parseNode(RuleContext ctx, RuleSets ruleSets,Reader sourceCode){
+    private AstCache.Entry parseNode(RuleContext ctx, Reader sourceCode, AstCache cache){
         LanguageVersion languageVersion = ctx.getLanguageVersion();
         LanguageVersionHandler languageVersionHandler = languageVersion.getLanguageVersionHandler();
         Parser parser = PMD.parserFor(languageVersion, configuration);
         Node rootNode = parse(ctx, sourceCode, parser);
         symbolFacade(rootNode, languageVersionHandler);
-        usesDFA(languageVersion, rootNode, ruleSets);
-        usesTypeResolution(languageVersion, rootNode, ruleSets);
-        nodeCache.put(ctx.getSourceCodeFilename(), rootNode);
-        return rootNode;
+        return cache.put(ctx.getSourceCodeFilename(), rootNode, parser.getSuppressMap());
     }
 
     private void determineLanguage(RuleContext ctx) {
@@ -158,13 +176,21 @@ public class SourceCodeProcessor {
 
 
     public static void reInitNodeCache(Long expireTime) throws Exception {
-        nodeCache = CacheBuilder.newBuilder().concurrencyLevel(16)
-                .expireAfterWrite(expireTime, TimeUnit.MILLISECONDS)
-                .maximumSize(100)
-                .build();
-        if (nodeCache == null) {
-            throw new Exception("nodeCache is null");
-        }
+        configureNodeCache(new AstCache(P3cConfig.getInstance().isAstCacheEnable(), DEFAULT_AST_CACHE_WEIGHT, expireTime));
+    }
+
+    /**
+     * Replaces the shared AST cache. The check goal does not: builds checking modules in parallel would replace
+     * each other's cache, so every check passes its own to its processors instead.
+     */
+    public static void configureNodeCache(AstCache cache) {
+        AstCache previous = nodeCache;
+        nodeCache = cache;
+        previous.invalidateAll();
+    }
+
+    public static AstCache getNodeCache() {
+        return nodeCache;
     }
 
     public static void invalidateCache(String file) {
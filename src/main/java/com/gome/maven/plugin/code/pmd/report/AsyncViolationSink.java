@@ -0,0 +1,159 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands violations to a background thread which forwards them in batches to the delegate sinks, so that
+ * formatting and I/O never run on the analysis path. The bounded queue applies back pressure when the
+ * writers cannot keep up.
+ */
+public class AsyncViolationSink implements ViolationSink {
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * Marks the end of the stream in the queue.
+     */
+    private static final Object END = new Object();
+
+    private final List<ViolationSink> delegates;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile IOException failure;
+    private List<SkippedInputs.SkippedInput> skipped = Collections.emptyList();
+    private boolean closed;
+
+    public AsyncViolationSink(List<ViolationSink> delegates) {
+        this.delegates = new ArrayList<ViolationSink>(delegates);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "code-check-report-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public List<ViolationSink> getDelegates() {
+        return Collections.unmodifiableList(delegates);
+    }
+
+    @Override
+    public void accept(ProblemDescriptor problem) throws IOException {
+        checkFailure();
+        AnalysisMetrics.sample(AnalysisMetrics.SINK_QUEUE_DEPTH, queue.size());
+        try {
+            queue.put(problem);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while queueing violation");
+        }
+    }
+
+    /**
+     * Batches are flushed by the writer thread; nothing to do on the producer side.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+    }
+
+    /**
+     * Handed to the delegates by {@link #close()}, once every queued violation is written.
+     */
+    @Override
+    public void skipped(List<SkippedInputs.SkippedInput> inputs) throws IOException {
+        checkFailure();
+        this.skipped = new ArrayList<SkippedInputs.SkippedInput>(inputs);
+    }
+
+    /**
+     * Waits until every queued violation is written, then closes the delegates.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+        IOException closeFailure = null;
+        for (ViolationSink delegate : delegates) {
+            try {
+                if (failure == null) {
+                    delegate.skipped(skipped);
+                }
+                delegate.close();
+            } catch (IOException e) {
+                if (closeFailure == null) {
+                    closeFailure = e;
+                }
+            }
+        }
+        checkFailure();
+        if (closeFailure != null) {
+            throw closeFailure;
+        }
+    }
+
+    private void drain() {
+        List<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+        try {
+            boolean end = false;
+            while (!end) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                int size = batch.size();
+                if (batch.get(size - 1) == END) {
+                    end = true;
+                    size--;
+                }
+                // after a failure keep consuming, so that producers never block on a dead writer
+                if (failure == null) {
+                    try {
+                        for (int i = 0; i < size; i++) {
+                            for (ViolationSink delegate : delegates) {
+                                delegate.accept((ProblemDescriptor) batch.get(i));
+                            }
+                        }
+                        for (ViolationSink delegate : delegates) {
+                            delegate.flush();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        failure = new IOException(e);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("writing the code check report failed", e);
+        }
+    }
+}
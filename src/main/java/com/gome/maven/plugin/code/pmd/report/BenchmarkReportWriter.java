@@ -0,0 +1,205 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the profile collected by an {@link AnalysisProfiler} as a text table and as JSON.
+ */
+public class BenchmarkReportWriter {
+
+    private static final List<String> PHASE_ORDER = Arrays.asList(AnalysisProfiler.PHASE_READ,
+            AnalysisProfiler.PHASE_PREFILTER, AnalysisProfiler.PHASE_PARSER, AnalysisProfiler.PHASE_SYMBOL_TABLE,
+            AnalysisProfiler.PHASE_DFA, AnalysisProfiler.PHASE_TYPE_RESOLUTION, AnalysisProfiler.PHASE_RULES);
+
+    private final List<AnalysisProfiler.Stats> phases;
+    private final List<AnalysisProfiler.Stats> rules;
+    private final List<AnalysisProfiler.FileTiming> files;
+    private final long wallNanos;
+    private final int threads;
+    private final int top;
+
+    /**
+     * @param wallNanos elapsed time of the whole analysis
+     * @param top       number of slowest files and rules listed
+     */
+    public BenchmarkReportWriter(AnalysisProfiler profiler, long wallNanos, int threads, int top) {
+        Map<String, AnalysisProfiler.Stats> phaseStats = profiler.getPhaseStats();
+        this.phases = new ArrayList<AnalysisProfiler.Stats>();
+        for (String phase : PHASE_ORDER) {
+            if (phaseStats.containsKey(phase)) {
+                phases.add(phaseStats.get(phase));
+            }
+        }
+        this.rules = byTotal(profiler.getRuleStats().values());
+        this.files = profiler.getFileTimings();
+        this.wallNanos = wallNanos;
+        this.threads = threads;
+        this.top = top;
+    }
+
+    /**
+     * The JSON report is written next to the text one, with a <code>.json</code> extension.
+     */
+    public static File jsonFile(File textFile) {
+        String name = textFile.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(textFile.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".json");
+    }
+
+    public void write(File textFile) throws IOException {
+        File parent = textFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        PrintWriter text = new PrintWriter(open(textFile));
+        try {
+            writeText(text);
+        } finally {
+            text.close();
+        }
+        if (text.checkError()) {
+            throw new IOException("Unable to write " + textFile);
+        }
+        Writer json = open(jsonFile(textFile));
+        try {
+            writeJson(json);
+        } finally {
+            json.close();
+        }
+    }
+
+    void writeText(PrintWriter out) {
+        long analysis = totalOf(AnalysisProfiler.PHASE_READ) + totalOf(AnalysisProfiler.PHASE_PREFILTER)
+                + totalOf(AnalysisProfiler.PHASE_PARSER)
+                + totalOf(AnalysisProfiler.PHASE_SYMBOL_TABLE) + totalOf(AnalysisProfiler.PHASE_DFA)
+                + totalOf(AnalysisProfiler.PHASE_TYPE_RESOLUTION) + totalOf(AnalysisProfiler.PHASE_RULES);
+        out.printf(Locale.ENGLISH, "Code check profile: %d files, %d threads, wall %s ms, summed over threads %s ms%n",
+                files.size(), threads, ms(wallNanos), ms(analysis));
+        long parsing = analysis - totalOf(AnalysisProfiler.PHASE_RULES);
+        out.printf(Locale.ENGLISH, "Parsing %s ms (%s), rules %s ms (%s)%n%n", ms(parsing), percent(parsing, analysis),
+                ms(totalOf(AnalysisProfiler.PHASE_RULES)), percent(totalOf(AnalysisProfiler.PHASE_RULES), analysis));
+
+        writeTable(out, "Phase", phases, analysis);
+        out.println();
+        writeTable(out, "Rule", rules.subList(0, Math.min(top, rules.size())), totalOf(AnalysisProfiler.PHASE_RULES));
+        out.println();
+        out.printf(Locale.ENGLISH, "%-80s %12s %12s %12s%n", "File", "total ms", "parse ms", "rules ms");
+        for (AnalysisProfiler.FileTiming file : files.subList(0, Math.min(top, files.size()))) {
+            out.printf(Locale.ENGLISH, "%-80s %12s %12s %12s%n", file.getFileName(), ms(file.getTotalNanos()),
+                    ms(file.getParseNanos()), ms(file.getRuleNanos()));
+        }
+    }
+
+    private static void writeTable(PrintWriter out, String title, List<AnalysisProfiler.Stats> stats, long base) {
+        out.printf(Locale.ENGLISH, "%-50s %8s %12s %7s %10s %10s %10s %10s %10s%n",
+                title, "files", "total ms", "%", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (AnalysisProfiler.Stats stat : stats) {
+            out.printf(Locale.ENGLISH, "%-50s %8d %12s %7s %10s %10s %10s %10s %10s%n",
+                    stat.getName(), stat.getCount(), ms(stat.getTotal()), percent(stat.getTotal(), base),
+                    ms(stat.getMean()), ms(stat.getP50()), ms(stat.getP90()), ms(stat.getP99()), ms(stat.getMax()));
+        }
+    }
+
+    void writeJson(Writer out) throws IOException {
+        out.write('{');
+        Json.field(out, "files", files.size());
+        out.write(',');
+        Json.field(out, "threads", threads);
+        out.write(',');
+        Json.field(out, "wallNanos", wallNanos);
+        out.write(",\"phases\":");
+        writeJsonStats(out, phases);
+        out.write(",\"rules\":");
+        writeJsonStats(out, rules);
+        out.write(",\"slowestFiles\":[");
+        List<AnalysisProfiler.FileTiming> slowest = files.subList(0, Math.min(top, files.size()));
+        for (int i = 0; i < slowest.size(); i++) {
+            AnalysisProfiler.FileTiming file = slowest.get(i);
+            out.write(i == 0 ? "\n{" : ",\n{");
+            Json.field(out, "file", file.getFileName());
+            out.write(',');
+            Json.field(out, "totalNanos", file.getTotalNanos());
+            out.write(',');
+            Json.field(out, "parseNanos", file.getParseNanos());
+            out.write(',');
+            Json.field(out, "ruleNanos", file.getRuleNanos());
+            out.write('}');
+        }
+        out.write("]}\n");
+    }
+
+    private static void writeJsonStats(Writer out, List<AnalysisProfiler.Stats> stats) throws IOException {
+        out.write('[');
+        for (int i = 0; i < stats.size(); i++) {
+            AnalysisProfiler.Stats stat = stats.get(i);
+            out.write(i == 0 ? "\n{" : ",\n{");
+            Json.field(out, "name", stat.getName());
+            out.write(',');
+            Json.field(out, "files", stat.getCount());
+            out.write(',');
+            Json.field(out, "totalNanos", stat.getTotal());
+            out.write(',');
+            Json.field(out, "meanNanos", stat.getMean());
+            out.write(',');
+            Json.field(out, "p50Nanos", stat.getP50());
+            out.write(',');
+            Json.field(out, "p90Nanos", stat.getP90());
+            out.write(',');
+            Json.field(out, "p99Nanos", stat.getP99());
+            out.write(',');
+            Json.field(out, "maxNanos", stat.getMax());
+            out.write('}');
+        }
+        out.write(']');
+    }
+
+    private long totalOf(String phase) {
+        for (AnalysisProfiler.Stats stat : phases) {
+            if (stat.getName().equals(phase)) {
+                return stat.getTotal();
+            }
+        }
+        return 0;
+    }
+
+    private static List<AnalysisProfiler.Stats> byTotal(Collection<AnalysisProfiler.Stats> stats) {
+        List<AnalysisProfiler.Stats> sorted = new ArrayList<AnalysisProfiler.Stats>(stats);
+        Collections.sort(sorted, new Comparator<AnalysisProfiler.Stats>() {
+            @Override
+            public int compare(AnalysisProfiler.Stats o1, AnalysisProfiler.Stats o2) {
+                return o1.getTotal() == o2.getTotal() ? o1.getName().compareTo(o2.getName())
+                        : (o1.getTotal() < o2.getTotal() ? 1 : -1);
+            }
+        });
+        return sorted;
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ENGLISH, "%.1f", nanos / 1000000.0);
+    }
+
+    private static String percent(long part, long whole) {
+        return whole <= 0 ? "-" : String.format(Locale.ENGLISH, "%.1f%%", part * 100.0 / whole);
+    }
+}
@@ -0,0 +1,119 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevels;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints violations to the console in the <code>[LEVEL] message</code> format of
+ * {@link com.gome.maven.log.CodeCheckSystemStreamLog}, through a buffer that is flushed once per batch,
+ * and logs per-level and per-rule totals when the run completes.
+ */
+public class ConsoleSummarySink implements ViolationSink {
+
+    private static final int TOP_RULES = 10;
+    private static final int LISTED_SKIPPED = 10;
+
+    private final Log log;
+    private final Writer out;
+    private final boolean printViolations;
+
+    private final Map<String, Integer> perLevel = new LinkedHashMap<String, Integer>();
+    private final Map<String, Integer> perRule = new HashMap<String, Integer>();
+    private int total;
+
+    /**
+     * @param printViolations whether every violation is printed, or only the summary
+     */
+    public ConsoleSummarySink(Log log, PrintStream console, boolean printViolations) {
+        this.log = log;
+        this.out = new BufferedWriter(new OutputStreamWriter(console), 64 * 1024);
+        this.printViolations = printViolations;
+        perLevel.put(HighlightDisplayLevels.BLOCKER.getName(), 0);
+        perLevel.put(HighlightDisplayLevels.CRITICAL.getName(), 0);
+        perLevel.put(HighlightDisplayLevels.MAJOR.getName(), 0);
+    }
+
+    @Override
+    public void accept(ProblemDescriptor problem) throws IOException {
+        String level = HighlightDisplayLevels.getHighlightDisplayLevel(problem.getRule().getPriority()).getName();
+        if (printViolations) {
+            out.write("[" + level + "] " + problem.toString());
+            out.write(System.lineSeparator());
+        }
+        total++;
+        increment(perLevel, level);
+        increment(perRule, problem.getRule().getName());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Warns about the skipped files right away, they would otherwise pass for clean ones.
+     */
+    @Override
+    public void skipped(List<SkippedInputs.SkippedInput> inputs) throws IOException {
+        out.flush();
+        if (inputs.isEmpty()) {
+            return;
+        }
+        log.warn(inputs.size() + " files were not analyzed completely:");
+        for (SkippedInputs.SkippedInput input : inputs.subList(0, Math.min(LISTED_SKIPPED, inputs.size()))) {
+            log.warn("  " + input.getFileName() + ": " + input.getKind() + " " + input.getReason());
+        }
+        if (inputs.size() > LISTED_SKIPPED) {
+            log.warn("  ... and " + (inputs.size() - LISTED_SKIPPED) + " more, see the report");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+        if (total == 0) {
+            log.info("Code check found no violations");
+            return;
+        }
+        StringBuilder levels = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : perLevel.entrySet()) {
+            if (levels.length() > 0) {
+                levels.append(", ");
+            }
+            levels.append(entry.getKey()).append(' ').append(entry.getValue());
+        }
+        log.info("Code check found " + total + " violations (" + levels + ")");
+
+        List<Map.Entry<String, Integer>> rules = new ArrayList<Map.Entry<String, Integer>>(perRule.entrySet());
+        Collections.sort(rules, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+                int byCount = o2.getValue().compareTo(o1.getValue());
+                return byCount != 0 ? byCount : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        for (Map.Entry<String, Integer> rule : rules.subList(0, Math.min(TOP_RULES, rules.size()))) {
+            log.info("  " + rule.getKey() + ": " + rule.getValue());
+        }
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+}
@@ -0,0 +1,107 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.cpd.Duplication;
+import com.gome.maven.plugin.code.pmd.pmd.SourceBuffer;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Writes duplications in the <code>pmd-cpd</code> XML format of PMD's copy-paste detector, which CI servers
+ * already know how to read: one <code>&lt;duplication&gt;</code> per block with a <code>&lt;file&gt;</code> per
+ * occurrence and the source of the first occurrence as code fragment.
+ */
+public class CpdXmlWriter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Charset sourceEncoding;
+
+    /**
+     * @param sourceEncoding the encoding the code fragments are read with
+     */
+    public CpdXmlWriter(Charset sourceEncoding) {
+        this.sourceEncoding = sourceEncoding;
+    }
+
+    public void write(List<Duplication> duplications, File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(target), 64 * 1024);
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, ENCODING);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("pmd-cpd");
+            xml.writeCharacters("\n");
+            for (Duplication duplication : duplications) {
+                xml.writeStartElement("duplication");
+                xml.writeAttribute("lines", String.valueOf(duplication.getLines()));
+                xml.writeAttribute("tokens", String.valueOf(duplication.getTokens()));
+                xml.writeCharacters("\n");
+                for (Duplication.Occurrence occurrence : duplication.getOccurrences()) {
+                    xml.writeEmptyElement("file");
+                    xml.writeAttribute("line", String.valueOf(occurrence.getBeginLine()));
+                    xml.writeAttribute("endline", String.valueOf(occurrence.getEndLine()));
+                    xml.writeAttribute("path", occurrence.getFile().getPath());
+                    xml.writeCharacters("\n");
+                }
+                String fragment = fragment(duplication.getOccurrences().get(0));
+                if (fragment != null) {
+                    xml.writeStartElement("codefragment");
+                    // a CDATA section cannot contain its own end marker, split it where it occurs
+                    xml.writeCData(fragment.replace("]]>", "]]]]><![CDATA[>"));
+                    xml.writeEndElement();
+                    xml.writeCharacters("\n");
+                }
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write " + target, e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @return the lines of the occurrence, or <code>null</code> if its file cannot be read any more
+     */
+    private String fragment(Duplication.Occurrence occurrence) {
+        CharSequence source;
+        try {
+            source = SourceBuffer.read(occurrence.getFile(), sourceEncoding);
+        } catch (IOException e) {
+            return null;
+        }
+        int line = 1;
+        int start = occurrence.getBeginLine() == 1 ? 0 : -1;
+        int end = source.length();
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+                if (line == occurrence.getBeginLine()) {
+                    start = i + 1;
+                } else if (line == occurrence.getEndLine() + 1) {
+                    end = i;
+                    break;
+                }
+            }
+        }
+        return start < 0 ? null : source.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Minimal helpers for the streaming JSON writers.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static void string(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    static void field(Writer out, String name, String value) throws IOException {
+        string(out, name);
+        out.write(':');
+        string(out, value);
+    }
+
+    static void field(Writer out, String name, long value) throws IOException {
+        string(out, name);
+        out.write(':');
+        out.write(Long.toString(value));
+    }
+}
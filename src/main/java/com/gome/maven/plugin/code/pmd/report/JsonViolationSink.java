@@ -0,0 +1,100 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevels;
+import net.sourceforge.pmd.PMD;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams violations into <code>pmd.json</code> as one flat array, one object per line, followed by the array of
+ * skipped files.
+ */
+public class JsonViolationSink implements ViolationSink {
+
+    private final Writer out;
+    private boolean first = true;
+    private List<SkippedInputs.SkippedInput> skipped = Collections.emptyList();
+
+    public JsonViolationSink(File target) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8), 64 * 1024);
+        out.write('{');
+        Json.field(out, "version", PMD.VERSION);
+        out.write(",\"violations\":[\n");
+    }
+
+    @Override
+    public void accept(ProblemDescriptor problem) throws IOException {
+        if (!first) {
+            out.write(",\n");
+        }
+        first = false;
+        out.write('{');
+        Json.field(out, "file", problem.getFilename());
+        out.write(',');
+        Json.field(out, "rule", problem.getRule().getName());
+        out.write(',');
+        Json.field(out, "level", HighlightDisplayLevels.getHighlightDisplayLevel(problem.getRule().getPriority()).getName());
+        out.write(',');
+        Json.field(out, "priority", problem.getRule().getPriority().getPriority());
+        out.write(',');
+        Json.field(out, "beginLine", problem.getBeginLine());
+        out.write(',');
+        Json.field(out, "beginColumn", problem.getBeginColumn());
+        out.write(',');
+        Json.field(out, "endLine", problem.getEndLine());
+        out.write(',');
+        Json.field(out, "endColumn", problem.getEndColumn());
+        out.write(',');
+        Json.field(out, "package", problem.getPackageName());
+        out.write(',');
+        Json.field(out, "class", problem.getClassName());
+        out.write(',');
+        Json.field(out, "method", problem.getMethodName());
+        out.write(',');
+        Json.field(out, "description", problem.getDescription());
+        out.write('}');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void skipped(List<SkippedInputs.SkippedInput> inputs) {
+        this.skipped = inputs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("\n],\"skipped\":[");
+            boolean firstSkipped = true;
+            for (SkippedInputs.SkippedInput input : skipped) {
+                out.write(firstSkipped ? "\n{" : ",\n{");
+                firstSkipped = false;
+                Json.field(out, "file", input.getFileName());
+                out.write(',');
+                Json.field(out, "kind", input.getKind().name());
+                out.write(',');
+                Json.field(out, "reason", input.getReason());
+                out.write(',');
+                Json.field(out, "millis", input.getMillis());
+                out.write('}');
+            }
+            out.write("\n]}\n");
+        } finally {
+            out.close();
+        }
+    }
+}
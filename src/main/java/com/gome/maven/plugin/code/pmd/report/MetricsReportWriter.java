@@ -0,0 +1,122 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisMetrics;
+import com.gome.maven.plugin.code.pmd.benchmark.AnalysisProfiler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes the metrics of one code check as a single JSON object, meant to be collected from many builds:
+ * <pre>
+ * {"project":..., "timestamp":..., "wallNanos":...,
+ *  "counters":{name:value,...}, "gauges":{name:value,...},
+ *  "timers":{name:{"count":...,"totalNanos":...,"meanNanos":...,"p50Nanos":...,...},...},
+ *  "histograms":{name:{"count":...,"total":...,"mean":...,"p50":...,...},...}}
+ * </pre>
+ */
+public class MetricsReportWriter {
+
+    private final String project;
+    private final long timestamp;
+    private final long wallNanos;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, AnalysisProfiler.Stats> timers;
+    private final Map<String, AnalysisProfiler.Stats> histograms;
+
+    /**
+     * Takes a snapshot of {@code metrics}.
+     *
+     * @param timestamp start of the check, in milliseconds since the epoch
+     * @param wallNanos elapsed time of the whole check
+     */
+    public MetricsReportWriter(AnalysisMetrics metrics, String project, long timestamp, long wallNanos) {
+        this.project = project;
+        this.timestamp = timestamp;
+        this.wallNanos = wallNanos;
+        this.counters = metrics.getCounters();
+        this.gauges = metrics.getGauges();
+        this.timers = metrics.getTimers();
+        this.histograms = metrics.getHistograms();
+    }
+
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    void write(Writer out) throws IOException {
+        out.write('{');
+        Json.field(out, "project", project);
+        out.write(',');
+        Json.field(out, "timestamp", timestamp);
+        out.write(',');
+        Json.field(out, "wallNanos", wallNanos);
+        out.write(",\n\"counters\":");
+        writeValues(out, counters);
+        out.write(",\n\"gauges\":");
+        writeValues(out, gauges);
+        out.write(",\n\"timers\":");
+        writeStats(out, timers, "Nanos");
+        out.write(",\n\"histograms\":");
+        writeStats(out, histograms, "");
+        out.write("}\n");
+    }
+
+    private static void writeValues(Writer out, Map<String, Long> values) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            Json.field(out, entry.getKey(), entry.getValue());
+        }
+        out.write('}');
+    }
+
+    /**
+     * @param unit suffix of the value field names
+     */
+    private static void writeStats(Writer out, Map<String, AnalysisProfiler.Stats> stats, String unit)
+            throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, AnalysisProfiler.Stats> entry : stats.entrySet()) {
+            AnalysisProfiler.Stats stat = entry.getValue();
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            Json.string(out, entry.getKey());
+            out.write(":{");
+            Json.field(out, "count", stat.getCount());
+            out.write(',');
+            Json.field(out, "total" + unit, stat.getTotal());
+            out.write(',');
+            Json.field(out, "mean" + unit, stat.getMean());
+            out.write(',');
+            Json.field(out, "p50" + unit, stat.getP50());
+            out.write(',');
+            Json.field(out, "p90" + unit, stat.getP90());
+            out.write(',');
+            Json.field(out, "p99" + unit, stat.getP99());
+            out.write(',');
+            Json.field(out, "max" + unit, stat.getMax());
+            out.write('}');
+        }
+        out.write('}');
+    }
+}
@@ -0,0 +1,137 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import com.gome.maven.plugin.code.pmd.util.HighlightDisplayLevels;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RulePriority;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams violations into a SARIF 2.1.0 log, the format consumed by code scanning dashboards.
+ * <p>
+ * Results are written as they arrive; the rule metadata they reference is collected on the way and written
+ * after them, which SARIF allows since object member order is not significant. Skipped files become tool
+ * execution notifications of the run's invocation.
+ */
+public class SarifViolationSink implements ViolationSink {
+
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+
+    private final Writer out;
+    private final Map<String, Rule> rules = new LinkedHashMap<String, Rule>();
+    private boolean first = true;
+    private List<SkippedInputs.SkippedInput> skipped = Collections.emptyList();
+
+    public SarifViolationSink(File target) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8), 64 * 1024);
+        out.write('{');
+        Json.field(out, "$schema", SCHEMA);
+        out.write(',');
+        Json.field(out, "version", "2.1.0");
+        out.write(",\"runs\":[{\"results\":[\n");
+    }
+
+    @Override
+    public void accept(ProblemDescriptor problem) throws IOException {
+        Rule rule = problem.getRule();
+        if (!rules.containsKey(rule.getName())) {
+            rules.put(rule.getName(), rule);
+        }
+        if (!first) {
+            out.write(",\n");
+        }
+        first = false;
+        out.write('{');
+        Json.field(out, "ruleId", rule.getName());
+        out.write(',');
+        Json.field(out, "level", level(rule.getPriority()));
+        out.write(",\"message\":{");
+        Json.field(out, "text", problem.getDescription());
+        out.write("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{");
+        Json.field(out, "uri", new File(problem.getFilename()).toURI().toString());
+        out.write("},\"region\":{");
+        Json.field(out, "startLine", Math.max(1, problem.getBeginLine()));
+        if (problem.getBeginColumn() > 0) {
+            out.write(',');
+            Json.field(out, "startColumn", problem.getBeginColumn());
+        }
+        if (problem.getEndLine() >= problem.getBeginLine() && problem.getEndLine() > 0) {
+            out.write(',');
+            Json.field(out, "endLine", problem.getEndLine());
+        }
+        out.write("}}}]}");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void skipped(List<SkippedInputs.SkippedInput> inputs) {
+        this.skipped = inputs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("\n],\"invocations\":[{\"executionSuccessful\":true,\"toolExecutionNotifications\":[");
+            boolean firstSkipped = true;
+            for (SkippedInputs.SkippedInput input : skipped) {
+                out.write(firstSkipped ? "\n{" : ",\n{");
+                firstSkipped = false;
+                Json.field(out, "level", "warning");
+                out.write(",\"message\":{");
+                Json.field(out, "text", input.getKind() + ": " + input.getReason());
+                out.write("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{");
+                Json.field(out, "uri", new File(input.getFileName()).toURI().toString());
+                out.write("}}}],\"properties\":{");
+                Json.field(out, "millis", input.getMillis());
+                out.write("}}");
+            }
+            out.write("\n]}],\"tool\":{\"driver\":{");
+            Json.field(out, "name", "maven-code-check-plugin");
+            out.write(",\"rules\":[");
+            boolean firstRule = true;
+            for (Rule rule : rules.values()) {
+                if (!firstRule) {
+                    out.write(',');
+                }
+                firstRule = false;
+                out.write("\n{");
+                Json.field(out, "id", rule.getName());
+                out.write(",\"shortDescription\":{");
+                Json.field(out, "text", rule.getMessage());
+                out.write("},\"fullDescription\":{");
+                Json.field(out, "text", rule.getDescription());
+                out.write("},\"defaultConfiguration\":{");
+                Json.field(out, "level", level(rule.getPriority()));
+                out.write("},\"properties\":{");
+                Json.field(out, "severity", HighlightDisplayLevels.getHighlightDisplayLevel(rule.getPriority()).getName());
+                out.write("}}");
+            }
+            out.write("\n]}}}]}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String level(RulePriority priority) {
+        if (priority == RulePriority.HIGH || priority == RulePriority.MEDIUM_HIGH) {
+            return "error";
+        }
+        return priority == RulePriority.MEDIUM ? "warning" : "note";
+    }
+}
@@ -0,0 +1,36 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the violations of a check run. Violations arrive grouped by file, in the deterministic order
+ * of the analysis; implementations are expected to write them out incrementally instead of keeping the
+ * whole report in memory.
+ * <p>
+ * A sink is only ever called from one thread at a time.
+ */
+public interface ViolationSink extends Closeable {
+
+    void accept(ProblemDescriptor problem) throws IOException;
+
+    /**
+     * Called after each batch of violations; buffered output should be pushed out here.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Called once after the last violation, with the files that were not analyzed completely.
+     */
+    void skipped(List<SkippedInputs.SkippedInput> inputs) throws IOException;
+
+    /**
+     * Completes the report, e.g. writes closing elements, and releases the underlying resources.
+     */
+    @Override
+    void close() throws IOException;
+}
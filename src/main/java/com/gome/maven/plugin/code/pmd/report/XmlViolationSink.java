@@ -0,0 +1,127 @@
+package com.gome.maven.plugin.code.pmd.report;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.pmd.SkippedInputs;
+import net.sourceforge.pmd.PMD;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams violations into a PMD style <code>pmd.xml</code>: one <code>&lt;file&gt;</code> element per source file,
+ * written as soon as its violations arrive. Skipped files follow as PMD's <code>&lt;error&gt;</code> elements.
+ */
+public class XmlViolationSink implements ViolationSink {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final OutputStream stream;
+    private final XMLStreamWriter xml;
+    private String currentFile;
+    private List<SkippedInputs.SkippedInput> skipped = Collections.emptyList();
+
+    public XmlViolationSink(File target) throws IOException {
+        this.stream = new BufferedOutputStream(new FileOutputStream(target), 64 * 1024);
+        try {
+            this.xml = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, ENCODING);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("pmd");
+            xml.writeAttribute("version", PMD.VERSION);
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            stream.close();
+            throw new IOException("Unable to write " + target, e);
+        }
+    }
+
+    @Override
+    public void accept(ProblemDescriptor problem) throws IOException {
+        try {
+            if (!problem.getFilename().equals(currentFile)) {
+                if (currentFile != null) {
+                    xml.writeEndElement();
+                    xml.writeCharacters("\n");
+                }
+                currentFile = problem.getFilename();
+                xml.writeStartElement("file");
+                xml.writeAttribute("name", currentFile);
+                xml.writeCharacters("\n");
+            }
+            xml.writeStartElement("violation");
+            xml.writeAttribute("beginline", String.valueOf(problem.getBeginLine()));
+            xml.writeAttribute("endline", String.valueOf(problem.getEndLine()));
+            xml.writeAttribute("begincolumn", String.valueOf(problem.getBeginColumn()));
+            xml.writeAttribute("endcolumn", String.valueOf(problem.getEndColumn()));
+            xml.writeAttribute("rule", problem.getRule().getName());
+            if (problem.getRule().getRuleSetName() != null) {
+                xml.writeAttribute("ruleset", problem.getRule().getRuleSetName());
+            }
+            writeOptional("package", problem.getPackageName());
+            writeOptional("class", problem.getClassName());
+            writeOptional("method", problem.getMethodName());
+            writeOptional("variable", problem.getVariableName());
+            xml.writeAttribute("priority", String.valueOf(problem.getRule().getPriority().getPriority()));
+            xml.writeCharacters(String.valueOf(problem.getDescription()));
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        stream.flush();
+    }
+
+    @Override
+    public void skipped(List<SkippedInputs.SkippedInput> inputs) {
+        this.skipped = inputs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (currentFile != null) {
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            for (SkippedInputs.SkippedInput input : skipped) {
+                xml.writeStartElement("error");
+                xml.writeAttribute("filename", input.getFileName());
+                xml.writeAttribute("msg", input.getKind() + ": " + input.getReason());
+                xml.writeAttribute("millis", String.valueOf(input.getMillis()));
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void writeOptional(String name, String value) throws XMLStreamException {
+        if (value != null && !value.isEmpty()) {
+            xml.writeAttribute(name, value);
+        }
+    }
+}
@@ -15,13 +15,20 @@
  */
 package com.gome.maven.plugin.code.pmd.vcs;
 
+import com.gome.maven.plugin.code.pmd.config.P3cConfig;
 import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
 import com.gome.maven.plugin.code.pmd.inspection.LocalInspectionTool;
-import com.gome.maven.util.ReflectionUtil;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import com.gome.maven.plugin.code.pmd.pmd.AliPmdAnalysisEngine;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 
-;import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author yaohui.wyh
@@ -32,29 +39,53 @@ import org.apache.maven.plugin.logging.SystemStreamLog;
 public class AliCodeAnalysisCheckinHandler implements CheckinHandler {
     private static Log log = new SystemStreamLog();
 
+    private final File workTree;
 
-    AliCodeAnalysisCheckinHandler() {}
+    AliCodeAnalysisCheckinHandler(File workTree) {
+        this.workTree = workTree;
+    }
 
+    /**
+     * Checks the java files changed in the work tree against <code>HEAD</code> and reports the violations
+     * found on changed lines. Does nothing unless {@link P3cConfig#analysisBeforeCheckin} is set.
+     */
     public void doAnalysis() {
-        List<Class<?>> tools= AliLocalInspectionToolProvider.getInspectionClasses();
-        for (final Class aClass : tools) {
-            LocalInspectionTool tool= (LocalInspectionTool)instantiateTool(aClass);
-//            tool.checkFile();
+        if (!P3cConfig.analysisBeforeCheckin) {
+            return;
         }
-
-//        val tools = Inspections.aliInspections(project) { it.tool is AliBaseInspection }
-
-    }
-
-    static Object instantiateTool(Class<?> toolClass) {
+        GitChangeSet changeSet;
         try {
-            return ReflectionUtil.newInstance(toolClass,new Class[0]);
+            changeSet = GitChangeSet.compute(workTree, null, true);
+        } catch (IOException e) {
+            log.warn("Unable to compute git changes of " + workTree, e);
+            return;
+        }
+        List<File> files = new ArrayList<File>();
+        for (File file : changeSet.getChangedFiles()) {
+            if (file.isFile() && file.getName().endsWith(".java")) {
+                files.add(file);
+            }
         }
-        catch (RuntimeException e) {
-            e.printStackTrace();
+        if (files.isEmpty()) {
+            return;
         }
+        Collections.sort(files);
 
-        return null;
+        List<RuleInfo> ruleInfos = new ArrayList<RuleInfo>();
+        for (LocalInspectionTool tool : AliLocalInspectionToolProvider.getInspectionTools()) {
+            RuleInfo ruleInfo = AliLocalInspectionToolProvider.getRuleInfoMap().get(tool.ruleName());
+            if (ruleInfo != null) {
+                ruleInfos.add(ruleInfo);
+            }
+        }
+        AliPmdAnalysisEngine engine = new AliPmdAnalysisEngine(ruleInfos, P3cConfig.getInstance().getSourceEncoding());
+        for (File file : files) {
+            for (ProblemDescriptor problem : engine.analyze(file)) {
+                if (changeSet.isChangedLine(file, problem.getBeginLine())) {
+                    log.warn(problem.toString());
+                }
+            }
+        }
     }
 
 }
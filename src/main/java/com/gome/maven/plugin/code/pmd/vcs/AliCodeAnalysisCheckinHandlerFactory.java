@@ -15,6 +15,8 @@
  */
 package com.gome.maven.plugin.code.pmd.vcs;
 
+import java.io.File;
+
 /**
  *
  *
@@ -23,10 +25,19 @@ package com.gome.maven.plugin.code.pmd.vcs;
  */
 public class AliCodeAnalysisCheckinHandlerFactory implements CheckinHandlerFactory{
 
+    private final File workTree;
+
+    public AliCodeAnalysisCheckinHandlerFactory() {
+        this(new File(System.getProperty("user.dir")));
+    }
+
+    public AliCodeAnalysisCheckinHandlerFactory(File workTree) {
+        this.workTree = workTree;
+    }
 
     @Override
     public CheckinHandler createHandler() {
-        return new AliCodeAnalysisCheckinHandler();
+        return new AliCodeAnalysisCheckinHandler(workTree);
     }
 
 }
\ No newline at end of file
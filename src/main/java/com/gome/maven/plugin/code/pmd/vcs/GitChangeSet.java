@@ -0,0 +1,198 @@
+package com.gome.maven.plugin.code.pmd.vcs;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Files (and optionally lines) changed in a local git work tree, either since the merge base of a base ref and
+ * <code>HEAD</code> or, when no base is given, against <code>HEAD</code> including staged, unstaged and untracked
+ * files. Diffing against the merge base keeps commits that reached the base ref after the branch was forked out of
+ * the change set.
+ * <p>
+ * Everything is read from the local repository through the <code>git</code> executable; no remote is contacted.
+ */
+public class GitChangeSet {
+
+    private static Log LOG = new SystemStreamLog();
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@");
+
+    /**
+     * Changed line ranges per canonical file; a <code>null</code> value means the whole file is new.
+     */
+    private final Map<File, List<int[]>> changes;
+
+    private GitChangeSet(Map<File, List<int[]>> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * Computes the change set of the repository containing {@code directory}.
+     *
+     * @param directory any directory inside the work tree
+     * @param baseRef   the ref whose merge base with <code>HEAD</code> is diffed against, e.g.
+     *                  <code>origin/master</code>; blank for the working tree vs HEAD
+     * @param withLines whether changed line ranges should be collected as well
+     */
+    public static GitChangeSet compute(File directory, String baseRef, boolean withLines) throws IOException {
+        String topLevel = run(directory, "rev-parse", "--show-toplevel").trim();
+        if (topLevel.isEmpty()) {
+            throw new IOException(directory + " is not inside a git work tree");
+        }
+        File workTree = new File(topLevel).getCanonicalFile();
+        String base = "HEAD";
+        if (StringUtils.isNotBlank(baseRef)) {
+            base = run(workTree, "merge-base", baseRef.trim(), "HEAD").trim();
+        }
+
+        Map<File, List<int[]>> changes = new HashMap<File, List<int[]>>();
+        for (String path : split(run(workTree, "diff", "--name-only", "-z", "--diff-filter=ACMRT", base))) {
+            changes.put(new File(workTree, path).getCanonicalFile(), null);
+        }
+        if (StringUtils.isBlank(baseRef)) {
+            for (String path : split(run(workTree, "ls-files", "--others", "--exclude-standard", "-z"))) {
+                changes.put(new File(workTree, path).getCanonicalFile(), null);
+            }
+        }
+        if (withLines) {
+            collectChangedLines(workTree, base, changes);
+        }
+        LOG.debug("git change set against " + base + ": " + changes.size() + " files");
+        return new GitChangeSet(changes);
+    }
+
+    public Set<File> getChangedFiles() {
+        return Collections.unmodifiableSet(changes.keySet());
+    }
+
+    public boolean isChanged(File canonicalFile) {
+        return changes.containsKey(canonicalFile);
+    }
+
+    /**
+     * @return whether {@code line} (1-based) of the file was added or modified
+     */
+    public boolean isChangedLine(File canonicalFile, int line) {
+        if (!changes.containsKey(canonicalFile)) {
+            return false;
+        }
+        List<int[]> ranges = changes.get(canonicalFile);
+        if (ranges == null) {
+            return true;
+        }
+        for (int[] range : ranges) {
+            if (line >= range[0] && line <= range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void collectChangedLines(File workTree, String base, Map<File, List<int[]>> changes) throws IOException {
+        String diff = run(workTree, "-c", "core.quotepath=off", "diff", "-U0", "--no-color", "--no-ext-diff",
+                "--diff-filter=ACMRT", base);
+        parseChangedLines(workTree, diff, changes);
+    }
+
+    /**
+     * Records the added and modified line ranges of a <code>-U0</code> diff for the files already in
+     * {@code changes}; other files of the diff are ignored.
+     */
+    static void parseChangedLines(File workTree, String diff, Map<File, List<int[]>> changes) throws IOException {
+        List<int[]> current = null;
+        for (String line : diff.split("\n")) {
+            if (line.startsWith("+++ ")) {
+                current = null;
+                String path = line.substring(4);
+                if (path.startsWith("b/")) {
+                    File file = new File(workTree, path.substring(2)).getCanonicalFile();
+                    if (changes.containsKey(file)) {
+                        current = new ArrayList<int[]>();
+                        changes.put(file, current);
+                    }
+                }
+            } else if (current != null && line.startsWith("@@")) {
+                Matcher matcher = HUNK_HEADER.matcher(line);
+                if (matcher.find()) {
+                    int start = Integer.parseInt(matcher.group(1));
+                    int count = matcher.group(2) == null ? 1 : Integer.parseInt(matcher.group(2));
+                    if (count > 0) {
+                        current.add(new int[]{start, start + count - 1});
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<String> split(String nulSeparated) {
+        List<String> result = new ArrayList<String>();
+        for (String path : nulSeparated.split("\u0000")) {
+            if (!path.isEmpty()) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private static String run(File directory, String... args) throws IOException {
+        List<String> command = new ArrayList<String>(args.length + 1);
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        // stderr goes to a file, so that git never blocks on a full error pipe while stdout is read
+        File errorFile = File.createTempFile("git", ".err");
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command).directory(directory).redirectError(errorFile);
+            Process process = builder.start();
+            process.getOutputStream().close();
+            try {
+                String output = read(process.getInputStream());
+                int exitCode = process.waitFor();
+                if (exitCode != 0) {
+                    String error = read(new FileInputStream(errorFile));
+                    throw new IOException(command + " failed with exit code " + exitCode + ": " + error.trim());
+                }
+                return output;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while running " + command, e);
+            } finally {
+                process.destroy();
+            }
+        } finally {
+            if (!errorFile.delete()) {
+                errorFile.deleteOnExit();
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.siyeh.ig.inheritance;
+
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+
+/**
+ * Classes overriding only one of <code>equals</code> and <code>hashCode</code>; checked on the compiled classes
+ * by the bytecode rule tier.
+ */
+public class MapOrSetKeyShouldOverrideHashCodeEqualsRule extends AbstractJavaRule {
+
+}
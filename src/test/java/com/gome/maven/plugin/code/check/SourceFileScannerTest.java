@@ -0,0 +1,143 @@
+package com.gome.maven.plugin.code.check;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class SourceFileScannerTest extends TestCase {
+
+    private File root;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        root = File.createTempFile("source-file-scanner", "").getCanonicalFile();
+        assertTrue(root.delete() && root.mkdirs());
+        touch("Top.java");
+        touch("Top.txt");
+        touch("com/foo/Foo.java");
+        touch("com/foo/FooTest.java");
+        touch("com/foo/package.html");
+        touch("com/foo/impl/FooImpl.java");
+        touch("com/generated/Gen.java");
+        touch("com/generated/deep/Deeper.java");
+        touch("com/bar/generated/Gen.java");
+        touch("test/Util.java");
+        touch("com/test/Util.java");
+        touch(".svn/entries.java");
+        touch("com/foo/.git/Hook.java");
+        touch("com/foo/CVS/Entries.java");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(root);
+        super.tearDown();
+    }
+
+    public void testDefaultPatterns() throws IOException {
+        assertSameFiles(Collections.singletonList("**/*.java"), Collections.<String>emptyList());
+    }
+
+    public void testExcludePatterns() throws IOException {
+        List<String> includes = Collections.singletonList("**/*.java");
+        assertSameFiles(includes, Collections.singletonList("**/generated/**"));
+        assertSameFiles(includes, Collections.singletonList("com/generated/"));
+        assertSameFiles(includes, Collections.singletonList("**/*Test.java"));
+        assertSameFiles(includes, Collections.singletonList("**/test/**"));
+        assertSameFiles(includes, Collections.singletonList("com/*/impl/**"));
+        assertSameFiles(includes, Collections.singletonList("com\\foo\\**"));
+        assertSameFiles(includes, Arrays.asList("*.java", "**/generated/deep/**"));
+    }
+
+    public void testIncludePatterns() throws IOException {
+        List<String> excludes = Collections.emptyList();
+        assertSameFiles(Collections.singletonList("*.java"), excludes);
+        assertSameFiles(Collections.singletonList("com/**/*.java"), excludes);
+        assertSameFiles(Collections.singletonList("com/**/impl/*.java"), excludes);
+        assertSameFiles(Collections.singletonList("**/foo/**"), excludes);
+        assertSameFiles(Arrays.asList("**/*.java", "**/*.html"), excludes);
+        assertSameFiles(Collections.singletonList("com/?oo/*.java"), excludes);
+        assertSameFiles(Collections.singletonList("**/generated/**/*.java"), Collections.singletonList("**/deep/**"));
+    }
+
+    public void testExcludedRootIsSkipped() throws IOException {
+        SourceFileScanner scanner = new SourceFileScanner(Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList(), Collections.singletonList(root.getParentFile()),
+                new SystemStreamLog());
+
+        assertTrue(scanner.scan(root).isEmpty());
+    }
+
+    public void testExcludeRootInsideSourceRootIsPruned() throws IOException {
+        SourceFileScanner scanner = new SourceFileScanner(Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList(), Collections.singletonList(new File(root, "com")),
+                new SystemStreamLog());
+
+        assertEquals(new TreeSet<File>(Arrays.asList(new File(root, "Top.java"), new File(root, "test/Util.java"),
+                new File(root, ".svn/entries.java"))), new TreeSet<File>(scanner.scan(root)));
+    }
+
+    public void testRootsKeepTheirOrder() throws IOException {
+        File foo = new File(root, "com/foo");
+        File test = new File(root, "test");
+        File missing = new File(root, "missing");
+        SourceFileScanner scanner = new SourceFileScanner(Collections.singletonList("**/*.java"),
+                Collections.<String>emptyList(), Collections.<File>emptyList(), new SystemStreamLog());
+
+        List<List<File>> found = scanner.scan(Arrays.asList(test, missing, foo));
+
+        assertEquals(3, found.size());
+        assertEquals(Collections.singletonList(new File(test, "Util.java")), found.get(0));
+        assertTrue(found.get(1).isEmpty());
+        assertTrue(found.get(2).contains(new File(foo, "impl/FooImpl.java")));
+    }
+
+    /**
+     * Compares the scanner against the plexus {@link FileUtils#getFiles} scan it replaced, with the default
+     * excludes added the way the report adds them.
+     */
+    private void assertSameFiles(Collection<String> includes, Collection<String> excludes) throws IOException {
+        Collection<String> excluding = new LinkedHashSet<String>(FileUtils.getDefaultExcludesAsList());
+        excluding.addAll(excludes);
+
+        Set<File> expected = new TreeSet<File>();
+        for (File file : FileUtils.getFiles(root, StringUtils.join(includes.iterator(), ","),
+                StringUtils.join(excluding.iterator(), ","))) {
+            expected.add(file.getCanonicalFile());
+        }
+        SourceFileScanner scanner = new SourceFileScanner(includes, excluding, Collections.<File>emptyList(),
+                new SystemStreamLog());
+        Set<File> actual = new TreeSet<File>(scanner.scan(root));
+
+        assertEquals(includes + " - " + excludes, expected, actual);
+    }
+
+    private void touch(String path) throws IOException {
+        File file = new File(root, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
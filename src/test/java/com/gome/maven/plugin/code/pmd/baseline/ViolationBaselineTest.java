@@ -0,0 +1,143 @@
+package com.gome.maven.plugin.code.pmd.baseline;
+
+import com.gome.maven.plugin.code.pmd.cache.CachedRuleViolation;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import junit.framework.TestCase;
+import net.sourceforge.pmd.Rule;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ViolationBaselineTest extends TestCase {
+
+    private static final String SOURCE = "class Foo {\n"
+            + "    void bar() {\n"
+            + "        new Thread().start();\n"
+            + "        new Thread().start();\n"
+            + "    }\n"
+            + "}\n";
+
+    private File dir;
+    private File location;
+    private File source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("violation-baseline", "");
+        assertTrue(dir.delete() && dir.mkdirs());
+        location = new File(dir, "baseline.bin");
+        source = new File(dir, "src/Foo.java");
+        assertTrue(source.getParentFile().mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(dir);
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws IOException {
+        record(SOURCE, problem("ThreadRule", 3), problem("ThreadRule", 4));
+
+        ViolationBaseline baseline = new ViolationBaseline(location, StandardCharsets.UTF_8);
+        assertTrue(baseline.exists());
+        assertTrue(baseline.match(source, attach(SOURCE, problem("ThreadRule", 3))));
+        assertTrue(baseline.match(source, attach(SOURCE, problem("ThreadRule", 4))));
+        // both occurrences are used up, a third copy of the statement is new
+        assertFalse(baseline.match(source, attach(SOURCE, problem("ThreadRule", 4))));
+        assertFalse(baseline.match(source, attach(SOURCE, problem("OtherRule", 3))));
+        assertEquals(2, baseline.getSuppressed());
+    }
+
+    public void testToleratesLineShifts() throws IOException {
+        record(SOURCE, problem("ThreadRule", 3));
+        String shifted = "import java.util.List;\n\n" + SOURCE.replace("    void bar() {", "    void bar()   {");
+
+        ViolationBaseline baseline = new ViolationBaseline(location, StandardCharsets.UTF_8);
+        assertTrue(baseline.match(source, attach(shifted, problem("ThreadRule", 5))));
+    }
+
+    public void testReportsChangedLine() throws IOException {
+        record(SOURCE, problem("ThreadRule", 3));
+        String changed = SOURCE.replace("        new Thread().start();\n        new",
+                "        new Thread(task).start();\n        new");
+
+        ViolationBaseline baseline = new ViolationBaseline(location, StandardCharsets.UTF_8);
+        assertFalse(baseline.match(source, attach(changed, problem("ThreadRule", 3))));
+    }
+
+    public void testReadsLineOfProblemWithoutSnippet() throws IOException {
+        record(SOURCE, problem("ThreadRule", 3));
+        write(SOURCE);
+
+        ViolationBaseline baseline = new ViolationBaseline(location, StandardCharsets.UTF_8);
+        assertTrue(baseline.match(source, problem("ThreadRule", 3)));
+    }
+
+    public void testMissingBaselineMatchesNothing() throws IOException {
+        ViolationBaseline baseline = new ViolationBaseline(location, StandardCharsets.UTF_8);
+        assertFalse(baseline.exists());
+        assertFalse(baseline.match(source, attach(SOURCE, problem("ThreadRule", 3))));
+    }
+
+    private void record(String content, ProblemDescriptor... problems) throws IOException {
+        ViolationBaseline.attachSnippets(Arrays.asList(problems), content);
+        ViolationBaseline baseline = new ViolationBaseline(location, StandardCharsets.UTF_8);
+        for (ProblemDescriptor problem : problems) {
+            baseline.record(source, problem);
+        }
+        baseline.write();
+        assertEquals(problems.length, baseline.getRecorded());
+    }
+
+    private static ProblemDescriptor attach(String content, ProblemDescriptor problem) {
+        ViolationBaseline.attachSnippets(Collections.singletonList(problem), content);
+        return problem;
+    }
+
+    private ProblemDescriptor problem(String ruleName, int line) {
+        return new ProblemDescriptor(new CachedRuleViolation(rule(ruleName), "description", source.getPath(),
+                line, 9, line, 30, "", "Foo", "bar", null));
+    }
+
+    private static Rule rule(final String name) {
+        return (Rule) Proxy.newProxyInstance(Rule.class.getClassLoader(), new Class[]{Rule.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getName".equals(method.getName())) {
+                            return name;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private void write(String content) throws IOException {
+        OutputStream out = new FileOutputStream(source);
+        try {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,90 @@
+package com.gome.maven.plugin.code.pmd.benchmark;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AnalysisMetricsTest extends TestCase {
+
+    public void testRegistriesOfParallelChecksStaySeparate() throws InterruptedException {
+        final AnalysisMetrics first = new AnalysisMetrics();
+        final AnalysisMetrics second = new AnalysisMetrics();
+        final CountDownLatch activated = new CountDownLatch(2);
+        Thread firstCheck = check(first, 3, activated);
+        Thread secondCheck = check(second, 5, activated);
+        firstCheck.start();
+        secondCheck.start();
+        firstCheck.join();
+        secondCheck.join();
+
+        assertEquals(3L, first.getCounters().get(AnalysisMetrics.FILES_ANALYZED).longValue());
+        assertEquals(5L, second.getCounters().get(AnalysisMetrics.FILES_ANALYZED).longValue());
+        assertNull(AnalysisMetrics.current());
+    }
+
+    public void testThreadsStartedThroughInheritingRecordIntoTheCurrentRegistry() throws InterruptedException {
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        final AtomicReference<AnalysisMetrics> seen = new AtomicReference<AnalysisMetrics>();
+        metrics.activate();
+        try {
+            Thread worker = new Thread(AnalysisMetrics.inheriting(new Runnable() {
+                @Override
+                public void run() {
+                    seen.set(AnalysisMetrics.current());
+                    AnalysisMetrics.count(AnalysisMetrics.FILES_ANALYZED, 1);
+                }
+            }));
+            worker.start();
+            worker.join();
+        } finally {
+            metrics.deactivate();
+        }
+
+        assertSame(metrics, seen.get());
+        assertEquals(1L, metrics.getCounters().get(AnalysisMetrics.FILES_ANALYZED).longValue());
+        assertNull(AnalysisMetrics.current());
+    }
+
+    public void testDeactivateKeepsTheRegistryOfOtherThreads() throws InterruptedException {
+        final AnalysisMetrics metrics = new AnalysisMetrics();
+        metrics.activate();
+        try {
+            Thread other = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    metrics.deactivate();
+                }
+            });
+            other.start();
+            other.join();
+            assertSame(metrics, AnalysisMetrics.current());
+        } finally {
+            metrics.deactivate();
+        }
+        assertNull(AnalysisMetrics.current());
+    }
+
+    /**
+     * A check recording {@code files} analyzed files, once both checks have activated their registries.
+     */
+    private static Thread check(final AnalysisMetrics metrics, final int files, final CountDownLatch activated) {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                metrics.activate();
+                try {
+                    activated.countDown();
+                    activated.await();
+                    for (int i = 0; i < files; i++) {
+                        AnalysisMetrics.count(AnalysisMetrics.FILES_ANALYZED, 1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    metrics.deactivate();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,355 @@
+package com.gome.maven.plugin.code.pmd.bytecode;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import junit.framework.TestCase;
+import net.sourceforge.pmd.Rule;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the bytecode rules on small fixtures compiled into a temporary directory. The fixtures are written line by
+ * line so that the expected line numbers can be read off the sources.
+ */
+public class BytecodeAnalyzerTest extends TestCase {
+
+    private File root;
+    private File sourceRoot;
+    private File classes;
+    private final Map<String, File> sources = new LinkedHashMap<String, File>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        root = File.createTempFile("bytecode-analyzer", "").getCanonicalFile();
+        assertTrue(root.delete() && root.mkdirs());
+        sourceRoot = new File(root, "src");
+        classes = new File(root, "classes");
+        assertTrue(classes.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(root);
+        super.tearDown();
+    }
+
+    public void testEqualsWithoutHashCode() throws IOException {
+        source("fixture/Key.java",
+                "package fixture;",
+                "public class Key {",
+                "    @Override",
+                "    public boolean equals(Object o) {",
+                "        return o == this;",
+                "    }",
+                "    static class Nested {",
+                "        @Override",
+                "        public int hashCode() {",
+                "            return 1;",
+                "        }",
+                "    }",
+                "}");
+        source("fixture/Complete.java",
+                "package fixture;",
+                "public class Complete {",
+                "    @Override",
+                "    public boolean equals(Object o) {",
+                "        return o == this;",
+                "    }",
+                "    @Override",
+                "    public int hashCode() {",
+                "        return 1;",
+                "    }",
+                "    public boolean equals(Complete other) {",
+                "        return other == this;",
+                "    }",
+                "}");
+
+        Map<File, List<ProblemDescriptor>> problems = analyze();
+
+        assertEquals(Arrays.asList("MapOrSetKeyShouldOverrideHashCodeEqualsRule Key.equals:5",
+                "MapOrSetKeyShouldOverrideHashCodeEqualsRule Key$Nested.hashCode:10"), findings(problems, "Key"));
+        assertEquals(Collections.<String>emptyList(), findings(problems, "Complete"));
+    }
+
+    public void testDeprecatedMembersOfOtherClasses() throws IOException {
+        source("fixture/Legacy.java",
+                "package fixture;",
+                "public class Legacy {",
+                "    @Deprecated",
+                "    public static int LIMIT = 1;",
+                "    public static int SIZE = 2;",
+                "    @Deprecated",
+                "    public static void old() {",
+                "    }",
+                "    public static void current() {",
+                "        old();",
+                "    }",
+                "}");
+        source("fixture/Caller.java",
+                "package fixture;",
+                "public class Caller {",
+                "    void call() {",
+                "        Legacy.current();",
+                "        Legacy.old();",
+                "        int size = Legacy.SIZE;",
+                "        int limit = Legacy.LIMIT;",
+                "    }",
+                "    @Deprecated",
+                "    void deprecatedCaller() {",
+                "        Legacy.old();",
+                "    }",
+                "}");
+
+        Map<File, List<ProblemDescriptor>> problems = analyze();
+
+        assertEquals(Arrays.asList("AliDeprecationRule Caller.call:5", "AliDeprecationRule Caller.call:7"),
+                findings(problems, "Caller"));
+        // the uses inside the declaring class are not reported
+        assertEquals(Collections.<String>emptyList(), findings(problems, "Legacy"));
+    }
+
+    public void testStaticMembersAccessedThroughInstances() throws IOException {
+        source("fixture/Counter.java",
+                "package fixture;",
+                "public class Counter {",
+                "    static int COUNT;",
+                "    Counter next;",
+                "    static void reset() {",
+                "    }",
+                "    int viaInstance(Counter other) {",
+                "        return other.COUNT;",
+                "    }",
+                "    void viaField() {",
+                "        next.reset();",
+                "    }",
+                "    int viaType() {",
+                "        return Counter.COUNT;",
+                "    }",
+                "    void discardedResult(java.util.List<String> list) {",
+                "        list.add(\"x\");",
+                "        reset();",
+                "    }",
+                "}");
+
+        Map<File, List<ProblemDescriptor>> problems = analyze();
+
+        assertEquals(Arrays.asList("AliAccessStaticViaInstanceRule Counter.viaInstance:8",
+                "AliAccessStaticViaInstanceRule Counter.viaField:11"), findings(problems, "Counter"));
+    }
+
+    public void testOverridesWithoutAnnotation() throws IOException {
+        source("fixture/Base.java",
+                "package fixture;",
+                "public class Base {",
+                "    public void run() {",
+                "    }",
+                "    void packagePrivate() {",
+                "    }",
+                "}");
+        source("fixture/Child.java",
+                "package fixture;",
+                "public class Child extends Base implements Comparable<Child> {",
+                "    // @Override",
+                "    public void run() {",
+                "        System.out.println();",
+                "    }",
+                "    @Override",
+                "    public String toString() {",
+                "        return \"child\";",
+                "    }",
+                "    public int compareTo(Child other) {",
+                "        return 0;",
+                "    }",
+                "    @SuppressWarnings(\"unused\") @java.lang.Override",
+                "    void packagePrivate() {",
+                "        System.out.println();",
+                "    }",
+                "    public void own() {",
+                "        System.out.println();",
+                "    }",
+                "}");
+
+        Map<File, List<ProblemDescriptor>> problems = analyze();
+
+        assertEquals(Arrays.asList("AliMissingOverrideAnnotationRule Child.run:4",
+                "AliMissingOverrideAnnotationRule Child.compareTo:11"), findings(problems, "Child"));
+        assertEquals(Collections.<String>emptyList(), findings(problems, "Base"));
+    }
+
+    public void testStaleClassesAreSkipped() throws IOException {
+        source("fixture/Stale.java",
+                "package fixture;",
+                "public class Stale {",
+                "    @Override",
+                "    public boolean equals(Object o) {",
+                "        return o == this;",
+                "    }",
+                "}");
+        compile();
+        File stale = sources.get("fixture/Stale.java");
+        assertTrue(stale.setLastModified(new File(classes, "fixture/Stale.class").lastModified() + 10000));
+
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(BytecodeRules.newRules(),
+                Collections.singletonList(classes), StandardCharsets.UTF_8, 1);
+        try {
+            analyzer.scan(classes, sources);
+            assertEquals(1, analyzer.getScannedClasses());
+            assertEquals(1, analyzer.getStaleClasses());
+            assertTrue(analyzer.getProblems().isEmpty());
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    public void testClassesOfOtherSourcesAndUnselectedRulesAreIgnored() throws IOException {
+        source("fixture/Base.java",
+                "package fixture;",
+                "public class Base {",
+                "    public String name() {",
+                "        return \"base\";",
+                "    }",
+                "}");
+        source("fixture/Key.java",
+                "package fixture;",
+                "public class Key extends Base {",
+                "    @Override",
+                "    public boolean equals(Object o) {",
+                "        return o == this;",
+                "    }",
+                "    public String name() {",
+                "        return \"key\";",
+                "    }",
+                "}");
+        compile();
+        Map<String, File> elsewhere = Collections.singletonMap("other/Key.java", sources.get("fixture/Key.java"));
+        Map<String, Rule> rules = BytecodeRules.newRules();
+        rules.keySet().retainAll(Collections.singleton(BytecodeRules.MISSING_OVERRIDE));
+
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(rules, Collections.singletonList(classes),
+                StandardCharsets.UTF_8, 1);
+        try {
+            analyzer.scan(classes, elsewhere);
+            assertTrue(analyzer.getProblems().isEmpty());
+
+            analyzer.scan(classes, sources);
+            assertEquals(Arrays.asList("AliMissingOverrideAnnotationRule Key.name:7"),
+                    findings(analyzer.getProblems(), "Key"));
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    public void testThreadsFindTheSameProblems() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            source("fixture/Key" + i + ".java",
+                    "package fixture;",
+                    "public class Key" + i + " extends Base {",
+                    "    public boolean equals(Object o) {",
+                    "        return o == this;",
+                    "    }",
+                    "}");
+        }
+        source("fixture/Base.java",
+                "package fixture;",
+                "public class Base {",
+                "    @Override",
+                "    public boolean equals(Object o) {",
+                "        return o == this;",
+                "    }",
+                "    @Override",
+                "    public int hashCode() {",
+                "        return 1;",
+                "    }",
+                "}");
+        compile();
+
+        Map<File, List<ProblemDescriptor>> serial = analyze(1);
+        Map<File, List<ProblemDescriptor>> parallel = analyze(4);
+
+        assertEquals(8, serial.size());
+        for (int i = 0; i < 8; i++) {
+            List<String> expected = Arrays.asList("MapOrSetKeyShouldOverrideHashCodeEqualsRule Key" + i + ".equals:4",
+                    "AliMissingOverrideAnnotationRule Key" + i + ".equals:3");
+            assertEquals(expected, findings(serial, "Key" + i));
+            assertEquals(expected, findings(parallel, "Key" + i));
+        }
+    }
+
+    private Map<File, List<ProblemDescriptor>> analyze() throws IOException {
+        compile();
+        return analyze(1);
+    }
+
+    private Map<File, List<ProblemDescriptor>> analyze(int threads) throws IOException {
+        BytecodeAnalyzer analyzer = new BytecodeAnalyzer(BytecodeRules.newRules(),
+                Collections.singletonList(classes), StandardCharsets.UTF_8, threads);
+        try {
+            analyzer.scan(classes, sources);
+            return analyzer.getProblems();
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    /**
+     * @return the findings in the source of {@code className}, as <code>rule class.method:line</code>
+     */
+    private List<String> findings(Map<File, List<ProblemDescriptor>> problems, String className) {
+        List<String> findings = new ArrayList<String>();
+        List<ProblemDescriptor> fileProblems = problems.get(sources.get("fixture/" + className + ".java"));
+        if (fileProblems != null) {
+            for (ProblemDescriptor problem : fileProblems) {
+                findings.add(problem.getRule().getName() + " " + problem.getClassName() + "."
+                        + problem.getMethodName() + ":" + problem.getBeginLine());
+            }
+        }
+        return findings;
+    }
+
+    private void source(String path, String... lines) throws IOException {
+        File file = new File(sourceRoot, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        sources.put(path, file);
+    }
+
+    private void compile() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("the tests need a JDK", compiler);
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        try {
+            List<String> options = Arrays.asList("-d", classes.getPath(), "-source", "1.7", "-target", "1.7",
+                    "-Xlint:-options", "-nowarn");
+            assertTrue(compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources.values())).call());
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
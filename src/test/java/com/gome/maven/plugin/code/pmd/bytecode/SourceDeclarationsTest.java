@@ -0,0 +1,69 @@
+package com.gome.maven.plugin.code.pmd.bytecode;
+
+import junit.framework.TestCase;
+
+public class SourceDeclarationsTest extends TestCase {
+
+    private static final String SOURCE = "package fixture;\n"
+            + "public class Sample extends Base {\n"
+            + "    @Override\n"
+            + "    public String toString() {\n"
+            + "        return \"sample\";\n"
+            + "    }\n"
+            + "    // @Override\n"
+            + "    /* @Override */ public void run() {\n"
+            + "        call(\"@Override\");\n"
+            + "    }\n"
+            + "    @SuppressWarnings({\"a\", \"b\"})\n"
+            + "    @java.lang.Override\n"
+            + "    public java.util.List<String>[] names(int count) {\n"
+            + "        return null;\n"
+            + "    }\n"
+            + "    @Override int size() { return 0; } public int hashCode() {\n"
+            + "        return 1;\n"
+            + "    }\n"
+            + "    @Overrides\n"
+            + "    public void close() {\n"
+            + "    }\n"
+            + "    void overloaded() {\n"
+            + "    }\n"
+            + "    @Override\n"
+            + "    void overloaded(int value) {\n"
+            + "        overloaded();\n"
+            + "    }\n"
+            + "}\n";
+
+    private final SourceDeclarations declarations = new SourceDeclarations(SOURCE);
+
+    public void testFindsAnnotatedDeclarations() {
+        assertDeclaration("toString", 5, 4, true);
+        assertDeclaration("names", 14, 13, true);
+        assertDeclaration("size", 16, 16, true);
+    }
+
+    public void testCommentsAndStringsAreNotAnnotations() {
+        assertDeclaration("run", 9, 8, false);
+    }
+
+    public void testAnnotationsEndAtThePreviousMember() {
+        assertDeclaration("hashCode", 17, 16, false);
+        assertDeclaration("close", 21, 20, false);
+    }
+
+    public void testFindsTheLastDeclarationBeforeTheCode() {
+        assertDeclaration("overloaded", 23, 22, false);
+        assertDeclaration("overloaded", 26, 25, true);
+    }
+
+    public void testCallsAreNotDeclarations() {
+        assertNull(declarations.find("call", 28));
+        assertNull(declarations.find("toString", 3));
+    }
+
+    private void assertDeclaration(String name, int firstCodeLine, int line, boolean overrideAnnotated) {
+        SourceDeclarations.Declaration declaration = declarations.find(name, firstCodeLine);
+        assertNotNull(name, declaration);
+        assertEquals(name, line, declaration.getLine());
+        assertEquals(name, overrideAnnotated, declaration.isOverrideAnnotated());
+    }
+}
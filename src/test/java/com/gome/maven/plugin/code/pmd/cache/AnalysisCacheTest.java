@@ -0,0 +1,96 @@
+package com.gome.maven.plugin.code.pmd.cache;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AnalysisCacheTest extends TestCase {
+
+    private static final List<String> RULES = Arrays.asList("RuleA", "RuleB");
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("analysis-cache", "");
+        assertTrue(dir.delete() && dir.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(dir);
+        super.tearDown();
+    }
+
+    public void testFingerprintIgnoresRuleOrder() {
+        assertEquals(fingerprint(RULES, null, true, null),
+                fingerprint(Arrays.asList("RuleB", "RuleA"), null, true, null));
+    }
+
+    public void testFingerprintChangesWithEveryInput() throws IOException {
+        File jar = new File(dir, "dependency.jar");
+        assertTrue(jar.createNewFile());
+        List<File> classpath = Collections.singletonList(jar);
+        String base = fingerprint(RULES, classpath, true, null);
+
+        assertFalse(base.equals(fingerprint(Collections.singletonList("RuleA"), classpath, true, null)));
+        assertFalse(base.equals(AnalysisCache.fingerprint(RULES, 4, "UTF-8", classpath, true, null)));
+        assertFalse(base.equals(AnalysisCache.fingerprint(RULES, 3, "GBK", classpath, true, null)));
+        assertFalse(base.equals(fingerprint(RULES, null, true, null)));
+        assertFalse(base.equals(fingerprint(RULES, Collections.<File>emptyList(), true, null)));
+        assertFalse(base.equals(fingerprint(RULES, classpath, false, null)));
+        assertFalse(base.equals(fingerprint(RULES, classpath, true, "NOCHECK")));
+
+        assertTrue(jar.setLastModified(jar.lastModified() - 60000));
+        assertFalse(base.equals(fingerprint(RULES, classpath, true, null)));
+    }
+
+    public void testFingerprintIgnoresDirectoryTimestamps() {
+        File classes = new File(dir, "classes");
+        assertTrue(classes.mkdirs());
+        List<File> classpath = Collections.singletonList(classes);
+        String base = fingerprint(RULES, classpath, true, null);
+
+        assertTrue(classes.setLastModified(classes.lastModified() - 60000));
+        assertEquals(base, fingerprint(RULES, classpath, true, null));
+    }
+
+    public void testStoreIsDroppedWhenFingerprintChanges() throws IOException {
+        File location = new File(dir, "cache");
+        File source = new File(dir, "Foo.java");
+        String fingerprint = fingerprint(RULES, null, true, null);
+
+        AnalysisCache cache = AnalysisCache.open(location, fingerprint);
+        String hash = cache.contentHash("class Foo {}");
+        cache.quarantine(source, hash, "timed out");
+        cache.close();
+
+        cache = AnalysisCache.open(location, fingerprint);
+        assertEquals("timed out", cache.quarantined(source, hash));
+        cache.close();
+
+        cache = AnalysisCache.open(location, fingerprint(RULES, null, true, "NOCHECK"));
+        assertNull(cache.quarantined(source, hash));
+        cache.close();
+    }
+
+    private static String fingerprint(List<String> ruleNames, List<File> auxClasspath, boolean rulePrefilter,
+                                      String suppressMarker) {
+        return AnalysisCache.fingerprint(ruleNames, 3, "UTF-8", auxClasspath, rulePrefilter, suppressMarker);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,112 @@
+package com.gome.maven.plugin.code.pmd.cpd;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class DuplicateDetectorTest extends TestCase {
+
+    private static final String SUM = "    int sum(int[] values) {\n"
+            + "        int total = 0;\n"
+            + "        for (int i = 0; i < values.length; i++) {\n"
+            + "            total += values[i];\n"
+            + "        }\n"
+            + "        return total;\n"
+            + "    }\n";
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("duplicate-detector", "");
+        assertTrue(dir.delete() && dir.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testFindsCopiedMethod() throws Exception {
+        File a = write("A.java", "class A {\n" + SUM + "}\n");
+        File b = write("B.java", "class B {\n    private String name;\n\n" + SUM + "}\n");
+        File c = write("C.java", "class C {\n    String greet(String name) {\n        return \"Hello \" + name;\n    }\n}\n");
+
+        List<Duplication> duplications = detector(false).detect(Arrays.asList(a, b, c));
+
+        assertEquals(duplications.toString(), 1, duplications.size());
+        Duplication duplication = duplications.get(0);
+        assertTrue(duplication.getTokens() >= 40);
+        assertEquals(2, duplication.getOccurrences().size());
+        assertOccurrence(duplication.getOccurrences().get(0), a, 2, 8);
+        assertOccurrence(duplication.getOccurrences().get(1), b, 4, 10);
+    }
+
+    public void testRenamedCopyNeedsIgnoredIdentifiers() throws Exception {
+        String renamed = SUM.replace("sum", "add").replace("values", "numbers").replace("total", "result")
+                .replace("[i]", "[j]").replace("int i", "int j").replace("i <", "j <").replace("i++", "j++");
+        File a = write("A.java", "class A {\n" + SUM + "}\n");
+        File b = write("B.java", "class B {\n" + renamed + "}\n");
+
+        assertTrue(detector(false).detect(Arrays.asList(a, b)).isEmpty());
+        List<Duplication> duplications = detector(true).detect(Arrays.asList(a, b));
+        assertEquals(duplications.toString(), 1, duplications.size());
+        assertEquals(2, duplications.get(0).getOccurrences().size());
+    }
+
+    public void testBlocksBelowMinimumAreIgnored() throws Exception {
+        File a = write("A.java", "class A {\n" + SUM + "}\n");
+        File b = write("B.java", "class B {\n" + SUM + "}\n");
+
+        DuplicateDetector detector = new DuplicateDetector(1000, false, false, StandardCharsets.UTF_8, 2);
+        assertTrue(detector.detect(Arrays.asList(a, b)).isEmpty());
+    }
+
+    public void testUnreadableFileIsSkipped() throws Exception {
+        File a = write("A.java", "class A {\n" + SUM + "}\n");
+        File b = write("B.java", "class B {\n" + SUM + "}\n");
+        File missing = new File(dir, "Missing.java");
+
+        DuplicateDetector detector = detector(false);
+        List<Duplication> duplications = detector.detect(Arrays.asList(a, missing, b));
+
+        assertEquals(1, duplications.size());
+        assertEquals(1, detector.getSkippedInputs().size());
+        assertEquals(missing.getPath(), detector.getSkippedInputs().getInputs().get(0).getFileName());
+    }
+
+    private static DuplicateDetector detector(boolean ignoreIdentifiers) {
+        return new DuplicateDetector(20, false, ignoreIdentifiers, StandardCharsets.UTF_8, 2);
+    }
+
+    private static void assertOccurrence(Duplication.Occurrence occurrence, File file, int firstLine, int lastLine) {
+        assertEquals(file, occurrence.getFile());
+        assertTrue(occurrence.toString(), occurrence.getBeginLine() <= firstLine);
+        assertTrue(occurrence.toString(), occurrence.getEndLine() >= lastLine);
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,226 @@
+package com.gome.maven.plugin.code.pmd.index;
+
+import junit.framework.TestCase;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SymbolIndexTest extends TestCase {
+
+    private File root;
+    private File sourceRoot;
+    private File classes;
+    private File location;
+    private SymbolIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        root = File.createTempFile("symbol-index", "").getCanonicalFile();
+        assertTrue(root.delete() && root.mkdirs());
+        sourceRoot = new File(root, "src");
+        classes = new File(root, "classes");
+        assertTrue(classes.mkdirs());
+        location = new File(root, "index/symbols");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        deleteRecursively(root);
+        super.tearDown();
+    }
+
+    public void testUpdateReadsOnlyChangedClassFiles() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { public int size() { return 1; } }"),
+                source("fixture/Sub.java", "package fixture; public class Sub extends Base { }"),
+                source("fixture/User.java", "package fixture; public class User { Sub sub; }"));
+        index = SymbolIndex.open(location);
+        assertEquals(3, index.update(classes));
+        assertEquals(0, index.update(classes));
+        // nothing is known about the build that created the index
+        assertTrue(index.getChangedTypes().isEmpty());
+
+        reopen();
+        assertEquals(0, index.update(classes));
+        recompile(source("fixture/Sub.java", "package fixture; public class Sub extends Base { void sub() { } }"));
+
+        assertEquals(1, index.update(classes));
+        assertEquals(Collections.singleton("fixture/Sub"), index.getChangedTypes());
+        assertNotNull(index.get("fixture/Sub").getMethodAccess("sub", "()V"));
+        assertEquals("fixture/Base", index.get("fixture/Sub").getSuperName());
+        assertEquals("fixture/Sub.java", index.getSourcePath("fixture/Sub"));
+    }
+
+    public void testBodyOnlyRecompileKeepsTheApiHash() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { public int size() { return 1; } }"));
+        index = SymbolIndex.open(location);
+        index.update(classes);
+        long apiHash = index.get("fixture/Base").apiHash();
+
+        reopen();
+        recompile(source("fixture/Base.java",
+                "package fixture; public class Base { public int size() { int size = 2; return size * 21; } }"));
+        assertEquals(1, index.update(classes));
+        assertEquals(apiHash, index.get("fixture/Base").apiHash());
+        assertTrue(index.getChangedTypes().isEmpty());
+
+        recompile(source("fixture/Base.java",
+                "package fixture; public class Base { public long size() { return 1; } }"));
+        assertEquals(1, index.update(classes));
+        assertFalse(apiHash == index.get("fixture/Base").apiHash());
+        assertEquals(Collections.singleton("fixture/Base"), index.getChangedTypes());
+    }
+
+    public void testDeletedClassesLoseTheirEntriesAndEdges() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { }"),
+                source("fixture/User.java", "package fixture; public class User { Base base; }"));
+        index = SymbolIndex.open(location);
+        index.update(classes);
+        assertEquals(set("fixture/Base", "fixture/User"), index.getAffectedTypes(set("fixture/Base")));
+
+        reopen();
+        assertTrue(new File(classes, "fixture/User.class").delete());
+        assertEquals(0, index.update(classes));
+
+        assertNull(index.get("fixture/User"));
+        assertEquals(Collections.singleton("fixture/User"), index.getChangedTypes());
+        assertEquals(set("fixture/Base"), index.getAffectedTypes(set("fixture/Base")));
+        // the entries survive the reopening
+        reopen();
+        assertNull(index.get("fixture/User"));
+        assertEquals(set("fixture/Base"), index.getAffectedTypes(set("fixture/Base")));
+    }
+
+    public void testClassesOfOtherDirectoriesAreKept() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { }"));
+        File otherClasses = new File(root, "other-classes");
+        assertTrue(otherClasses.mkdirs());
+        index = SymbolIndex.open(location);
+        index.update(classes);
+
+        assertEquals(0, index.update(otherClasses));
+        assertNotNull(index.get("fixture/Base"));
+    }
+
+    public void testAffectedTypesFollowSubtypes() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { }"),
+                source("fixture/Api.java", "package fixture; public interface Api { }"),
+                source("fixture/Sub.java", "package fixture; public class Sub extends Base implements Api { }"),
+                source("fixture/Leaf.java", "package fixture; public class Leaf extends Sub { }"),
+                source("fixture/BaseUser.java", "package fixture; public class BaseUser { Base base; }"),
+                source("fixture/LeafUser.java", "package fixture; public class LeafUser { Leaf leaf; }"),
+                source("fixture/Indirect.java", "package fixture; public class Indirect { LeafUser user; }"),
+                source("fixture/Unrelated.java", "package fixture; public class Unrelated { String name; }"));
+        index = SymbolIndex.open(location);
+        index.update(classes);
+
+        assertEquals(set("fixture/Base", "fixture/Sub", "fixture/Leaf", "fixture/BaseUser", "fixture/LeafUser"),
+                index.getAffectedTypes(set("fixture/Base")));
+        assertEquals(set("fixture/Api", "fixture/Sub", "fixture/Leaf", "fixture/LeafUser"),
+                index.getAffectedTypes(set("fixture/Api")));
+        assertEquals(set("fixture/LeafUser", "fixture/Indirect"), index.getAffectedTypes(set("fixture/LeafUser")));
+        assertEquals(set("fixture/Unrelated"), index.getAffectedTypes(set("fixture/Unrelated")));
+    }
+
+    public void testAnotherFormatVersionDropsTheIndex() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { }"));
+        index = SymbolIndex.open(location);
+        index.update(classes);
+        index.close();
+        index = null;
+        Files.write(new File(location.getPath() + ".version").toPath(), "1".getBytes(StandardCharsets.UTF_8));
+
+        index = SymbolIndex.open(location);
+        assertNull(index.get("fixture/Base"));
+        assertEquals(1, index.update(classes));
+        assertTrue(index.getChangedTypes().isEmpty());
+        assertNotNull(index.get("fixture/Base"));
+    }
+
+    public void testReferencedTypesSkipPlatformTypesAndTheClassItself() throws IOException {
+        compile(source("fixture/Base.java", "package fixture; public class Base { }"),
+                source("fixture/Holder.java", "package fixture;"
+                        + " public class Holder<T extends Base> { java.util.List<fixture.Base> bases; Holder self;"
+                        + " fixture.Base[] array() { return null; } }"));
+        index = SymbolIndex.open(location);
+        index.update(classes);
+
+        assertEquals(set("fixture/Base", "fixture/Holder"), index.getAffectedTypes(set("fixture/Base")));
+        assertEquals(set("fixture/Holder"), index.getAffectedTypes(set("fixture/Holder")));
+    }
+
+    private void reopen() throws IOException {
+        index.close();
+        index = SymbolIndex.open(location);
+    }
+
+    private File source(String path, String text) throws IOException {
+        File file = new File(sourceRoot, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Recompiles sources and moves the modification time of their classes on, as a recompile within the
+     * resolution of the file system's time stamps would otherwise go unnoticed.
+     */
+    private void recompile(File... sources) throws IOException {
+        List<File> classFiles = new ArrayList<File>();
+        for (File source : sources) {
+            String path = sourceRoot.toPath().relativize(source.toPath()).toString();
+            classFiles.add(new File(classes, path.substring(0, path.length() - ".java".length()) + ".class"));
+        }
+        List<Long> modified = new ArrayList<Long>();
+        for (File classFile : classFiles) {
+            modified.add(classFile.lastModified());
+        }
+        compile(sources);
+        for (int i = 0; i < classFiles.size(); i++) {
+            assertTrue(classFiles.get(i).setLastModified(Math.max(classFiles.get(i).lastModified(),
+                    modified.get(i) + 2000)));
+        }
+    }
+
+    private void compile(File... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("the tests need a JDK", compiler);
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        try {
+            List<String> options = Arrays.asList("-d", classes.getPath(), "-cp", classes.getPath(),
+                    "-source", "1.7", "-target", "1.7", "-Xlint:-options", "-nowarn");
+            assertTrue(compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(Arrays.asList(sources))).call());
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private static Set<String> set(String... types) {
+        return new HashSet<String>(Arrays.asList(types));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
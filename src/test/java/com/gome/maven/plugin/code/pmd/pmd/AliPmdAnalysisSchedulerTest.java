@@ -0,0 +1,139 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class AliPmdAnalysisSchedulerTest extends TestCase {
+
+    private static final int FILES = 24;
+
+    public void testResultsArriveInSubmissionOrder() throws Exception {
+        List<File> files = files(FILES);
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        AliPmdAnalysisScheduler scheduler = new AliPmdAnalysisScheduler(new FakeEngine(threads, null), 4);
+        RecordingHandler handler = new RecordingHandler();
+
+        scheduler.run(files, handler);
+
+        assertEquals(files, handler.files);
+        for (int i = 0; i < FILES; i++) {
+            assertEquals(i, handler.sizes.get(i).intValue());
+        }
+        assertTrue(threads.toString(), threads.size() > 1);
+    }
+
+    public void testParallelRunMatchesSerialRun() throws Exception {
+        List<File> files = files(FILES);
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        RecordingHandler serial = new RecordingHandler();
+        RecordingHandler parallel = new RecordingHandler();
+
+        new AliPmdAnalysisScheduler(new FakeEngine(threads, null), 1).run(files, serial);
+        new AliPmdAnalysisScheduler(new FakeEngine(threads, null), 4).run(files, parallel);
+
+        assertEquals(serial.files, parallel.files);
+        assertEquals(serial.sizes, parallel.sizes);
+    }
+
+    public void testFailureStopsAfterPredecessors() throws Exception {
+        List<File> files = files(FILES);
+        File failing = files.get(10);
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        RecordingHandler handler = new RecordingHandler();
+
+        try {
+            new AliPmdAnalysisScheduler(new FakeEngine(threads, failing), 4).run(files, handler);
+            fail();
+        } catch (AnalysisFailedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(failing.toString()));
+        }
+        assertEquals(files.subList(0, 10), handler.files);
+    }
+
+    public void testCancelStopsHandingOutResults() throws Exception {
+        List<File> files = files(FILES);
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final AliPmdAnalysisScheduler scheduler = new AliPmdAnalysisScheduler(new FakeEngine(threads, null), 4);
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void handle(File file, List<ProblemDescriptor> problems) {
+                super.handle(file, problems);
+                if (this.files.size() == 5) {
+                    scheduler.cancel();
+                }
+            }
+        };
+
+        scheduler.run(files, handler);
+
+        assertTrue(scheduler.isCancelled());
+        assertEquals(files.subList(0, 5), handler.files);
+    }
+
+    private static List<File> files(int count) {
+        List<File> files = new ArrayList<File>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new File("File" + i + ".java"));
+        }
+        return files;
+    }
+
+    private static int index(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring("File".length(), name.length() - ".java".length()));
+    }
+
+    private static class RecordingHandler implements AliPmdAnalysisScheduler.ResultHandler {
+        final List<File> files = new ArrayList<File>();
+        final List<Integer> sizes = new ArrayList<Integer>();
+
+        @Override
+        public void handle(File file, List<ProblemDescriptor> problems) {
+            files.add(file);
+            sizes.add(problems.size());
+        }
+    }
+
+    /**
+     * Reports as many problems as the index of the file, and takes longest on the first files so that later files
+     * finish first.
+     */
+    private static class FakeEngine extends AliPmdAnalysisEngine {
+        private final Set<String> threads;
+        private final File failing;
+
+        FakeEngine(Set<String> threads, File failing) {
+            super(Collections.<RuleInfo>emptyList(), "UTF-8");
+            this.threads = threads;
+            this.failing = failing;
+        }
+
+        @Override
+        public List<ProblemDescriptor> analyze(File file) {
+            threads.add(Thread.currentThread().getName());
+            int index = index(file);
+            try {
+                Thread.sleep(Math.max(0, 2 * (FILES - index)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (file.equals(failing)) {
+                throw new IllegalStateException("broken rule");
+            }
+            return Collections.nCopies(index, (ProblemDescriptor) null);
+        }
+
+        @Override
+        public AliPmdAnalysisEngine newWorkerEngine() {
+            return new FakeEngine(threads, failing);
+        }
+    }
+}
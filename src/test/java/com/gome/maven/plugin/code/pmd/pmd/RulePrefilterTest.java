@@ -0,0 +1,129 @@
+package com.gome.maven.plugin.code.pmd.pmd;
+
+import com.gome.maven.plugin.code.pmd.inspection.AliLocalInspectionToolProvider;
+import com.gome.maven.plugin.code.pmd.inspection.ProblemDescriptor;
+import com.gome.maven.plugin.code.pmd.inspection.RuleInfo;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RulePrefilterTest extends TestCase {
+
+    public void testCommentsAndStringsDoNotCount() {
+        RulePrefilter prefilter = new RulePrefilter(Collections.singletonMap("TimerRule", Arrays.asList("Timer")));
+
+        BitSet mentioned = prefilter.scan("// Timer\nclass A { /* Timer */ String s = \"Timer\"; }");
+        BitSet used = prefilter.scan("class A { java.util.Timer timer; }");
+
+        assertFalse(prefilter.isApplicable("TimerRule", mentioned));
+        assertTrue(prefilter.isApplicable("TimerRule", used));
+    }
+
+    public void testAnyDeclaredTokenSuffices() {
+        Map<String, List<String>> prerequisites = new HashMap<String, List<String>>();
+        prerequisites.put("FormatRule", Arrays.asList("SimpleDateFormat", "DateFormat"));
+        RulePrefilter prefilter = new RulePrefilter(prerequisites);
+
+        assertTrue(prefilter.isApplicable("FormatRule", prefilter.scan("class A { DateFormat f; }")));
+        assertFalse(prefilter.isApplicable("FormatRule", prefilter.scan("class A { Format f; }")));
+    }
+
+    public void testUndeclaredRulesAndUnscannedFilesAlwaysApply() {
+        RulePrefilter prefilter = new RulePrefilter(Collections.singletonMap("TimerRule", Arrays.asList("Timer")));
+
+        assertTrue(prefilter.isApplicable("OtherRule", prefilter.scan("class A {}")));
+        assertTrue(prefilter.isApplicable("TimerRule", null));
+    }
+
+    public void testLoadsShippedDeclarations() {
+        assertTrue(RulePrefilter.load().getDeclaredRuleCount() > 0);
+    }
+
+    /**
+     * The shipped declarations must never hide a violation: every test source is checked with and without the
+     * prefilter and both runs have to report the same.
+     */
+    public void testNeverSkipsARuleThatFires() {
+        List<RuleInfo> ruleInfos = new ArrayList<RuleInfo>();
+        for (String ruleName : AliLocalInspectionToolProvider.getRuleNames()) {
+            RuleInfo ruleInfo = AliLocalInspectionToolProvider.getRuleInfoMap().get(ruleName);
+            if (ruleInfo != null) {
+                ruleInfos.add(ruleInfo);
+            }
+        }
+        AliPmdAnalysisEngine plain = new AliPmdAnalysisEngine(ruleInfos, "UTF-8");
+        AliPmdAnalysisEngine filtered = new AliPmdAnalysisEngine(ruleInfos, "UTF-8");
+        filtered.setRulePrefilter(RulePrefilter.load());
+
+        List<File> sources = new ArrayList<File>();
+        collectJavaFiles(new File(getBasedir(), "src/test/resources/unit"), sources);
+        assertFalse(sources.isEmpty());
+        int violations = 0;
+        for (File source : sources) {
+            List<String> expected = describe(plain.analyze(source));
+            assertEquals(source.getPath(), expected, describe(filtered.analyze(source)));
+            violations += expected.size();
+        }
+        assertTrue(violations > 0);
+    }
+
+    /**
+     * Every rule with declared tokens has a sample it reports on, named after the rule; the prefilter must let the
+     * rule run on it.
+     */
+    public void testDeclaredRulesRunOnTheirViolations() throws IOException {
+        RulePrefilter prefilter = RulePrefilter.load();
+        File directory = new File(getBasedir(), "src/test/resources/unit/rule-prefilter/violations");
+        for (String ruleName : prefilter.getDeclaredRuleNames()) {
+            File sample = new File(directory, ruleName + ".java");
+            assertTrue("no violating sample for " + ruleName, sample.isFile());
+            String source = new String(Files.readAllBytes(sample.toPath()), StandardCharsets.UTF_8);
+            assertTrue(ruleName, prefilter.isApplicable(ruleName, prefilter.scan(source)));
+
+            RuleInfo ruleInfo = AliLocalInspectionToolProvider.getRuleInfoMap().get(ruleName);
+            assertNotNull(ruleName + " is not in the rule set", ruleInfo);
+            AliPmdAnalysisEngine engine = new AliPmdAnalysisEngine(Collections.singletonList(ruleInfo), "UTF-8");
+            engine.setRulePrefilter(prefilter);
+            assertFalse(ruleName, engine.analyze(sample).isEmpty());
+        }
+    }
+
+    private static List<String> describe(List<ProblemDescriptor> problems) {
+        List<String> described = new ArrayList<String>(problems.size());
+        for (ProblemDescriptor problem : problems) {
+            described.add(problem.getRule().getName() + ':' + problem.getBeginLine() + ':' + problem.getBeginColumn()
+                    + ' ' + problem.getDescription());
+        }
+        return described;
+    }
+
+    private static void collectJavaFiles(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectJavaFiles(child, files);
+            } else if (child.getName().endsWith(".java")) {
+                files.add(child);
+            }
+        }
+    }
+
+    private static String getBasedir() {
+        String basedir = System.getProperty("basedir");
+        return basedir != null ? basedir : new File("").getAbsolutePath();
+    }
+}
@@ -0,0 +1,154 @@
+package com.gome.maven.plugin.code.pmd.vcs;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GitChangeSetTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("git-change-set", "").getCanonicalFile();
+        assertTrue(dir.delete() && dir.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(dir);
+        super.tearDown();
+    }
+
+    public void testParsesHunksOfTrackedFilesOnly() throws IOException {
+        File foo = new File(dir, "src/Foo.java").getCanonicalFile();
+        File bar = new File(dir, "src/Bar.java").getCanonicalFile();
+        Map<File, List<int[]>> changes = new HashMap<File, List<int[]>>();
+        changes.put(foo, null);
+        String diff = "diff --git a/src/Foo.java b/src/Foo.java\n"
+                + "index 1111111..2222222 100644\n"
+                + "--- a/src/Foo.java\n"
+                + "+++ b/src/Foo.java\n"
+                + "@@ -3 +3 @@ class Foo {\n"
+                + "-    int a;\n"
+                + "+    int b;\n"
+                + "@@ -10,0 +11,3 @@ class Foo {\n"
+                + "+    void c() {\n"
+                + "+    }\n"
+                + "+\n"
+                + "@@ -20,2 +23,0 @@ class Foo {\n"
+                + "-    void d() {\n"
+                + "-    }\n"
+                + "diff --git a/src/Bar.java b/src/Bar.java\n"
+                + "--- a/src/Bar.java\n"
+                + "+++ b/src/Bar.java\n"
+                + "@@ -1 +1 @@\n"
+                + "-class Bar {}\n"
+                + "+class Bar { }\n";
+
+        GitChangeSet.parseChangedLines(dir, diff, changes);
+
+        assertEquals(1, changes.size());
+        List<int[]> ranges = changes.get(foo);
+        assertEquals(2, ranges.size());
+        assertTrue(Arrays.equals(new int[]{3, 3}, ranges.get(0)));
+        assertTrue(Arrays.equals(new int[]{11, 13}, ranges.get(1)));
+        assertFalse(changes.containsKey(bar));
+    }
+
+    public void testDeletedFileEndsPreviousFile() throws IOException {
+        File foo = new File(dir, "Foo.java").getCanonicalFile();
+        Map<File, List<int[]>> changes = new HashMap<File, List<int[]>>();
+        changes.put(foo, null);
+        String diff = "--- a/Foo.java\n"
+                + "+++ b/Foo.java\n"
+                + "@@ -1 +1,2 @@\n"
+                + "+a\n"
+                + "+b\n"
+                + "--- a/Gone.java\n"
+                + "+++ /dev/null\n"
+                + "@@ -1,5 +0,0 @@\n";
+
+        GitChangeSet.parseChangedLines(dir, diff, changes);
+
+        assertEquals(1, changes.get(foo).size());
+        assertTrue(Arrays.equals(new int[]{1, 2}, changes.get(foo).get(0)));
+    }
+
+    public void testDiffsAgainstMergeBase() throws IOException {
+        git("init", "-q");
+        write("Foo.java", "class Foo {\n}\n");
+        write("Bar.java", "class Bar {\n}\n");
+        git("add", ".");
+        commit("base");
+        git("branch", "-q", "base");
+        git("checkout", "-q", "-b", "feature");
+        write("Foo.java", "class Foo {\n    int a;\n}\n");
+        commit("feature");
+        git("checkout", "-q", "base");
+        write("Bar.java", "class Bar {\n    int b;\n}\n");
+        commit("moved on");
+        git("checkout", "-q", "feature");
+
+        GitChangeSet changeSet = GitChangeSet.compute(dir, "base", true);
+
+        File foo = new File(dir, "Foo.java").getCanonicalFile();
+        assertEquals(1, changeSet.getChangedFiles().size());
+        assertTrue(changeSet.isChanged(foo));
+        assertTrue(changeSet.isChangedLine(foo, 2));
+        assertFalse(changeSet.isChangedLine(foo, 1));
+    }
+
+    private void write(String path, String content) throws IOException {
+        OutputStream out = new FileOutputStream(new File(dir, path));
+        try {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private void commit(String message) throws IOException {
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-a", "-m", message);
+    }
+
+    private void git(String... args) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+        InputStream in = process.getInputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // drained so that git cannot block
+            }
+            assertEquals(command.toString(), 0, process.waitFor());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
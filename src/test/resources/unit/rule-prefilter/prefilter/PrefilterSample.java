@@ -0,0 +1,79 @@
+package prefilter;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Triggers rules that declare prerequisite tokens, so that a prefiltered run can be compared with a full one.
+ * Some tokens only occur in comments and strings here: Transactional, BeanUtils, ThreadLocal.
+ *
+ * @author code-check
+ * @date 2018/01/01
+ */
+public abstract class PrefilterSample {
+
+    private static final SimpleDateFormat FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+
+    private final Lock lock = new ReentrantLock();
+
+    public String format(Date date) {
+        return FORMAT.format(date);
+    }
+
+    public void schedule() {
+        Timer timer = new Timer();
+        timer.cancel();
+        new Thread().start();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.shutdown();
+    }
+
+    public void collections(List<String> names, String name) {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(name, name);
+        Integer[] values = (Integer[]) new ArrayList<Integer>().toArray();
+        List<String> fixed = Arrays.asList("a", "b");
+        fixed.add("c");
+        ArrayList<String> sub = (ArrayList<String>) names.subList(0, 1);
+        if (name.equals("BeanUtils")) {
+            sub.add(String.valueOf(values.length));
+        }
+    }
+
+    public long time(CountDownLatch latch) {
+        latch.countDown();
+        Pattern pattern = Pattern.compile("Transactional");
+        int dice = (int) Math.random();
+        Random random = new Random();
+        lock.lock();
+        switch (random.nextInt()) {
+            case 1:
+                dice++;
+            default:
+        }
+        if (dice > 0 && pattern != null || dice < 0 && random != null && lock != null)
+            dice--;
+        return new Date().getTime() + dice;
+    }
+
+    public int leave() {
+        try {
+            return 1;
+        } finally {
+            return 2;
+        }
+    }
+}
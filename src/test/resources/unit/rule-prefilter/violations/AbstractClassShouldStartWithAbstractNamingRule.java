@@ -0,0 +1,6 @@
+package violations;
+
+public abstract class Shape {
+
+    public abstract double area();
+}
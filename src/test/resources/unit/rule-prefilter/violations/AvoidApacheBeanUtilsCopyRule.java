@@ -0,0 +1,10 @@
+package violations;
+
+import org.apache.commons.beanutils.BeanUtils;
+
+public class AvoidApacheBeanUtilsCopyRule {
+
+    public void copy(Object target, Object source) throws Exception {
+        BeanUtils.copyProperties(target, source);
+    }
+}
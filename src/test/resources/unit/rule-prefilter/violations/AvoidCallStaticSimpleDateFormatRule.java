@@ -0,0 +1,13 @@
+package violations;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+public class AvoidCallStaticSimpleDateFormatRule {
+
+    private static final SimpleDateFormat FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+
+    public String format(Date date) {
+        return FORMAT.format(date);
+    }
+}
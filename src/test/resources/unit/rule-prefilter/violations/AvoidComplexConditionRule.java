@@ -0,0 +1,11 @@
+package violations;
+
+public class AvoidComplexConditionRule {
+
+    public boolean check(int a, int b, int c, int d) {
+        if (a > 0 && b > 0 || c > 0 && d > 0 || a < b && c < d) {
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,12 @@
+package violations;
+
+import java.util.Random;
+
+public class AvoidConcurrentCompetitionRandomRule {
+
+    private static final Random RANDOM = new Random();
+
+    public int roll() {
+        return RANDOM.nextInt(6);
+    }
+}
@@ -0,0 +1,9 @@
+package violations;
+
+public class AvoidManuallyCreateThreadRule {
+
+    public void start(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.start();
+    }
+}
@@ -0,0 +1,9 @@
+package violations;
+
+public class AvoidMissUseOfMathRandomRule {
+
+    public int roll() {
+        int dice = (int) Math.random();
+        return dice;
+    }
+}
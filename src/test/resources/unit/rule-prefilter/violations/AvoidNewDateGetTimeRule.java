@@ -0,0 +1,10 @@
+package violations;
+
+import java.util.Date;
+
+public class AvoidNewDateGetTimeRule {
+
+    public long now() {
+        return new Date().getTime();
+    }
+}
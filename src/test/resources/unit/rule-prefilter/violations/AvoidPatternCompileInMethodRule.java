@@ -0,0 +1,11 @@
+package violations;
+
+import java.util.regex.Pattern;
+
+public class AvoidPatternCompileInMethodRule {
+
+    public boolean isNumber(String text) {
+        Pattern pattern = Pattern.compile("[0-9]+");
+        return pattern.matcher(text).matches();
+    }
+}
@@ -0,0 +1,12 @@
+package violations;
+
+public class AvoidReturnInFinallyRule {
+
+    public int leave() {
+        try {
+            return 1;
+        } finally {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package violations;
+
+import java.util.Timer;
+
+public class AvoidUseTimerRule {
+
+    public void schedule() {
+        Timer timer = new Timer();
+        timer.cancel();
+    }
+}
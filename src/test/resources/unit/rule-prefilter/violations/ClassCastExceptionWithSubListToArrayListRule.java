@@ -0,0 +1,12 @@
+package violations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClassCastExceptionWithSubListToArrayListRule {
+
+    public ArrayList<String> head(List<String> names) {
+        ArrayList<String> head = (ArrayList<String>) names.subList(0, 1);
+        return head;
+    }
+}
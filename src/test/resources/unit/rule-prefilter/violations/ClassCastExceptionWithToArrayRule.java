@@ -0,0 +1,11 @@
+package violations;
+
+import java.util.List;
+
+public class ClassCastExceptionWithToArrayRule {
+
+    public Integer[] values(List<Integer> list) {
+        Integer[] values = (Integer[]) list.toArray();
+        return values;
+    }
+}
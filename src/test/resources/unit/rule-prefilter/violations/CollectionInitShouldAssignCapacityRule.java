@@ -0,0 +1,13 @@
+package violations;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CollectionInitShouldAssignCapacityRule {
+
+    public Map<String, String> create() {
+        Map<String, String> map = new ConcurrentHashMap<String, String>();
+        map.put("a", "b");
+        return map;
+    }
+}
@@ -0,0 +1,15 @@
+package violations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrentExceptionWithModifyOriginSubListRule {
+
+    public int modify() {
+        List<String> names = new ArrayList<String>();
+        names.add("a");
+        List<String> head = names.subList(0, 1);
+        names.add("b");
+        return head.size();
+    }
+}
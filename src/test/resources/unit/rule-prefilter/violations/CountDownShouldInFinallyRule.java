@@ -0,0 +1,17 @@
+package violations;
+
+import java.util.concurrent.CountDownLatch;
+
+public class CountDownShouldInFinallyRule {
+
+    private int count;
+
+    public void work(CountDownLatch latch) {
+        try {
+            count++;
+            latch.countDown();
+        } catch (RuntimeException e) {
+            count--;
+        }
+    }
+}
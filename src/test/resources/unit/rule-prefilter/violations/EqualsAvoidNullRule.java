@@ -0,0 +1,8 @@
+package violations;
+
+public class EqualsAvoidNullRule {
+
+    public boolean isAdmin(String name) {
+        return name.equals("admin");
+    }
+}
@@ -0,0 +1,16 @@
+package violations;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class LockShouldWithTryFinallyRule {
+
+    private final Lock lock = new ReentrantLock();
+    private int count;
+
+    public void increment() {
+        lock.lock();
+        count++;
+        lock.unlock();
+    }
+}
@@ -0,0 +1,10 @@
+package violations;
+
+public class NeedBraceRule {
+
+    public int decrement(int value) {
+        if (value > 0)
+            value--;
+        return value;
+    }
+}
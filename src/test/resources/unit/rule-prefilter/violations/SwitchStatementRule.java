@@ -0,0 +1,13 @@
+package violations;
+
+public class SwitchStatementRule {
+
+    public int next(int value) {
+        switch (value) {
+            case 1:
+                value++;
+                break;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,14 @@
+package violations;
+
+public class ThreadLocalShouldRemoveRule {
+
+    private static final ThreadLocal<String> CONTEXT = new ThreadLocal<String>();
+
+    public void enter(String user) {
+        CONTEXT.set(user);
+    }
+
+    public String current() {
+        return CONTEXT.get();
+    }
+}
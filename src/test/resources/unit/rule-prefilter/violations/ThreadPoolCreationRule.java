@@ -0,0 +1,13 @@
+package violations;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ThreadPoolCreationRule {
+
+    public void run(Runnable task) {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.execute(task);
+        executor.shutdown();
+    }
+}
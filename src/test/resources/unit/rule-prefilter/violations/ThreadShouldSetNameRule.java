@@ -0,0 +1,15 @@
+package violations;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class ThreadShouldSetNameRule {
+
+    public void run(Runnable task) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.execute(task);
+        executor.shutdown();
+    }
+}
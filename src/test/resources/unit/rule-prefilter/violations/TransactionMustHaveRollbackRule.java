@@ -0,0 +1,10 @@
+package violations;
+
+import org.springframework.transaction.annotation.Transactional;
+
+public class TransactionMustHaveRollbackRule {
+
+    @Transactional
+    public void save() {
+    }
+}
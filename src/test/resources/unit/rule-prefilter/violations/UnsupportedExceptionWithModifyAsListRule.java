@@ -0,0 +1,13 @@
+package violations;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class UnsupportedExceptionWithModifyAsListRule {
+
+    public List<String> names() {
+        List<String> names = Arrays.asList("a", "b");
+        names.add("c");
+        return names;
+    }
+}